@@ -28,6 +28,8 @@ public interface SubscriptionManager {
      * parameters can include the following:
      * <ul>
      * <li>subscriber - object to identify the subscriber (e.g. entity, or console session uid) 
+     * <li>coalesce - if true, only the latest value is delivered: an event still awaiting delivery is replaced
+     *     by a newer event from the same producer and sensor (useful for slow subscribers which only need current state)
      * <li><i>in future</i> - control parameters for the subscription (period, minimum delta for updates, etc)
      * </ul>
      * 
@@ -1,8 +1,11 @@
 package brooklyn.management;
 
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Represents a unit of work for execution.
  *
@@ -10,8 +13,11 @@ import java.util.concurrent.Future;
  * execution start time, end time, and any result. A task can be submitted to the ExecutionManager or
  * ExecutionContext, in which case it will be returned, or it may be created by submission
  * of a {@link Runnable} or {@link Callable} and thereafter it can be treated just like a {@link Future}.
+ * <p>
+ * As a {@link ListenableFuture}, callbacks can be run when the task completes, without a thread waiting for it;
+ * see e.g. {@link com.google.common.util.concurrent.Futures} for composing tasks in this way.
  */
-public interface Task<T> extends TaskStub, Future<T> {
+public interface Task<T> extends TaskStub, ListenableFuture<T> {
     public Set<Object> getTags();
     public long getSubmitTimeUtc();
     public long getStartTimeUtc();
@@ -71,4 +77,10 @@ public interface Task<T> extends TaskStub, Future<T> {
     /** As get, but propagating checked exceptions as unchecked for convenience. */
     public T getUnchecked();
     
+    /**
+     * Runs the given listener in the given executor once the task has completed (including by cancellation),
+     * or immediately if it has completed already. Listeners can be added before the task is submitted.
+     */
+    public void addListener(Runnable listener, Executor executor);
+    
 }
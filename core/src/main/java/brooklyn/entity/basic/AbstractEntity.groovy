@@ -647,6 +647,23 @@ public abstract class AbstractEntity extends GroovyObjectSupport implements Enti
         return result;
     }
 
+    @Override
+    public <T> boolean setAttributeIfChanged(AttributeSensor<T> attribute, T val) {
+        boolean changed = attributesInternal.updateWithoutPublishingIfChanged(attribute, val);
+        if (changed) {
+            emitInternal(attribute, val);
+            // could be this is a new sensor
+            entityType.addSensorIfAbsent(attribute);
+            getManagementSupport().getEntityChangeListener().onAttributeChanged(attribute);
+        }
+        return changed;
+    }
+
+    @Override
+    public long getAttributeLastUpdated(AttributeSensor<?> attribute) {
+        return attributesInternal.getLastUpdated(attribute);
+    }
+
     @Override
     public void removeAttribute(AttributeSensor<?> attribute) {
         attributesInternal.remove(attribute);
@@ -39,13 +39,16 @@ import brooklyn.policy.basic.AbstractPolicy;
 import brooklyn.util.MutableMap;
 import brooklyn.util.ResourceUtils;
 import brooklyn.util.flags.FlagUtils;
-import brooklyn.util.task.ParallelTask;
+import brooklyn.util.task.BoundedParallelTask;
+import brooklyn.util.task.ContinuationTask;
+import brooklyn.util.task.Tasks;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
 
 
 /** Convenience methods for working with entities. 
@@ -70,29 +73,47 @@ public class Entities {
     
 	/** invokes the given effector with the given named arguments on the entitiesToCall, from the calling context of the callingEntity;
 	 * intended for use only from the callingEntity.
-	 * @return ParallelTask containing a results from each invocation; calling get() on the result will block until all complete,
-	 * and throw error if any threw error   
+	 * @return task containing a results from each invocation; calling get() on the result will block until all complete,
+	 * and throw error if any threw error (though no thread is held waiting for them, see {@link Tasks#allOf(Iterable)})
 	 */
 	public static <T> Task<List<T>> invokeEffectorList(EntityLocal callingEntity, Iterable<? extends Entity> entitiesToCall, 
 	        final Effector<T> effector, final Map<String,?> parameters) {
-        // formulation is complicated, but it is building up a list of tasks, without blocking on them initially,
-        // but ensuring that when the parallel task is gotten it does block on all of them
-	    // TODO why not just get list of tasks with `entity.invoke(effector, parameters))`?
-	    //      What is advantage of invoking in callingEntity's context?
-        
 		if (entitiesToCall == null || Iterables.isEmpty(entitiesToCall)) return null;
-		List<Callable<T>> tasks = Lists.newArrayList();
+		List<Task<T>> tasks = Lists.newArrayList();
 		
 		for (final Entity entity : entitiesToCall) {
-		    tasks.add(new Callable<T>() {
-		        public T call() throws Exception {
-		            return entity.invoke(effector, parameters).get();
-		        }});
+		    tasks.add(entity.invoke(effector, parameters));
 		}
-	    ParallelTask<T> invoke = new ParallelTask<T>(tasks);
+	    Task<List<T>> invoke = Tasks.allOf(tasks);
 	    ((EntityInternal)callingEntity).getManagementSupport().getExecutionContext().submit(invoke);
 	    return invoke;
 	}
+
+    /** as {@link #invokeEffectorList(EntityLocal, Iterable, Effector, Map)}, but invoking the effector on at most
+     * maxConcurrent of the entitiesToCall at a time (unbounded if zero or negative), and running all of them even if some fail;
+     * see {@link BoundedParallelTask} for finer control, e.g. batches or fail-fast */
+    public static <T> Task<List<T>> invokeEffectorList(EntityLocal callingEntity, Iterable<? extends Entity> entitiesToCall, 
+            final Effector<T> effector, final Map<String,?> parameters, int maxConcurrent) {
+        if (maxConcurrent <= 0) return invokeEffectorList(callingEntity, entitiesToCall, effector, parameters);
+        if (entitiesToCall == null || Iterables.isEmpty(entitiesToCall)) return null;
+        List<Task<T>> tasks = Lists.newArrayList();
+        for (Entity entity : entitiesToCall) {
+            tasks.add(newInvokeEffectorTask(entity, effector, parameters));
+        }
+        Task<List<T>> invoke = new BoundedParallelTask<T>(tasks).maxInFlight(maxConcurrent);
+        ((EntityInternal)callingEntity).getManagementSupport().getExecutionContext().submit(invoke);
+        return invoke;
+    }
+    /** returns an unsubmitted task which, when run, invokes the given effector on the entityToCall and completes when it does,
+     * without holding a thread in the meantime; for deferring invocations, e.g. as children of a {@link BoundedParallelTask} */
+    public static <T> Task<T> newInvokeEffectorTask(final Entity entityToCall, final Effector<T> effector, final Map<String,?> parameters) {
+        return new ContinuationTask<T>(
+                MutableMap.of("displayName", "invoking "+effector.getName()+" on "+entityToCall.getDisplayName()),
+                new Callable<ListenableFuture<T>>() {
+                    public ListenableFuture<T> call() {
+                        return entityToCall.invoke(effector, parameters);
+                    }});
+    }
     public static <T> Task<List<T>> invokeEffectorListWithMap(EntityLocal callingEntity, Iterable<? extends Entity> entitiesToCall, 
             final Effector<T> effector, final Map<String,?> parameters) {
         return invokeEffectorList(callingEntity, entitiesToCall, effector, parameters);
@@ -2,6 +2,7 @@ package brooklyn.entity.basic;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -22,6 +23,8 @@ import brooklyn.util.text.Strings;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 
 /** This is the actual type of an entity instance at runtime,
@@ -33,27 +36,56 @@ public class EntityDynamicType {
 
     protected static final Logger LOG = LoggerFactory.getLogger(EntityDynamicType.class);
 
+    /** 
+     * Ids of sensors by name, shared by all entities, so attribute values can be indexed by a small int; 
+     * see {@link #getSensorId(String)}. Guarded by itself for writes.
+     * <p>
+     * Never shrinks, so holds one entry (of the order of 100 bytes) per distinct sensor name used in the JVM. 
+     * Sensor names normally come from the (static) sensors of entity classes, so this is small and stops growing; 
+     * but names generated at runtime (e.g. one sensor per request) would each add an entry, so a warning is logged 
+     * at {@link #SENSOR_ID_COUNT_WARN_THRESHOLD} ids, and each time the count doubles after that.
+     */
+    private static final ConcurrentMap<String,Integer> sensorIdsByName = new ConcurrentHashMap<String,Integer>();
+    private static volatile String[] sensorNamesById = new String[256];
+    private static int nextSensorId = 1;
+    
+    /** number of distinct sensor names after which it is worth warning that they may be being generated without limit */
+    static final int SENSOR_ID_COUNT_WARN_THRESHOLD = 10000;
+    private static int nextSensorIdCountWarning = SENSOR_ID_COUNT_WARN_THRESHOLD;
+
+    /** 
+     * Metadata for each entity class, found by reflection the first time the class is used; see {@link ClassMetadata}.
+     * <p>
+     * The metadata refers to its class (e.g. through the fields and effectors found), so weak keys alone would never 
+     * be cleared. Values are weak too: each entity's type holds its class's metadata, so it is kept while any entity 
+     * of the class exists; after that it can be discarded (and found again if needed), so the cache does not stop 
+     * entity classes (e.g. from a catalog's class loader) being unloaded.
+     */
+    private static final ConcurrentMap<Class<?>,ClassMetadata> classMetadataCache = new MapMaker().weakKeys().weakValues().makeMap();
+
     private final Class<? extends Entity> entityClass;
     private final AbstractEntity entity;
+    private final ClassMetadata classMetadata;
     private volatile String name;
     private volatile String simpleName;
     
     /** 
-     * Effectors on this entity.
+     * Effectors on this entity (shared with other instances of the class).
      * TODO support overloading; requires not using a map keyed off method name.
      */
-    private final ConcurrentMap<String, Effector<?>> effectors = new ConcurrentHashMap<String, Effector<?>>();
+    private final Map<String, Effector<?>> effectors;
 
     /** 
-     * Map of sensors on this entity by name.
+     * Map of sensors on this entity by name: null until sensors are added or removed on this instance,
+     * whereupon the shared {@link ClassMetadata#sensors} are copied, so most entities never need their own map.
      */
-    private final ConcurrentMap<String,Sensor<?>> sensors = new ConcurrentHashMap<String, Sensor<?>>();
+    private volatile ConcurrentMap<String,Sensor<?>> sensors;
 
     /** 
-     * Map of config keys on this entity by name.
+     * Map of config keys on this entity by name (shared with other instances of the class).
      */
-    private final ConcurrentMap<String,ConfigKey<?>> configKeys = new ConcurrentHashMap<String, ConfigKey<?>>();
-    private final ConcurrentMap<String,Field> configKeyFields = new ConcurrentHashMap<String, Field>();
+    private final Map<String,ConfigKey<?>> configKeys;
+    private final Map<String,Field> configKeyFields;
 
     private volatile EntityTypeSnapshot snapshot;
     private final AtomicBoolean snapshotValid = new AtomicBoolean(false);
@@ -70,19 +102,128 @@ public class EntityDynamicType {
         setName((clazz.getCanonicalName() == null) ? clazz.getName() : clazz.getCanonicalName());
         String id = entity==null ? clazz.getName() : entity.getId();
         
-        effectors.putAll(findEffectors(clazz, entity));
+        ClassMetadata metadata = getClassMetadata(clazz);
+        if (entity != null && metadata.hasInstanceFields) {
+            // values of non-static fields differ per instance, so cannot share the class's
+            metadata = new ClassMetadata(clazz, entity);
+        }
+        this.classMetadata = metadata;
+        
+        effectors = metadata.effectors;
         if (LOG.isTraceEnabled())
             LOG.trace("Entity {} effectors: {}", id, Joiner.on(", ").join(effectors.keySet()));
         
-        sensors.putAll(findSensors(clazz, entity));
         if (LOG.isTraceEnabled())
-            LOG.trace("Entity {} sensors: {}", id, Joiner.on(", ").join(sensors.keySet()));
+            LOG.trace("Entity {} sensors: {}", id, Joiner.on(", ").join(metadata.sensors.keySet()));
         
-        buildConfigKeys(clazz, entity, configKeys, configKeyFields);
+        configKeys = metadata.configKeys;
+        configKeyFields = metadata.configKeyFields;
         if (LOG.isTraceEnabled())
             LOG.trace("Entity {} config keys: {}", id, Joiner.on(", ").join(configKeys.keySet()));
+    }
+    
+    private static ClassMetadata getClassMetadata(Class<? extends Entity> clazz) {
+        ClassMetadata result = classMetadataCache.get(clazz);
+        if (result == null) {
+            // the first entities of a class, constructed concurrently, may each do the reflection; only the first result is kept
+            result = new ClassMetadata(clazz, null);
+            ClassMetadata prev = classMetadataCache.putIfAbsent(clazz, result);
+            if (prev != null) result = prev;
+        }
+        return result;
+    }
+    
+    /**
+     * Whether all entities of the given class start with the same effectors, sensors and config keys, as is usual:
+     * i.e. all are defined by static fields, rather than some by (discouraged) instance fields whose values may differ.
+     */
+    public static boolean isSameForAllInstances(Class<? extends Entity> clazz) {
+        return !getClassMetadata(clazz).hasInstanceFields;
+    }
+    
+    /**
+     * The effectors, sensors and config keys defined by the fields of an entity class. Finding these walks 
+     * the class hierarchy reflectively, so is done once per class and the (immutable) result shared by 
+     * all its instances, rather than repeated for each entity constructed.
+     */
+    private static class ClassMetadata {
+        final String name;
+        final Map<String,Effector<?>> effectors;
+        final Map<String,Sensor<?>> sensors;
+        final Map<String,ConfigKey<?>> configKeys;
+        final Map<String,Field> configKeyFields;
+        /** whether any effector, sensor or config key fields are non-static (discouraged), so instances need their own */
+        final boolean hasInstanceFields;
+        private volatile EntityTypeSnapshot snapshot;
+        
+        ClassMetadata(Class<? extends Entity> clazz, AbstractEntity optionalEntity) {
+            name = (clazz.getCanonicalName() == null) ? clazz.getName() : clazz.getCanonicalName();
+            effectors = ImmutableMap.copyOf(findEffectors(clazz, optionalEntity));
+            sensors = ImmutableMap.copyOf(findSensors(clazz, optionalEntity));
+            for (String sensorName : sensors.keySet()) {
+                getSensorId(sensorName);
+            }
+            Map<String,ConfigKey<?>> keys = Maps.newLinkedHashMap();
+            Map<String,Field> keyFields = Maps.newLinkedHashMap();
+            buildConfigKeys(clazz, optionalEntity, keys, keyFields);
+            configKeys = ImmutableMap.copyOf(keys);
+            configKeyFields = ImmutableMap.copyOf(keyFields);
+            hasInstanceFields = hasInstanceFields(clazz);
+        }
+        
+        /** the snapshot for instances which have not changed their name or sensors */
+        EntityTypeSnapshot getSnapshot() {
+            EntityTypeSnapshot result = snapshot;
+            if (result == null) {
+                snapshot = result = new EntityTypeSnapshot(name, toSimpleName(name), configKeys, sensors, effectors.values());
+            }
+            return result;
+        }
+        
+        private static boolean hasInstanceFields(Class<?> clazz) {
+            for (Field f : clazz.getFields()) {
+                if (!Modifier.isStatic(f.getModifiers()) && (Effector.class.isAssignableFrom(f.getType()) || Sensor.class.isAssignableFrom(f.getType())
+                        || ConfigKey.class.isAssignableFrom(f.getType()) || HasConfigKey.class.isAssignableFrom(f.getType()))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Returns a small positive int identifying sensors with the given name, assigning one if the name is new.
+     * Ids are the same for all entities and never reused, so a name maps to the same id for the life of the JVM
+     * (and the table of ids grows with the number of distinct names, see {@link #sensorIdsByName}).
+     * Used to index attribute values (see {@link brooklyn.event.basic.AttributeMap}) without hashing sensor names. 
+     */
+    public static int getSensorId(String sensorName) {
+        Integer result = sensorIdsByName.get(sensorName);
+        if (result != null) return result;
+        synchronized (sensorIdsByName) {
+            result = sensorIdsByName.get(sensorName);
+            if (result == null) {
+                result = nextSensorId++;
+                if (result >= sensorNamesById.length) {
+                    sensorNamesById = Arrays.copyOf(sensorNamesById, sensorNamesById.length*2);
+                }
+                sensorNamesById[result] = sensorName;
+                // publishes the name, for anyone given this id
+                sensorIdsByName.put(sensorName, result);
+                if (result >= nextSensorIdCountWarning) {
+                    LOG.warn("{} distinct sensor names have been used (most recently {}), and their ids are never released; "+
+                            "check that sensor names are not being generated without limit", result, sensorName);
+                    nextSensorIdCountWarning *= 2;
+                }
+            }
+            return result;
+        }
+    }
 
-        refreshSnapshot();
+    /** Returns the name of sensors with the given id (see {@link #getSensorId(String)}), or null if no such id has been assigned */
+    public static String getSensorName(int sensorId) {
+        String[] names = sensorNamesById;
+        return (sensorId > 0 && sensorId < names.length) ? names[sensorId] : null;
     }
     
     public void setName(String name) {
@@ -94,7 +235,7 @@ public class EntityDynamicType {
         snapshotValid.set(false);
     }
     
-    private String toSimpleName(String name) {
+    private static String toSimpleName(String name) {
         String simpleName = name.substring(name.lastIndexOf(".")+1);
         if (Strings.isBlank(simpleName)) simpleName = name.trim();
         return Strings.makeValidFilename(simpleName);
@@ -118,35 +259,52 @@ public class EntityDynamicType {
      * but the idea of these so-called "dynamic effectors" has been discussed and it might be supported in future...
      */
     public Map<String,Effector<?>> getEffectors() {
-        return Collections.unmodifiableMap(effectors);
+        return effectors;
     }
     
     /**
      * Sensors available on this entity.
      */
     public Map<String,Sensor<?>> getSensors() {
-        return Collections.unmodifiableMap(sensors);
+        Map<String,Sensor<?>> result = sensors;
+        return (result != null) ? Collections.unmodifiableMap(result) : classMetadata.sensors;
     }
     
     /** 
      * Convenience for finding named sensor.
      */
     public Sensor<?> getSensor(String sensorName) {
-        return sensors.get(sensorName);
+        Map<String,Sensor<?>> result = sensors;
+        return ((result != null) ? result : classMetadata.sensors).get(sensorName);
     }
 
     /**
      * ConfigKeys available on this entity.
      */
     public Map<String,ConfigKey<?>> getConfigKeys() {
-        return Collections.unmodifiableMap(configKeys);
+        return configKeys;
+    }
+
+    /** the sensors for changing, copying the class's on first use */
+    private ConcurrentMap<String,Sensor<?>> getSensorsForUpdate() {
+        ConcurrentMap<String,Sensor<?>> result = sensors;
+        if (result == null) {
+            synchronized (this) {
+                result = sensors;
+                if (result == null) {
+                    sensors = result = new ConcurrentHashMap<String,Sensor<?>>(classMetadata.sensors);
+                }
+            }
+        }
+        return result;
     }
 
     /**
      * Adds the given {@link Sensor} to this entity.
      */
     public void addSensor(Sensor<?> newSensor) {
-        sensors.put(newSensor.getName(), newSensor);
+        getSensorId(newSensor.getName());
+        getSensorsForUpdate().put(newSensor.getName(), newSensor);
         snapshotValid.set(false);
         entity.emit(AbstractEntity.SENSOR_ADDED, newSensor);
     }
@@ -169,14 +327,19 @@ public class EntityDynamicType {
     }
     
     public Sensor<?> addSensorIfAbsentWithoutPublishing(Sensor<?> newSensor) {
-        return sensors.putIfAbsent(newSensor.getName(), newSensor);
+        // usually already present (e.g. declared on the class), so avoid copying the class's sensors
+        Sensor<?> prev = getSensor(newSensor.getName());
+        if (prev != null) return prev;
+        getSensorId(newSensor.getName());
+        return getSensorsForUpdate().putIfAbsent(newSensor.getName(), newSensor);
     }
 
     /**
      * Removes the named {@link Sensor} from this entity.
      */
     public Sensor<?> removeSensor(String sensorName) {
-        Sensor<?> result = sensors.remove(sensorName);
+        if (getSensor(sensorName) == null) return null;
+        Sensor<?> result = getSensorsForUpdate().remove(sensorName);
         if (result != null) {
             snapshotValid.set(false);
             entity.emit(AbstractEntity.SENSOR_REMOVED, result);
@@ -205,7 +368,11 @@ public class EntityDynamicType {
 
     private EntityTypeSnapshot refreshSnapshot() {
         if (snapshotValid.compareAndSet(false, true)) {
-            snapshot = new EntityTypeSnapshot(name, simpleName, configKeys, sensors, effectors.values());
+            if (sensors == null && name.equals(classMetadata.name)) {
+                snapshot = classMetadata.getSnapshot();
+            } else {
+                snapshot = new EntityTypeSnapshot(name, simpleName, configKeys, getSensors(), effectors.values());
+            }
         }
         return snapshot;
     }
@@ -32,6 +32,22 @@ public interface EntityInternal extends Entity {
      */
     <T> T setAttributeWithoutPublishing(AttributeSensor<T> sensor, T val);
 
+    /**
+     * Like {@link #setAttribute(AttributeSensor, Object)}, except does nothing (other than record the time of the update)
+     * if the value equals the current value; so no attribute-change event is published, and no change is persisted.
+     * For frequently polled sensors whose values rarely change.
+     * 
+     * @return true if the value changed
+     */
+    @Beta
+    <T> boolean setAttributeIfChanged(AttributeSensor<T> sensor, T val);
+
+    /**
+     * @return when the attribute was last set (whether or not that changed its value), in utc millis; or -1 if never set
+     */
+    @Beta
+    long getAttributeLastUpdated(AttributeSensor<?> sensor);
+
     EntityConfigMap getConfigMap();
 
     /**
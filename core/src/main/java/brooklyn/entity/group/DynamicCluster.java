@@ -38,6 +38,10 @@ public interface DynamicCluster extends AbstractGroup, Cluster {
     public static final ConfigKey<Boolean> QUARANTINE_FAILED_ENTITIES = new BasicConfigKey<Boolean>(
             Boolean.class, "dynamiccluster.quarantineFailedEntities", "Whether to guarantine entities that fail to start, or to try to clean them up", false);
 
+    @SetFromFlag("maxConcurrentChildCommands")
+    public static final ConfigKey<Integer> MAX_CONCURRENT_CHILD_COMMANDS = new BasicConfigKey<Integer>(
+            Integer.class, "dynamiccluster.maxConcurrentChildCommands", "The maximum number of members to start or stop at once when resizing; zero or negative means unbounded", 0);
+
     public static final BasicAttributeSensor<Lifecycle> SERVICE_STATE = Attributes.SERVICE_STATE;
 
     public static final BasicNotificationSensor<Entity> ENTITY_QUARANTINED = new BasicNotificationSensor<Entity>(Entity.class, "dynamiccluster.entityQuarantined", "Entity failed to start, and has been quarantined");
@@ -31,6 +31,7 @@ import brooklyn.util.GroovyJavaMethods;
 import brooklyn.util.MutableList;
 import brooklyn.util.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.task.BoundedParallelTask;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
@@ -136,6 +137,11 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
         return getConfig(QUARANTINE_FAILED_ENTITIES);
     }
     
+    private int getMaxConcurrentChildCommands() {
+        Integer result = getConfig(MAX_CONCURRENT_CHILD_COMMANDS);
+        return (result != null) ? result : 0;
+    }
+    
     private Group getQuarantineGroup() {
         return getAttribute(QUARANTINE_GROUP);
     }
@@ -234,7 +240,16 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
         Map<Entity, Task<?>> tasks = Maps.newLinkedHashMap();
         for (Entity entity: addedEntities) {
             Map<String,?> args = ImmutableMap.of("locations", ImmutableList.of(getLocation()));
-            tasks.put(entity, entity.invoke(Startable.START, args));
+            tasks.put(entity, Entities.newInvokeEffectorTask(entity, Startable.START, args));
+        }
+        Task<?> invoke = new BoundedParallelTask<Object>(tasks.values()).maxInFlight(getMaxConcurrentChildCommands());
+        getManagementSupport().getExecutionContext().submit(invoke);
+        try {
+            invoke.get();
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } catch (ExecutionException e) {
+            // errors reported per entity below
         }
         Map<Entity, Throwable> errors = waitForTasksOnEntityStart(tasks);
         
@@ -256,7 +271,8 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
 
         // FIXME symmetry in order of added as child, managed, started, and added to group
         // FIXME assume stoppable; use logic of grow?
-        Task<List<Void>> invoke = Entities.invokeEffectorList(this, removedEntities, Startable.STOP, Collections.<String,Object>emptyMap());
+        Task<List<Void>> invoke = Entities.invokeEffectorList(this, removedEntities, Startable.STOP, Collections.<String,Object>emptyMap(),
+                getMaxConcurrentChildCommands());
         try {
             invoke.get();
         } catch (Exception e) {
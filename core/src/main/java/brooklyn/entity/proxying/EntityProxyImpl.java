@@ -2,20 +2,29 @@ package brooklyn.entity.proxying;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.entity.Effector;
 import brooklyn.entity.Entity;
+import brooklyn.entity.ParameterType;
 import brooklyn.entity.basic.AbstractEntity;
+import brooklyn.entity.basic.EntityDynamicType;
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 
 import com.google.common.base.Objects;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Primitives;
 
 /**
  * A dynamic proxy for an entity. Other entities etc should use these proxies when interacting
@@ -54,8 +63,119 @@ public class EntityProxyImpl implements java.lang.reflect.InvocationHandler {
         }
     }
 
+    /**
+     * How each method is dispatched, for each class of entity; see {@link #getDispatch(Entity)}.
+     * Methods called on a proxy are the same {@link Method} instances each time, so once a method has been
+     * classified (by signature, and by the entity's effectors) subsequent calls need only one lookup.
+     * <p>
+     * The methods refer to the entity's interfaces, and so (typically) to its class loader, so weak keys alone would 
+     * never be cleared. Values are weak too: each proxy holds its class's dispatch, so it is kept while any proxy for 
+     * the class exists, and can then be discarded; so this does not stop entity classes being unloaded.
+     */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<Method, Handler>> DISPATCH_BY_ENTITY_CLASS = new MapMaker().weakKeys().weakValues().makeMap();
+
+    /** Ways of invoking a method called on the proxy. */
+    private static enum Handler {
+        /** a method of {@link Object}, invoked on this handler */
+        OBJECT {
+            Object invoke(EntityProxyImpl handler, Method m, Object[] args) throws Throwable {
+                return m.invoke(handler, args);
+            }
+        },
+        /** a method of the entity interfaces, which are never effectors, invoked on the entity */
+        ENTITY {
+            Object invoke(EntityProxyImpl handler, Method m, Object[] args) throws Throwable {
+                return m.invoke(handler.delegate, args);
+            }
+        },
+        /** a method the entity's class implements, which is not an effector (though it may be an overload of one), invoked on it directly */
+        DIRECT {
+            Object invoke(EntityProxyImpl handler, Method m, Object[] args) throws Throwable {
+                try {
+                    return m.invoke(handler.delegate, args);
+                } catch (InvocationTargetException e) {
+                    // throw what the method threw, as when dispatched by groovy
+                    throw e.getCause();
+                }
+            }
+        },
+        /** 
+         * an effector, or a method not implemented by the entity's class: left to {@link AbstractEntity#invokeMethod(String, Object)},
+         * which invokes effectors as such (in a task), unless the entity is being constructed or already invoking one in this thread
+         */
+        INVOKE_METHOD {
+            Object invoke(EntityProxyImpl handler, Method m, Object[] args) throws Throwable {
+                return ((AbstractEntity)handler.delegate).invokeMethod(m.getName(), (args == null ? new Object[0] : args));
+            }
+        },
+        /** not supported, as the entity is not an {@link AbstractEntity} */
+        UNSUPPORTED {
+            Object invoke(EntityProxyImpl handler, Method m, Object[] args) throws Throwable {
+                // TODO Extract out the AbstractEntity.invokeMethod logic for wrapping as effector call
+                throw new IllegalArgumentException("Entity does not extend AbstractEntity (currently unsupported for proxy), for entity "+handler.delegate);
+            }
+        };
+        
+        abstract Object invoke(EntityProxyImpl handler, Method m, Object[] args) throws Throwable;
+    }
+    
+    private final ConcurrentMap<Method, Handler> dispatch;
+    
     public EntityProxyImpl(Entity entity) {
         this.delegate = checkNotNull(entity, "entity");
+        this.dispatch = getDispatch(entity);
+    }
+    
+    /** 
+     * The dispatch shared by all entities of the entity's class; or, if effectors may be defined by instance fields 
+     * (so whether a method is an effector can differ between entities of the class), one for this entity alone.
+     */
+    private static ConcurrentMap<Method, Handler> getDispatch(Entity entity) {
+        Class<? extends Entity> entityClass = entity.getClass();
+        if (entity instanceof AbstractEntity && !EntityDynamicType.isSameForAllInstances(entityClass)) {
+            return new ConcurrentHashMap<Method, Handler>();
+        }
+        ConcurrentMap<Method, Handler> result = DISPATCH_BY_ENTITY_CLASS.get(entityClass);
+        if (result == null) {
+            ConcurrentMap<Method, Handler> prev = DISPATCH_BY_ENTITY_CLASS.putIfAbsent(entityClass, result = new ConcurrentHashMap<Method, Handler>());
+            if (prev != null) result = prev;
+        }
+        return result;
+    }
+    
+    private Handler resolveHandler(Method m) {
+        MethodSignature sig = new MethodSignature(m);
+        if (OBJECT_METHODS.contains(sig)) {
+            return Handler.OBJECT;
+        } else if (ENTITY_NON_EFFECTOR_METHODS.contains(sig)) {
+            return Handler.ENTITY;
+        } else if (!(delegate instanceof AbstractEntity)) {
+            return Handler.UNSUPPORTED;
+        } else if (!isEffectorMethod(m, ((AbstractEntity)delegate).getEffector(m.getName())) && m.getDeclaringClass().isInstance(delegate)) {
+            return Handler.DIRECT;
+        } else {
+            return Handler.INVOKE_METHOD;
+        }
+    }
+    
+    /** 
+     * Whether the method is the given effector (if not null): i.e. it has the same parameter types, so is not merely 
+     * an overload of the same name. Types are compared loosely (allowing for boxing, and for the effector declaring 
+     * a sub- or super-type), as the effector's parameters need not have been taken from this method.
+     */
+    private static boolean isEffectorMethod(Method m, Effector<?> effector) {
+        if (effector == null) return false;
+        Class<?>[] parameterTypes = m.getParameterTypes();
+        List<ParameterType<?>> effectorParameters = effector.getParameters();
+        if (effectorParameters.size() != parameterTypes.length) return false;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> effectorType = effectorParameters.get(i).getParameterClass();
+            if (effectorType == null) continue;
+            Class<?> methodType = Primitives.wrap(parameterTypes[i]);
+            effectorType = Primitives.wrap(effectorType);
+            if (!methodType.isAssignableFrom(effectorType) && !effectorType.isAssignableFrom(methodType)) return false;
+        }
+        return true;
     }
     
     @Override
@@ -68,19 +188,13 @@ public class EntityProxyImpl implements java.lang.reflect.InvocationHandler {
             throw new IllegalArgumentException("Static methods not supported via proxy on entity "+delegate);
         }
         
-        MethodSignature sig = new MethodSignature(m);
-
-        Object result;
-        if (OBJECT_METHODS.contains(sig)) {
-            result = m.invoke(this, args);
-        } else if (ENTITY_NON_EFFECTOR_METHODS.contains(sig)) {
-            result = m.invoke(delegate, args);
-        } else if (delegate instanceof AbstractEntity) {
-            result = ((AbstractEntity)delegate).invokeMethod(m.getName(), (args == null ? new Object[0] : args));
-        } else {
-            // TODO Extract out the AbstractEntity.invokeMethod logic for wrapping as effector call
-            throw new IllegalArgumentException("Entity does not extend AbstractEntity (currently unsupported for proxy), for entity "+delegate);
+        Handler handler = dispatch.get(m);
+        if (handler == null) {
+            // on the first calls of a method, other proxies sharing the dispatch may resolve it too, to the same handler
+            handler = resolveHandler(m);
+            dispatch.put(m, handler);
         }
+        Object result = handler.invoke(this, m, args);
         
         return (result == delegate && delegate instanceof AbstractEntity) ? ((AbstractEntity)result).getProxy() : result;
     }
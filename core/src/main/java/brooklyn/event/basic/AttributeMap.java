@@ -1,16 +1,18 @@
 package brooklyn.event.basic;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.AbstractEntity;
+import brooklyn.entity.basic.EntityDynamicType;
 import brooklyn.event.AttributeSensor;
 
 import com.google.common.collect.Maps;
@@ -29,11 +31,33 @@ public final class AttributeMap implements Serializable {
 
     final AbstractEntity entity;
 
+    private static final int INITIAL_CAPACITY = 16;
+
     /**
-     * The values are stored as nested maps, with the key being the constituent parts of the sensor.
+     * The values, in an open-addressing hash table keyed by sensor id (see {@link EntityDynamicType#getSensorId(String)}),
+     * so a get or update is an index into this array rather than hashing the sensor's name.
+     * <p>
+     * Entries are never removed (only their values cleared), and at most half the slots are used, so a lookup always
+     * ends at the entry for the id or at an empty slot. Writers synchronize on this map, replacing the array when
+     * it fills and re-assigning it after adding an entry; readers take no lock, so concurrent updates and gets
+     * are safe (ENGR-2111).
      */
-    // Note that we synchronize on the top-level map, to handle concurrent updates and and gets (ENGR-2111)
-    private final ConcurrentMap<Collection<String>, Object> values = new ConcurrentHashMap<Collection<String>, Object>();
+    private transient volatile Entry[] table = new Entry[INITIAL_CAPACITY];
+    private transient int size = 0;
+
+    private static final class Entry {
+        final int sensorId;
+        /** the value, {@link AttributeMap#NULL} if set to null, or null if not set */
+        volatile Object value;
+        /** when the value was last set (whether or not that changed it), in utc millis */
+        volatile long lastUpdatedUtc;
+
+        Entry(int sensorId, Object value, long lastUpdatedUtc) {
+            this.sensorId = sensorId;
+            this.value = value;
+            this.lastUpdatedUtc = lastUpdatedUtc;
+        }
+    }
 
     /**
      * Creates a new AttributeMap.
@@ -47,10 +71,11 @@ public final class AttributeMap implements Serializable {
 
     public Map<String, Object> asMap() {
         Map<String, Object> result = Maps.newLinkedHashMap();
-        for (Map.Entry<Collection<String>, Object> entry : values.entrySet()) {
-            String sensorName = Joiner.on('.').join(entry.getKey());
-            Object val = (isNull(entry.getValue())) ? null : entry.getValue();
-            result.put(sensorName, val);
+        for (Entry entry : table) {
+            if (entry == null) continue;
+            Object val = entry.value;
+            if (val == null) continue;
+            result.put(EntityDynamicType.getSensorName(entry.sensorId), isNull(val) ? null : val);
         }
         return result;
     }
@@ -67,16 +92,11 @@ public final class AttributeMap implements Serializable {
     public <T> T update(Collection<String> path, T newValue) {
         checkPath(path);
 
-        if (newValue == null) {
-            newValue = typedNull();
-        }
-
         if (log.isTraceEnabled()) {
             log.trace("setting sensor {}={} for {}", new Object[] {path, newValue, entity});
         }
 
-        T oldValue = (T) values.put(path, newValue);
-        return (isNull(oldValue)) ? null : oldValue;
+        return (T) put(sensorIdOf(path), newValue);
     }
 
     private void checkPath(Collection<String> path) {
@@ -100,9 +120,31 @@ public final class AttributeMap implements Serializable {
             }
         }
 
-        T oldValue = (T) update(attribute.getNameParts(), newValue);
-        
-        return (isNull(oldValue)) ? null : oldValue;
+        return (T) put(sensorIdOf(attribute), newValue);
+    }
+
+    /**
+     * As {@link #updateWithoutPublishing(AttributeSensor, Object)}, but leaves the value alone if it equals the current one;
+     * an attribute which was never set (or was removed) does not equal one set to null.
+     * The time of the update is recorded either way, see {@link #getLastUpdated(AttributeSensor)}.
+     *
+     * @return true if the value changed
+     */
+    public <T> boolean updateWithoutPublishingIfChanged(AttributeSensor<T> attribute, T newValue) {
+        boolean changed = putIfChanged(sensorIdOf(attribute), (newValue == null) ? NULL : newValue);
+        if (log.isTraceEnabled()) {
+            log.trace("setting attribute {} to {} ({}) on {}", new Object[] {attribute.getName(), newValue, (changed ? "changed" : "unchanged"), entity});
+        }
+        return changed;
+    }
+
+    /**
+     * @return when the attribute was last set (by any of the update methods, whether or not that changed its value),
+     *         in utc millis; or -1 if it has never been set
+     */
+    public long getLastUpdated(AttributeSensor<?> attribute) {
+        Entry e = find(table, sensorIdOf(attribute));
+        return (e != null) ? e.lastUpdatedUtc : -1;
     }
 
     public void remove(AttributeSensor<?> attribute) {
@@ -110,7 +152,7 @@ public final class AttributeMap implements Serializable {
             log.debug("removing attribute {} on {}", attribute.getName(), entity);
         }
 
-        remove(attribute.getNameParts());
+        put(sensorIdOf(attribute), null, true);
     }
 
     // TODO path must be ordered(and legal to contain duplicates like "a.b.a"; list would be better
@@ -121,7 +163,7 @@ public final class AttributeMap implements Serializable {
             log.trace("removing sensor {} for {}", new Object[] {path, entity});
         }
 
-        values.remove(path);
+        put(sensorIdOf(path), null, true);
     }
 
     /**
@@ -136,19 +178,119 @@ public final class AttributeMap implements Serializable {
         // or the leaf value if only one value. Arguably that is not required - what is/was the use-case?
         // 
         checkPath(path);
-        Object result = values.get(path);
-        return (isNull(result)) ? null : result;
+        return get(sensorIdOf(path));
     }
 
     public <T> T getValue(AttributeSensor<T> sensor) {
-        return (T) getValue(sensor.getNameParts());
+        return (T) get(sensorIdOf(sensor));
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> T typedNull() {
-        return (T) NULL;
+    private static int sensorIdOf(AttributeSensor<?> sensor) {
+        if (sensor instanceof BasicSensor) {
+            // cached, as String.hashCode, so racing to set it is harmless
+            BasicSensor<?> s = (BasicSensor<?>) sensor;
+            int result = s.sensorId;
+            if (result == 0) s.sensorId = result = EntityDynamicType.getSensorId(s.getName());
+            return result;
+        }
+        return EntityDynamicType.getSensorId(sensor.getName());
     }
-    
+
+    private static int sensorIdOf(Collection<String> path) {
+        return EntityDynamicType.getSensorId(Joiner.on('.').join(path));
+    }
+
+    private static int indexFor(int sensorId, int mask) {
+        int h = sensorId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private Entry find(Entry[] tab, int sensorId) {
+        int mask = tab.length - 1;
+        for (int i = indexFor(sensorId, mask); ; i = (i + 1) & mask) {
+            Entry e = tab[i];
+            if (e == null || e.sensorId == sensorId) return e;
+        }
+    }
+
+    private Object get(int sensorId) {
+        Entry e = find(table, sensorId);
+        Object result = (e != null) ? e.value : null;
+        return (isNull(result)) ? null : result;
+    }
+
+    private Object put(int sensorId, Object newValue) {
+        return put(sensorId, (newValue == null) ? NULL : newValue, false);
+    }
+
+    /** sets the value (or clears it if removing), returning the old value */
+    private synchronized Object put(int sensorId, Object newValue, boolean removing) {
+        Entry[] tab = table;
+        Entry e = find(tab, sensorId);
+        Object oldValue;
+        if (e != null) {
+            oldValue = e.value;
+            e.value = newValue;
+            if (!removing) e.lastUpdatedUtc = System.currentTimeMillis();
+        } else {
+            oldValue = null;
+            if (!removing) {
+                if ((size + 1) * 2 > tab.length) tab = resize(tab);
+                int mask = tab.length - 1;
+                int i = indexFor(sensorId, mask);
+                while (tab[i] != null) i = (i + 1) & mask;
+                tab[i] = new Entry(sensorId, newValue, System.currentTimeMillis());
+                size++;
+                // publishes the new entry to readers
+                table = tab;
+            }
+        }
+        return (isNull(oldValue)) ? null : oldValue;
+    }
+
+    /** as {@link #put(int, Object, boolean)}, unless the current value equals the new one, in which case only the update time is recorded */
+    private synchronized boolean putIfChanged(int sensorId, Object newValue) {
+        Entry e = find(table, sensorId);
+        if (e != null && Objects.equal(e.value, newValue)) {
+            e.lastUpdatedUtc = System.currentTimeMillis();
+            return false;
+        }
+        put(sensorId, newValue, false);
+        return true;
+    }
+
+    private Entry[] resize(Entry[] tab) {
+        Entry[] result = new Entry[tab.length * 2];
+        int mask = result.length - 1;
+        for (Entry e : tab) {
+            if (e == null) continue;
+            int i = indexFor(e.sensorId, mask);
+            while (result[i] != null) i = (i + 1) & mask;
+            result[i] = e;
+        }
+        return result;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        Map<String, Object> values = asMap();
+        out.writeInt(values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            out.writeObject(entry.getKey());
+            out.writeObject(entry.getValue());
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        table = new Entry[INITIAL_CAPACITY];
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String sensorName = (String) in.readObject();
+            put(EntityDynamicType.getSensorId(sensorName), in.readObject());
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private boolean isNull(Object t) {
         return t == NULL;
@@ -28,6 +28,8 @@ public class BasicSensor<T> implements Sensor<T> {
     private String name;
     private String description;
     private transient List<String> nameParts;
+    /** cached {@link brooklyn.entity.basic.EntityDynamicType#getSensorId(String)} for the name, or 0 if not yet known; see {@link AttributeMap} */
+    transient int sensorId;
     
     // FIXME In groovy, fields were `public final` with a default constructor; do we need the gson?
     public BasicSensor() { /* for gson */ }
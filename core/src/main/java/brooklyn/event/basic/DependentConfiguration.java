@@ -2,12 +2,11 @@ package brooklyn.event.basic;
 
 import groovy.lang.Closure;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,13 +19,13 @@ import brooklyn.event.AttributeSensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
 import brooklyn.management.ExecutionContext;
+import brooklyn.management.SubscriptionContext;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.Task;
 import brooklyn.util.GroovyJavaMethods;
 import brooklyn.util.MutableMap;
-import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.BasicTask;
-import brooklyn.util.task.ParallelTask;
+import brooklyn.util.task.ContinuationTask;
 import brooklyn.util.task.Tasks;
 
 import com.google.common.base.Function;
@@ -36,6 +35,10 @@ import com.google.common.base.Predicates;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 /** Conveniences for making tasks which run in entity {@link ExecutionContext}s, subscribing to attributes from other entities, possibly transforming those;
  * these {@link Task} instances are typically passed in {@link EntityLocal#setConfig(ConfigKey, Object)}.
@@ -64,15 +67,17 @@ public class DependentConfiguration {
         return attributeWhenReady(source, sensor, readyPredicate);
     }
     
-    /** returns a {@link Task} which blocks until the given sensor on the given source entity gives a value that satisfies ready, then returns that value;
-     * particular useful in Entity configuration where config will block until Tasks have a value
+    /** returns a {@link Task} which completes when the given sensor on the given source entity gives a value that satisfies ready, returning that value;
+     * particular useful in Entity configuration where config will block until Tasks have a value.
+     * <p>
+     * The task does not hold a thread while it waits: it completes from the subscription's event delivery (see {@link ContinuationTask}).
      */
     public static <T> Task<T> attributeWhenReady(final Entity source, final AttributeSensor<T> sensor, final Predicate<? super T> ready) {
-        return new BasicTask<T>(
+        return new ContinuationTask<T>(
                 MutableMap.of("tag", "attributeWhenReady", "displayName", "retrieving "+source+" "+sensor), 
-                new Callable<T>() {
-                    public T call() {
-                        return waitInTaskForAttributeReady(source, sensor, ready);
+                new Callable<ListenableFuture<T>>() {
+                    public ListenableFuture<T> call() {
+                        return attributeReadyFuture(source, sensor, ready);
                     }
                 });
     }
@@ -104,58 +109,73 @@ public class DependentConfiguration {
     }
 
     public static <T,V> Task<V> attributePostProcessedWhenReady(final Entity source, final AttributeSensor<T> sensor, final Predicate<? super T> ready, final Function<? super T,V> postProcess) {
-        return new BasicTask<V>(
+        return new ContinuationTask<V>(
                 MutableMap.of("tag", "attributePostProcessedWhenReady", "displayName", "retrieving "+source+" "+sensor), 
-                new Callable<V>() {
-                    public V call() {
-                        T result = waitInTaskForAttributeReady(source, sensor, ready);
-                        return postProcess.apply(result);
+                new Callable<ListenableFuture<V>>() {
+                    public ListenableFuture<V> call() {
+                        return Futures.transform(attributeReadyFuture(source, sensor, ready), postProcess, MoreExecutors.sameThreadExecutor());
                     }
                 });
     }
 
+    /** blocks the current task until the given sensor on the given source entity gives a value that satisfies ready, returning that value;
+     * this necessarily holds the caller's thread, as it returns the value itself rather than a task or future, 
+     * so {@link #attributeWhenReady(Entity, AttributeSensor, Predicate)} is preferred where the caller can wait on a task */
     public static <T> T waitInTaskForAttributeReady(Entity source, AttributeSensor<T> sensor, Predicate<? super T> ready) {
+        ListenableFuture<T> future = attributeReadyFuture(source, sensor, ready);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            Tasks.setBlockingDetails(null);
+        }
+    }
+    
+    /** returns a future which completes with the value of the given sensor on the given source entity once that satisfies ready,
+     * subscribing until then (cancelling the future unsubscribes); 
+     * unless the value is ready already, this must be invoked in a task with an entity tag, whose subscription context is used */
+    private static <T> ListenableFuture<T> attributeReadyFuture(Entity source, AttributeSensor<T> sensor, Predicate<? super T> ready) {
         T value = source.getAttribute(sensor);
         if (ready==null) ready = GroovyJavaMethods.truthPredicate();
-        if (ready.apply(value)) return value;
+        if (ready.apply(value)) return Futures.immediateFuture(value);
         BasicTask current = (BasicTask) Tasks.current();
         if (current == null) throw new IllegalStateException("Should only be invoked in a running task");
         Entity entity = Iterables.find(current.getTags(), Predicates.instanceOf(Entity.class));
         if (entity == null) throw new IllegalStateException("Should only be invoked in a running task with an entity tag; "+
                 current+" has no entity tag ("+current.getStatusDetail(false)+")");
-        final AtomicReference<T> data = new AtomicReference<T>();
-        final Semaphore semaphore = new Semaphore(0); // could use Exchanger
-        SubscriptionHandle subscription = null;
-        try {
-            subscription = ((EntityInternal)entity).getSubscriptionContext().subscribe(source, sensor, new SensorEventListener<T>() {
-                public void onEvent(SensorEvent<T> event) {
-                    data.set(event.getValue());
-                    semaphore.release();
-                }});
-            value = source.getAttribute(sensor);
-            while (!ready.apply(value)) {
-                current.setBlockingDetails("Waiting for notification from subscription on "+source+" "+sensor);
-                semaphore.acquire();
-                current.setBlockingDetails(null);
-                value = data.get();
-            }
-            if (LOG.isDebugEnabled()) LOG.debug("Attribute-ready for {} in entity {}", sensor, source);
-            return value;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw Throwables.propagate(e);
-        } finally {
-            if (subscription != null) {
-                ((EntityInternal)entity).getSubscriptionContext().unsubscribe(subscription);
-            }
-        }
+        
+        final SettableFuture<T> result = SettableFuture.create();
+        final SubscriptionContext subscriptionContext = ((EntityInternal)entity).getSubscriptionContext();
+        final Predicate<? super T> finalReady = ready;
+        final String description = source+" "+sensor;
+        current.setBlockingDetails("Waiting for notification from subscription on "+description);
+        final SubscriptionHandle subscription = subscriptionContext.subscribe(source, sensor, new SensorEventListener<T>() {
+            public void onEvent(SensorEvent<T> event) {
+                if (finalReady.apply(event.getValue()) && result.set(event.getValue())) {
+                    if (LOG.isDebugEnabled()) LOG.debug("Attribute-ready for {}", description);
+                }
+            }});
+        result.addListener(new Runnable() {
+            public void run() {
+                subscriptionContext.unsubscribe(subscription);
+            }}, MoreExecutors.sameThreadExecutor());
+        
+        // the value may have changed before the subscription was in place
+        value = source.getAttribute(sensor);
+        if (ready.apply(value)) result.set(value);
+        return result;
     }
     
     /**
      * Returns a {@link Task} which blocks until the given job returns, then returns the value of that job.
      */
     public static <T> Task<T> whenDone(Callable<T> job) {
-        return new BasicTask<T>(MutableMap.of("tag", "whenDone", "displayName", "waiting for job"), job);
+        return new BasicTask<T>(MutableMap.of("tag", "whenDone", "displayName", "waiting for job", "blocking", true), job);
     }
 
     /**
@@ -168,13 +188,7 @@ public class DependentConfiguration {
      * the value that is used for the configuration
      */
     public static <U,T> Task<T> transform(final Task<U> task, final Function<U,T> transformer) {
-        return new BasicTask<T>(new Callable<T>() {
-            public T call() throws Exception {
-                if (!task.isSubmitted()) {
-                    BasicExecutionContext.getCurrentExecutionContext().submit(task);
-                } 
-                return transformer.apply(task.get());
-            }});
+        return Tasks.then(task, transformer);
     }
  
     /** @see #transform(Task, Function) */
@@ -186,14 +200,14 @@ public class DependentConfiguration {
      * and performs arbitrary computation over the List of results.
      * @see #transform(Task, Function) but note argument order is reversed (counterintuitive) to allow for varargs */
     public static <U,T> Task<T> transformMultiple(Function<List<U>,T> transformer, Task<U> ...tasks) {
-        return transform(new ParallelTask(tasks), transformer);
+        return Tasks.then(Tasks.<U>allOf(Arrays.asList(tasks)), transformer);
     }
 
     /** Returns a task which waits for multiple other tasks (submitting if necessary)
      * and performs arbitrary computation over the List of results.
      * @see #transform(Task, Function) but note argument order is reversed (counterintuitive) to allow for varargs */
     public static <U,T> Task<T> transformMultiple(Closure transformer, Task<U> ...tasks) {
-        return transform(new ParallelTask(tasks), transformer);
+        return transformMultiple(GroovyJavaMethods.<List<U>,T>functionFromClosure(transformer), tasks);
     }
 
     /** Method which returns a Future containing a string formatted using String.format,
@@ -238,13 +252,13 @@ public class DependentConfiguration {
     
     public static <T> Task<List<T>> listAttributesWhenReady(AttributeSensor<T> sensor, Iterable<Entity> entities, Closure readiness) {
         Predicate<T> readinessPredicate = (readiness != null) ? GroovyJavaMethods.predicateFromClosure(readiness) : GroovyJavaMethods.truthPredicate();
-        return listAttributesWhenReady(sensor, entities, readiness);
+        return listAttributesWhenReady(sensor, entities, readinessPredicate);
     }
     
     /** returns a task for parallel execution returning a list of values of the given sensor list on the given entity, 
      * optionally when the values satisfy a given readiness predicate (defaulting to groovy truth if not supplied) */    
     public static <T> Task<List<T>> listAttributesWhenReady(final AttributeSensor<T> sensor, Iterable<Entity> entities, final Predicate<? super T> readiness) {
-        return new ParallelTask<T>(Iterables.transform(entities, new Function<Entity, Task<T>>() {
+        return Tasks.<T>allOf(Iterables.transform(entities, new Function<Entity, Task<T>>() {
             @Override public Task<T> apply(Entity it) {
                 return attributeWhenReady(it, sensor, readiness);
             }
@@ -5,6 +5,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.AttributeSensor;
 import brooklyn.util.flags.TypeCoercions;
@@ -46,7 +47,7 @@ public class AttributePollHandler<V> implements PollHandler<V> {
         try {
             Object v = transformValue(val);
             if (v != PollConfig.UNSET) {
-                entity.setAttribute(sensor, v);
+                setAttribute(v);
             }
         } catch (Exception e) {
             if (feed.isConnected()) {
@@ -72,7 +73,7 @@ public class AttributePollHandler<V> implements PollHandler<V> {
             try {
                 Object v = transformError(error);
                 if (v != PollConfig.UNSET) {
-                    entity.setAttribute(sensor, v);
+                    setAttribute(v);
                 }
             } catch (Exception e) {
                 if (feed.isConnected()) {
@@ -84,6 +85,14 @@ public class AttributePollHandler<V> implements PollHandler<V> {
         }
     }
     
+    protected void setAttribute(Object v) {
+        if (config.isOnlyIfChanged() && entity instanceof EntityInternal) {
+            ((EntityInternal)entity).setAttributeIfChanged(sensor, v);
+        } else {
+            entity.setAttribute(sensor, v);
+        }
+    }
+    
     /**
      * Does post-processing on the result of the actual poll, to convert it to the attribute's new value.
      * Or returns PollConfig.UNSET if the post-processing indicates that the attribute should not be changed.
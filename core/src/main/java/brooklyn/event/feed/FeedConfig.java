@@ -19,6 +19,7 @@ public class FeedConfig<V, T, This extends FeedConfig<V,T,This>> {
     private final AttributeSensor<T> sensor;
     private Function<? super V, T> onsuccess;
     private Function<? super Exception, T> onerror;
+    private boolean onlyIfChanged;
 
     public FeedConfig(AttributeSensor<T> sensor) {
         this.sensor = checkNotNull(sensor, "sensor");
@@ -28,6 +29,7 @@ public class FeedConfig<V, T, This extends FeedConfig<V,T,This>> {
         this.sensor = other.sensor;
         this.onsuccess = other.onsuccess;
         this.onerror = other.onerror;
+        this.onlyIfChanged = other.onlyIfChanged;
     }
 
     @SuppressWarnings("unchecked")
@@ -47,6 +49,10 @@ public class FeedConfig<V, T, This extends FeedConfig<V,T,This>> {
         return onerror;
     }
     
+    public boolean isOnlyIfChanged() {
+        return onlyIfChanged;
+    }
+    
     public This onSuccess(Function<? super V,T> val) {
         this.onsuccess = checkNotNull(val, "onSuccess");
         return self();
@@ -56,4 +62,14 @@ public class FeedConfig<V, T, This extends FeedConfig<V,T,This>> {
         this.onerror = checkNotNull(val, "onError");
         return self();
     }
+    
+    /**
+     * Whether to set the sensor only when its value has changed; if so, a poll giving the same value as
+     * the last one publishes no attribute-change event (see {@link brooklyn.entity.basic.EntityInternal#setAttributeIfChanged}).
+     * Defaults to false, i.e. every poll result is published.
+     */
+    public This onlyIfChanged(boolean val) {
+        this.onlyIfChanged = val;
+        return self();
+    }
 }
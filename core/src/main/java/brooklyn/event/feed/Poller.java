@@ -1,5 +1,6 @@
 package brooklyn.event.feed;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.LinkedHashSet;
@@ -9,7 +10,12 @@ import java.util.concurrent.Callable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.ConfigKey;
+import brooklyn.config.StringConfigMap;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
+import brooklyn.event.basic.BasicConfigKey;
+import brooklyn.management.ManagementContext;
 import brooklyn.management.Task;
 import brooklyn.util.MutableMap;
 import brooklyn.util.task.BasicTask;
@@ -28,10 +34,35 @@ import com.google.common.base.Objects;
 public class Poller<V> {
     public static final Logger log = LoggerFactory.getLogger(Poller.class);
 
+    /** 
+     * How the first poll of each job is offset from the start, so that the polls of many entities 
+     * (e.g. when a large cluster starts) do not all fire at the same instant of every period.
+     */
+    public static enum PollPhase {
+        /** poll immediately */
+        NONE,
+        /** offset by a hash of the entity's id and the job, so it is the same each time the entity's feed is started */
+        ENTITY_ID_HASH,
+        /** offset by a random fraction of the period */
+        RANDOM
+    }
+    
+    public static final ConfigKey<PollPhase> POLL_PHASE = new BasicConfigKey<PollPhase>(
+            PollPhase.class, "brooklyn.feeds.pollPhase", 
+            "how to offset the first poll of each feed job: NONE, ENTITY_ID_HASH or RANDOM (within the first period)", 
+            PollPhase.NONE);
+    
+    public static final ConfigKey<Double> POLL_JITTER = new BasicConfigKey<Double>(
+            Double.class, "brooklyn.feeds.pollJitter", 
+            "fraction of the period by which each poll may randomly be early or late (e.g. 0.1 for up to 10%); 0 for none", 
+            0d);
+
     private final EntityLocal entity;
     private final Set<PollJob<V>> pollJobs = new LinkedHashSet<PollJob<V>>();
     private final Set<ScheduledTask> tasks = new LinkedHashSet<ScheduledTask>();
     private volatile boolean running = false;
+    private PollPhase phase;
+    private Double jitter;
     
     private static class PollJob<V> {
         final Callable<V> job;
@@ -69,6 +100,17 @@ public class Poller<V> {
         pollJobs.add(foo);
     }
 
+    /** sets how the first polls are offset, instead of using {@link #POLL_PHASE} from the management context */
+    public void setPhase(PollPhase phase) {
+        this.phase = phase;
+    }
+    
+    /** sets the jitter for polls, instead of using {@link #POLL_JITTER} from the management context */
+    public void setJitter(double jitter) {
+        checkArgument(jitter >= 0 && jitter <= 1, "jitter must be between 0 and 1, but was %s", jitter);
+        this.jitter = jitter;
+    }
+    
     public void start() {
         // TODO Previous incarnation of this logged this logged polledSensors.keySet(), but we don't know that anymore
         // Is that ok, are can we do better?
@@ -81,17 +123,42 @@ public class Poller<V> {
         
         running = true;
         
+        StringConfigMap config = getManagementConfig();
+        PollPhase phase = (this.phase != null) ? this.phase : (config != null) ? config.getConfig(POLL_PHASE) : POLL_PHASE.getDefaultValue();
+        double jitter = (this.jitter != null) ? this.jitter : (config != null) ? config.getConfig(POLL_JITTER) : POLL_JITTER.getDefaultValue();
+        
+        int jobIndex = 0;
         for (final PollJob<V> pollJob : pollJobs) {
             if (pollJob.pollPeriod > 0) {
                 Callable<Task<?>> pollingTaskFactory = new Callable<Task<?>>() {
                     public Task<?> call() {
                         return new BasicTask<V>(MutableMap.of("entity", entity), pollJob.wrappedJob); }
                 };
-                ScheduledTask task = new ScheduledTask(MutableMap.of("period", pollJob.pollPeriod), pollingTaskFactory);
+                long initialDelay = getInitialDelay(phase, jobIndex, pollJob.pollPeriod);
+                ScheduledTask task = new ScheduledTask(MutableMap.of("period", pollJob.pollPeriod, "delay", initialDelay, "jitter", jitter), pollingTaskFactory);
                 tasks.add((ScheduledTask) entity.getExecutionContext().submit(task));
             } else {
                 if (log.isDebugEnabled()) log.debug("Activating poll (but leaving off, as period {}) for {} (using {})", new Object[] {pollJob.pollPeriod, entity, this});
             }
+            jobIndex++;
+        }
+    }
+    
+    private StringConfigMap getManagementConfig() {
+        ManagementContext managementContext = (entity instanceof EntityInternal) ? ((EntityInternal)entity).getManagementContext() : null;
+        return (managementContext != null) ? managementContext.getConfig() : null;
+    }
+    
+    /** offset of the first poll of the given job, within its period */
+    protected long getInitialDelay(PollPhase phase, int jobIndex, long period) {
+        switch (phase) {
+        case ENTITY_ID_HASH:
+            int hash = Objects.hashCode(entity.getId(), jobIndex);
+            return (hash & Integer.MAX_VALUE) % period;
+        case RANDOM:
+            return (long) (Math.random() * period);
+        default:
+            return 0;
         }
     }
     
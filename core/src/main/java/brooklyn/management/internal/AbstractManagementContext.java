@@ -177,6 +177,7 @@ public abstract class AbstractManagementContext implements ManagementContext  {
                         .put("description", "invoking "+eff.getName()+" on "+entity.getDisplayName())
                         .put("displayName", eff.getName())
                         .put("tags", MutableList.of(EFFECTOR_TAG))
+                        .put("blocking", true)
                         .build(), 
                 entity, 
                 new Callable<T>() {
@@ -208,6 +209,7 @@ public abstract class AbstractManagementContext implements ManagementContext  {
                                 .put("description", "invoking "+eff.getName()+" on "+entity.getDisplayName())
                                 .put("displayName", eff.getName())
                                 .put("tags", MutableList.of(EFFECTOR_TAG))
+                                .put("blocking", true)
                                 .build(), 
                         entity, 
                         new Callable<T>() {
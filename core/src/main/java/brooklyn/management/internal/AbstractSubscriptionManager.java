@@ -25,7 +25,12 @@ public abstract class AbstractSubscriptionManager implements SubscriptionManager
     @SuppressWarnings("unused")
     private static final Logger LOG = LoggerFactory.getLogger(AbstractSubscriptionManager.class);
 
-    /** performs the actual subscription; should return the subscription parameter as the handle */
+    /** 
+     * performs the actual subscription; should return the subscription parameter as the handle.
+     * <p>
+     * Where {@link Subscription#producerGroup} or {@link Subscription#producerParent} is set, the subscription
+     * is to events from the members or children (respectively) of that entity, rather than to a single producer.
+     */
     protected abstract <T> SubscriptionHandle subscribe(Map<String, Object> flags, Subscription<T> s);
     /** performs the actual publishing -- ie distribution to subscriptions */
     public abstract <T> void publish(final SensorEvent<T> event);
@@ -74,7 +79,19 @@ public abstract class AbstractSubscriptionManager implements SubscriptionManager
      *      if not supplied and there is a subscriber, this will be inferred from the subscriber and set up with SingleThreadedScheduler
      *      (supply this flag with value null to prevent any task preprocessor from being set)
      * <li>eventFilter - a Predicate&lt;SensorEvent&gt; instance to filter what events are delivered
+     * <li>coalesce - if true, events not yet delivered are replaced by any newer event from the same producer and sensor
+     *      (for subscribers which only care about the latest value)
+     * <li>maxQueuedEvents - the maximum number of undelivered events to queue for the subscriber
+     *      (default is given by the manager's configuration, normally unlimited)
+     * <li>queueOverflowPolicy - what to do when that limit is reached, one of DROP_OLDEST, DROP_NEWEST or BLOCK
+     * <li>blocking - if true, the listener may block for a long time (e.g. on I/O), so the subscriber's deliveries use 
+     *      the execution manager's elastic pool rather than its bounded pool for short tasks 
+     *      (see {@link brooklyn.util.task.BasicExecutionManager#MAX_SHORT_TASK_THREADS})
      * </ul>
+     * A subscriber's subscriptions share one queue, so maxQueuedEvents and queueOverflowPolicy are taken from 
+     * the first of its subscriptions which needs a queue; differing values on later subscriptions are ignored (with a warning).
+     * Once a subscriber has a queue, all its subscriptions deliver through it (so that its events stay in order), 
+     * and the queue's limit applies to all its events.
      * 
      * @see SubscriptionManager#subscribe(Map, Entity, Sensor, SensorEventListener)
      */
@@ -89,13 +106,10 @@ public abstract class AbstractSubscriptionManager implements SubscriptionManager
 
     /** @see SubscriptionManager#subscribe(Map, Entity, Sensor, SensorEventListener) */
     public final  <T> SubscriptionHandle subscribeToChildren(Map<String, Object> flags, final Entity parent, Sensor<T> sensor, SensorEventListener<? super T> listener) {
-        Predicate<SensorEvent<T>> eventFilter = new Predicate<SensorEvent<T>>() {
-            public boolean apply(SensorEvent<T> input) {
-                return parent.getChildren().contains(input.getSource());
-            }
-        };
-        flags.put("eventFilter", eventFilter);
-        return subscribe(flags, null, sensor, listener);
+        // the child relationship is indexed by the manager (see Subscription#producerParent), so no filter is needed
+        Subscription<T> s = new Subscription<T>(null, sensor, listener);
+        s.producerParent = parent;
+        return subscribe(flags, s);
     }
 
     /** @see SubscriptionManager#subscribeToChildren(Map, Entity, Sensor, SensorEventListener) */
@@ -110,8 +124,12 @@ public abstract class AbstractSubscriptionManager implements SubscriptionManager
                 return parent.getMembers().contains(input.getSource());
             }
         };
+        // the manager only offers events from entities which list this group in getGroups(); but that is not
+        // updated when a member is removed, so the filter is still needed to confirm current membership
         flags.put("eventFilter", eventFilter);
-        return subscribe(flags, null, sensor, listener);
+        Subscription<T> s = new Subscription<T>(null, sensor, listener);
+        s.producerGroup = parent;
+        return subscribe(flags, s);
     }
 
     protected <T> Object getSubscriber(Map<String, Object> flags, Subscription<T> s) {
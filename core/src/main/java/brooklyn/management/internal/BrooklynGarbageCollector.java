@@ -1,8 +1,7 @@
 package brooklyn.management.internal;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -21,8 +20,11 @@ import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.exceptions.RuntimeInterruptedException;
 import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.ExecutionListener;
+import brooklyn.util.task.TaskDeletionListener;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * Deletes record of old tasks, to prevent space leaks and the eating up of more and more memory.
@@ -40,6 +42,11 @@ import com.google.common.collect.Lists;
  * The default is to check with a period of one minute, to keep at most 100 tasks per tag, and to
  * delete old completed tasks after one day.
  * 
+ * Completed tasks which are kept are indexed as they complete, per tag and overall in order of completion, 
+ * so each check only touches the tasks it deletes (and the tags with too many tasks), rather than sorting 
+ * all tasks of all tags. Tasks are removed from the indexes whenever the execution manager deletes them, 
+ * by whatever means; and they are deleted from the execution manager outside of this collector's lock.
+ * 
  * @author aled
  */
 public class BrooklynGarbageCollector {
@@ -66,6 +73,11 @@ public class BrooklynGarbageCollector {
     private final long maxTaskAge;
     private volatile boolean running = true;
     
+    // completed tasks being kept, in order of completion (and hence of end time); guarded by this
+    private final Map<Object, Set<Task<?>>> retainedTasksByTag = Maps.newHashMap();
+    private final Set<Task<?>> retainedTasksByEndTime = Sets.newLinkedHashSet();
+    private final Set<Object> tagsOverLimit = Sets.newLinkedHashSet();
+    
     public BrooklynGarbageCollector(BrooklynProperties brooklynProperties, BasicExecutionManager executionManager){
         this.executionManager = executionManager;
 
@@ -82,6 +94,10 @@ public class BrooklynGarbageCollector {
                 @Override public void onTaskDone(Task<?> task) {
                     BrooklynGarbageCollector.this.onTaskDone(task);
                 }});
+        executionManager.addDeletionListener(new TaskDeletionListener() {
+                @Override public void onTaskDeleted(Task<?> task) {
+                    BrooklynGarbageCollector.this.onTaskDeleted(task);
+                }});
     
         executor.scheduleWithFixedDelay(
             new Runnable() {
@@ -107,53 +123,102 @@ public class BrooklynGarbageCollector {
     }
     
     public void onUnmanaged(Entity entity) {
+        // its tasks are unindexed as they are deleted
         executionManager.deleteTag(entity);
+        synchronized (this) {
+            tagsOverLimit.remove(entity);
+        }
     }
     
     public void onTaskDone(Task<?> task) {
-        Set<Object> tags = task.getTags();
-        if (tags.contains(AbstractManagementContext.EFFECTOR_TAG) || tags.contains(AbstractManagementContext.NON_TRANSIENT_TASK_TAG)) {
+        if (isRetained(task)) {
             // keep it for a while
+            index(task);
         } else {
             executionManager.deleteTask(task);
         }
     }
     
+    public void onTaskDeleted(Task<?> task) {
+        // most deletions are of tasks never kept, so only take the lock for those which might be indexed
+        if (isRetained(task)) unindex(task);
+    }
+    
+    private boolean isRetained(Task<?> task) {
+        Set<Object> tags = task.getTags();
+        return tags.contains(AbstractManagementContext.EFFECTOR_TAG) || tags.contains(AbstractManagementContext.NON_TRANSIENT_TASK_TAG);
+    }
+    
+    /** records a completed task which is being kept, so that {@link #gc()} can find the oldest tasks without a search */
+    private synchronized void index(Task<?> task) {
+        for (Object tag : task.getTags()) {
+            if (tag == null || tag.equals(AbstractManagementContext.EFFECTOR_TAG)) {
+                continue; // there'll be other tags
+            }
+            Set<Task<?>> tasksWithTag = retainedTasksByTag.get(tag);
+            if (tasksWithTag == null) {
+                tasksWithTag = Sets.newLinkedHashSet();
+                retainedTasksByTag.put(tag, tasksWithTag);
+            }
+            tasksWithTag.add(task);
+            if (tasksWithTag.size() > maxTasksPerTag) tagsOverLimit.add(tag);
+        }
+        if (maxTaskAge > 0) retainedTasksByEndTime.add(task);
+    }
+    
+    /** removes a task from the indexes (but not from the execution manager) */
+    private synchronized void unindex(Task<?> task) {
+        for (Object tag : task.getTags()) {
+            Set<Task<?>> tasksWithTag = retainedTasksByTag.get(tag);
+            if (tasksWithTag != null) {
+                tasksWithTag.remove(task);
+                if (tasksWithTag.isEmpty()) retainedTasksByTag.remove(tag);
+            }
+        }
+        retainedTasksByEndTime.remove(task);
+    }
+    
+    /**
+     * Deletes the oldest tasks of each tag which has more than the maximum number of tasks, and any which are too old.
+     * The cost is proportional to the number of tasks deleted (plus the number of tags over the limit), rather than to 
+     * the number of tasks kept.
+     */
     private void gc() {
         if (!running) return;
         
-        Set<Object> taskTags = executionManager.getTaskTags();
-        for (Object tag : taskTags) {
-            if (tag == null || tag.equals(AbstractManagementContext.EFFECTOR_TAG)) {
-                continue; // there'll be other tags
+        // not holding our lock, as deleting calls back into onTaskDeleted (which is harmless as they are already unindexed)
+        for (Task<?> task : unindexTasksToDelete()) {
+            executionManager.deleteTask(task);
+        }
+    }
+    
+    /** removes from the indexes, and returns, the tasks which {@link #gc()} should delete */
+    private synchronized List<Task<?>> unindexTasksToDelete() {
+        List<Task<?>> result = Lists.newArrayList();
+        
+        for (Object tag : tagsOverLimit) {
+            Set<Task<?>> tasksWithTag = retainedTasksByTag.get(tag);
+            while (tasksWithTag != null && !tasksWithTag.isEmpty() && tasksWithTag.size() > maxTasksPerTag) {
+                // oldest first, as indexed in order of completion
+                Task<?> oldest = tasksWithTag.iterator().next();
+                unindex(oldest);
+                result.add(oldest);
             }
-            Set<Task<?>> tasksWithTag = executionManager.getTasksWithTag(tag);
-            int numTasksToDelete = (tasksWithTag.size() - maxTasksPerTag);
-            if (numTasksToDelete > 0 || maxTaskAge > 0) {
-                List<Task<?>> sortedTasks = Lists.newArrayList(tasksWithTag);
-                Collections.sort(sortedTasks, new Comparator<Task<?>>() {
-                    @Override public int compare(Task<?> t1, Task<?> t2) {
-                        long end1 = t1.isDone() ? t1.getEndTimeUtc() : Long.MAX_VALUE;
-                        long end2 = t2.isDone() ? t2.getEndTimeUtc() : Long.MAX_VALUE;
-                        return (end1 < end2) ? -1 : ((end1 == end2) ? 0 : 1);
-                    }
-                });
-                if (numTasksToDelete > 0) {
-                    for (Task<?> taskToDelete : sortedTasks.subList(0, numTasksToDelete)) {
-                        if (!taskToDelete.isDone()) break;
-                        executionManager.deleteTask(taskToDelete);
-                    }
-                }
-                if (maxTaskAge > 0) {
-                    for (Task<?> taskContender : sortedTasks.subList((numTasksToDelete > 0 ? numTasksToDelete : 0), sortedTasks.size())) {
-                        if (taskContender.isDone() && (System.currentTimeMillis() - taskContender.getEndTimeUtc() > maxTaskAge)) {
-                            executionManager.deleteTask(taskContender);
-                        } else {
-                            break; // all subsequent tasks will be newer; stop looking
-                        }
-                    }
+        }
+        tagsOverLimit.clear();
+        
+        if (maxTaskAge > 0) {
+            long now = System.currentTimeMillis();
+            while (!retainedTasksByEndTime.isEmpty()) {
+                Task<?> oldest = retainedTasksByEndTime.iterator().next();
+                if (now - oldest.getEndTimeUtc() > maxTaskAge) {
+                    unindex(oldest);
+                    result.add(oldest);
+                } else {
+                    break; // all subsequent tasks will be newer; stop looking
                 }
             }
         }
+        return result;
     }
 }
@@ -13,12 +13,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.config.BrooklynProperties;
+import brooklyn.config.ConfigKey;
 import brooklyn.entity.Application;
 import brooklyn.entity.Entity;
+import brooklyn.event.basic.BasicConfigKey.StringConfigKey;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.ManagementContext;
 import brooklyn.management.SubscriptionManager;
 import brooklyn.management.Task;
+import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.text.Identifiers;
 
@@ -26,12 +29,18 @@ import brooklyn.util.text.Identifiers;
  * A local implementation of the {@link ManagementContext} API.
  */
 public class LocalManagementContext extends AbstractManagementContext {
-    @SuppressWarnings("unused")
     private static final Logger log = LoggerFactory.getLogger(LocalManagementContext.class);
 
+    public static final ConfigKey<String> SUBSCRIPTION_MANAGER_CLASS = new StringConfigKey(
+            "brooklyn.subscriptions.managerClass", 
+            "SubscriptionManager implementation to use; must have a constructor taking (ExecutionManager, BrooklynProperties), "+
+            "e.g. "+RingBufferSubscriptionManager.class.getName(), 
+            LocalSubscriptionManager.class.getName());
+
     private BasicExecutionManager execution;
     private SubscriptionManager subscriptions;
     private LocalEntityManager entityManager;
+    private TaskLatencyRecorder taskLatencies;
     
     private final String shortid = Identifiers.getBase64IdFromValue(System.identityHashCode(this), 5);
     private final String tostring = "LocalManagementContext("+shortid+")";
@@ -90,25 +99,44 @@ public class LocalManagementContext extends AbstractManagementContext {
         if (!isRunning()) throw new IllegalStateException("Management context no longer running");
         
         if (subscriptions == null) {
-            subscriptions = new LocalSubscriptionManager(getExecutionManager());
+            subscriptions = newSubscriptionManager();
         }
         return subscriptions;
     }
 
+    protected SubscriptionManager newSubscriptionManager() {
+        String type = configMap.getConfig(SUBSCRIPTION_MANAGER_CLASS);
+        try {
+            return (SubscriptionManager) Class.forName(type).getConstructor(ExecutionManager.class, BrooklynProperties.class)
+                    .newInstance(getExecutionManager(), configMap);
+        } catch (Exception e) {
+            log.error("Unable to create subscription manager "+type+" (rethrowing)", e);
+            throw Exceptions.propagate(e);
+        }
+    }
+
     @Override
     public synchronized ExecutionManager getExecutionManager() {
         if (!isRunning()) throw new IllegalStateException("Management context no longer running");
         
         if (execution == null) {
-            execution = new BasicExecutionManager(shortid);
+            execution = new BasicExecutionManager(shortid, configMap);
             gc = new BrooklynGarbageCollector(configMap, execution);
+            taskLatencies = new TaskLatencyRecorder(execution);
         }
         return execution;
     }
     
+    /** latencies of the tasks run by this management context's execution manager */
+    public synchronized TaskLatencyRecorder getTaskLatencyRecorder() {
+        getExecutionManager();
+        return taskLatencies;
+    }
+    
     @Override
     public void terminate() {
         super.terminate();
+        if (subscriptions instanceof LocalSubscriptionManager) ((LocalSubscriptionManager) subscriptions).shutdownNow();
         if (execution != null) execution.shutdownNow();
         if (gc != null) gc.shutdownNow();
     }
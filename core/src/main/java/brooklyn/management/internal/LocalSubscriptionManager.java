@@ -5,8 +5,12 @@ import static brooklyn.util.JavaGroovyEquivalents.groovyTruth;
 import static brooklyn.util.JavaGroovyEquivalents.join;
 import static brooklyn.util.JavaGroovyEquivalents.mapOf;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -16,19 +20,28 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.BrooklynProperties;
+import brooklyn.config.ConfigKey;
 import brooklyn.entity.Entity;
+import brooklyn.entity.Group;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicConfigKey;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.SubscriptionManager;
+import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.internal.LanguageUtils;
 import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.SingleThreadedScheduler;
 import brooklyn.util.text.Identifiers;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 
 /**
  * A {@link SubscriptionManager} that stores subscription details locally.
@@ -37,22 +50,105 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     
     private static final Logger LOG = LoggerFactory.getLogger(LocalSubscriptionManager.class);
 
+    public static final ConfigKey<Boolean> BATCH_DELIVERY = new BasicConfigKey<Boolean>(
+            Boolean.class, "brooklyn.subscriptions.batchDelivery", 
+            "whether to queue events for each subscriber in a mailbox drained by a single task, rather than submitting a task per event", 
+            false);
+
+    public static final ConfigKey<Integer> MAX_QUEUED_EVENTS_PER_SUBSCRIBER = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.subscriptions.maxQueuedEventsPerSubscriber", 
+            "the maximum number of undelivered events to queue for any one subscriber, or 0 for unlimited; "+
+            "can be overridden for a subscriber with the subscription flag maxQueuedEvents", 
+            0);
+
+    public static final ConfigKey<QueueOverflowPolicy> QUEUE_OVERFLOW_POLICY = new BasicConfigKey<QueueOverflowPolicy>(
+            QueueOverflowPolicy.class, "brooklyn.subscriptions.queueOverflowPolicy", 
+            "what to do when a subscriber's queue of undelivered events is full (DROP_OLDEST, DROP_NEWEST or BLOCK); "+
+            "can be overridden for a subscriber with the subscription flag queueOverflowPolicy", 
+            QueueOverflowPolicy.DROP_OLDEST);
+
+    public static final ConfigKey<Long> QUEUE_BLOCK_TIMEOUT_MILLIS = new BasicConfigKey<Long>(
+            Long.class, "brooklyn.subscriptions.queueBlockTimeoutMillis", 
+            "for the BLOCK overflow policy, the longest a publisher waits for room in a subscriber's queue "+
+            "before dropping its event (logging a warning)", 
+            10*1000L);
+
+    /** What to do when publishing an event to a subscriber whose queue has reached its limit. */
+    public enum QueueOverflowPolicy {
+        /** discard the oldest undelivered event, to make room for the new one */
+        DROP_OLDEST,
+        /** discard the new event */
+        DROP_NEWEST,
+        /** 
+         * block the publishing thread until the subscriber has caught up, for at most {@link #QUEUE_BLOCK_TIMEOUT_MILLIS}
+         * after which the new event is discarded; never blocks a thread which is itself delivering queued events, 
+         * or running another task for the same subscriber, as subscribers publishing to each other 
+         * (or to themselves) could then deadlock 
+         */
+        BLOCK
+    }
+    
     protected final ExecutionManager em;
     
+    protected final boolean batchDelivery;
+    protected final int maxQueuedEventsPerSubscriber;
+    protected final QueueOverflowPolicy queueOverflowPolicy;
+    protected final long queueBlockTimeoutMillis;
+    
     private final String tostring = "SubscriptionContext("+Identifiers.getBase64IdFromValue(System.identityHashCode(this), 5)+")";
 
     private final AtomicLong totalEventsPublishedCount = new AtomicLong();
     private final AtomicLong totalEventsDeliveredCount = new AtomicLong();
+    private final AtomicLong totalEventsDroppedCount = new AtomicLong();
+    private final AtomicLong queuedEventsHighWaterMark = new AtomicLong();
     
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<String, Subscription> allSubscriptions = new ConcurrentHashMap<String, Subscription>();
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsBySubscriber = new ConcurrentHashMap<Object, Set<Subscription>>();
+    /** 
+     * Subscriptions keyed by their (producer, sensor) token, either of which may be null for wildcard;
+     * the sets are immutable, and are replaced (copy-on-write) under the lock in subscribe/unsubscribe
+     * so that they can be read without synchronization.
+     */
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsByToken = new ConcurrentHashMap<Object, Set<Subscription>>();
     
+    /** 
+     * Subscriptions to the members of a group, keyed by (group, sensor) token; maintained as for {@link #subscriptionsByToken}.
+     * On publish, the source's groups are used to look these up, rather than offering the event to every such subscription.
+     */
+    @SuppressWarnings("rawtypes")
+    protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsByGroupToken = new ConcurrentHashMap<Object, Set<Subscription>>();
+    
+    /** Subscriptions to the children of an entity, keyed by (parent, sensor) token; maintained as for {@link #subscriptionsByToken}. */
+    @SuppressWarnings("rawtypes")
+    protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsByParentToken = new ConcurrentHashMap<Object, Set<Subscription>>();
+    
+    /**
+     * Subscriptions matching a concrete (producer, sensor) pair, i.e. combining the exact and wildcard tokens,
+     * populated lazily on publish. The whole map is replaced whenever a subscription is added or removed,
+     * so a publisher never sees a stale entry and never needs to lock or build a new set.
+     */
+    @SuppressWarnings("rawtypes")
+    private volatile ConcurrentMap<Object, List<Subscription>> subscriptionsForEntitySensorCache = new ConcurrentHashMap<Object, List<Subscription>>();
+    
+    /** mailboxes for queued delivery, keyed by subscriber execution manager tag; guarded by synchronized(this) for writes */
+    protected final ConcurrentMap<Object, SubscriberMailbox> mailboxesByTag = new ConcurrentHashMap<Object, SubscriberMailbox>();
+    
+    /** number of subscriptions with the blocking flag, for each subscriber execution manager tag; guarded by synchronized(this) */
+    private final Map<Object, Integer> blockingSubscriptionCountByTag = new HashMap<Object, Integer>();
+    
     public LocalSubscriptionManager(ExecutionManager m) {
+        this(m, BrooklynProperties.Factory.newEmpty());
+    }
+    
+    public LocalSubscriptionManager(ExecutionManager m, BrooklynProperties brooklynProperties) {
         this.em = m;
+        this.batchDelivery = brooklynProperties.getConfig(BATCH_DELIVERY);
+        this.maxQueuedEventsPerSubscriber = brooklynProperties.getConfig(MAX_QUEUED_EVENTS_PER_SUBSCRIBER);
+        this.queueOverflowPolicy = brooklynProperties.getConfig(QUEUE_OVERFLOW_POLICY);
+        this.queueBlockTimeoutMillis = brooklynProperties.getConfig(QUEUE_BLOCK_TIMEOUT_MILLIS);
     }
         
     public long getNumSubscriptions() {
@@ -67,6 +163,45 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         return totalEventsDeliveredCount.get();
     }
     
+    /** number of events discarded because a subscriber's queue was full */
+    public long getTotalEventsDropped() {
+        return totalEventsDroppedCount.get();
+    }
+    
+    /** number of events currently queued awaiting delivery, across all subscribers using queued delivery */
+    public long getNumQueuedEvents() {
+        long result = 0;
+        for (SubscriberMailbox mailbox : mailboxesByTag.values()) {
+            result += mailbox.getQueueDepth();
+        }
+        return result;
+    }
+    
+    /** the longest that any one subscriber's queue of undelivered events has been */
+    public long getQueuedEventsHighWaterMark() {
+        return queuedEventsHighWaterMark.get();
+    }
+    
+    /** statistics for each subscriber using queued delivery (i.e. batched, coalescing or bounded) */
+    public List<SubscriberQueueStats> getSubscriberQueueStats() {
+        List<SubscriberQueueStats> result = new ArrayList<SubscriberQueueStats>();
+        for (SubscriberMailbox mailbox : mailboxesByTag.values()) {
+            result.add(new SubscriberQueueStats(mailbox.getTag(), mailbox.getQueueDepth(), mailbox.getHighWaterMark(), mailbox.getDroppedCount()));
+        }
+        return result;
+    }
+    
+    void onEventDropped() {
+        totalEventsDroppedCount.incrementAndGet();
+    }
+    
+    void onQueueDepth(int depth) {
+        while (true) {
+            long old = queuedEventsHighWaterMark.get();
+            if (depth <= old || queuedEventsHighWaterMark.compareAndSet(old, depth)) return;
+        }
+    }
+    
     @SuppressWarnings("unchecked")
     protected synchronized <T> SubscriptionHandle subscribe(Map<String, Object> flags, Subscription<T> s) {
         Entity producer = s.producer;
@@ -83,32 +218,201 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
             s.subscriberExecutionManagerTagSupplied = false;
         }
         s.eventFilter = (Predicate<SensorEvent<T>>) flags.remove("eventFilter");
+        s.coalesce = Boolean.TRUE.equals(TypeCoercions.coerce(flags.remove("coalesce"), Boolean.class));
+        s.blocking = Boolean.TRUE.equals(TypeCoercions.coerce(flags.remove("blocking"), Boolean.class));
+        Integer explicitMaxQueuedEvents = TypeCoercions.coerce(flags.remove("maxQueuedEvents"), Integer.class);
+        int maxQueuedEvents = (explicitMaxQueuedEvents != null) ? explicitMaxQueuedEvents : maxQueuedEventsPerSubscriber;
+        QueueOverflowPolicy explicitOverflowPolicy = TypeCoercions.coerce(flags.remove("queueOverflowPolicy"), QueueOverflowPolicy.class);
+        QueueOverflowPolicy overflowPolicy = (explicitOverflowPolicy != null) ? explicitOverflowPolicy : queueOverflowPolicy;
         s.flags = flags;
         
+        // set before the subscription is indexed, so publishers never see it without its mailbox;
+        // once a subscriber has a mailbox all its subscriptions use it, so that its events are delivered in order;
+        // queue limits are taken from the subscription which causes the mailbox to be created
+        SubscriberMailbox mailbox = (s.subscriberExecutionManagerTag != null) ? mailboxesByTag.get(s.subscriberExecutionManagerTag) : null;
+        if ((batchDelivery || s.coalesce || maxQueuedEvents > 0) && s.subscriberExecutionManagerTag!=null) {
+            if (mailbox == null) {
+                mailbox = new SubscriberMailbox(this, s.subscriberExecutionManagerTag, maxQueuedEvents, overflowPolicy, queueBlockTimeoutMillis);
+                mailboxesByTag.put(s.subscriberExecutionManagerTag, mailbox);
+                if (!batchDelivery) {
+                    // any events already submitted for the subscriber's other subscriptions are delivered first, 
+                    // as the mailbox is drained in a task with the same tag
+                    for (Subscription<?> other : allSubscriptions.values()) {
+                        if (s.subscriberExecutionManagerTag.equals(other.subscriberExecutionManagerTag)) {
+                            attachMailbox(other, mailbox);
+                        }
+                    }
+                }
+            } else if ((explicitMaxQueuedEvents != null && explicitMaxQueuedEvents != mailbox.getMaxQueuedEvents()) || 
+                    (explicitOverflowPolicy != null && explicitOverflowPolicy != mailbox.getOverflowPolicy())) {
+                LOG.warn("Ignoring queue flags (maxQueuedEvents={}, queueOverflowPolicy={}) of subscription {} for {}, "+
+                        "as the subscriber's existing queue has maxQueuedEvents={}, queueOverflowPolicy={}", 
+                        new Object[] {explicitMaxQueuedEvents, explicitOverflowPolicy, s.id, s.subscriber, 
+                                mailbox.getMaxQueuedEvents(), mailbox.getOverflowPolicy()});
+            }
+        }
+        if (mailbox != null) {
+            attachMailbox(s, mailbox);
+        }
+        
+        // marked before the subscription is indexed too, so none of its deliveries take a thread from the bounded pool
+        if (s.blocking && s.subscriberExecutionManagerTag!=null && em instanceof BasicExecutionManager) {
+            Integer count = blockingSubscriptionCountByTag.get(s.subscriberExecutionManagerTag);
+            blockingSubscriptionCountByTag.put(s.subscriberExecutionManagerTag, (count != null) ? count+1 : 1);
+            if (count == null) ((BasicExecutionManager) em).setBlockingTag(s.subscriberExecutionManagerTag);
+        }
+        
         if (LOG.isDebugEnabled()) LOG.debug("Creating subscription {} for {} on {} {} in {}", new Object[] {s.id, s.subscriber, producer, sensor, this});
         allSubscriptions.put(s.id, s);
-        LanguageUtils.addToMapOfSets(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        addToTokenIndex(getTokenIndex(s), getToken(s), s);
         if (s.subscriber!=null) {
             LanguageUtils.addToMapOfSets(subscriptionsBySubscriber, s.subscriber, s);
         }
+        invalidateSubscriptionsForEntitySensorCache();
         if (!s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
             ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
         }
         return s;
     }
 
+    /** must be called while synchronized on this */
+    private void attachMailbox(Subscription<?> s, SubscriberMailbox mailbox) {
+        if (s.mailbox == mailbox) return;
+        mailbox.subscriptionCount++;
+        s.mailbox = mailbox;
+    }
+    
+    /**
+     * Called by a mailbox with no subscriptions when it has finished draining, to forget it if it is still unused;
+     * a mailbox is not forgotten while its drain is pending, as a new mailbox for the same subscriber could then 
+     * deliver concurrently with it.
+     */
+    synchronized void onMailboxIdle(SubscriberMailbox mailbox) {
+        if (mailbox.subscriptionCount <= 0 && mailbox.isIdle()) {
+            mailboxesByTag.remove(mailbox.getTag(), mailbox);
+        }
+    }
+    
     @SuppressWarnings("unchecked")
     public Set<SubscriptionHandle> getSubscriptionsForSubscriber(Object subscriber) {
         return (Set<SubscriptionHandle>) ((Set<?>) elvis(subscriptionsBySubscriber.get(subscriber), Collections.emptySet()));
     }
 
-    public synchronized Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
-        Set<SubscriptionHandle> subscriptions = new LinkedHashSet<SubscriptionHandle>();
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, null)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, null)), Collections.emptySet()));
-        return subscriptions;
+    public Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
+        Set<SubscriptionHandle> result = new LinkedHashSet<SubscriptionHandle>(getCachedSubscriptionsForEntitySensor(source, sensor));
+        result.addAll(getGroupAndParentSubscriptionsForEntitySensor(source, sensor));
+        return result;
+    }
+
+    /** 
+     * Returns the (immutable) subscriptions matching the given source and sensor, from the cache if possible;
+     * safe to call without holding any lock.
+     */
+    @SuppressWarnings("rawtypes")
+    protected List<Subscription> getCachedSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
+        // read the cache before the token index; the index is always updated before the cache is replaced
+        ConcurrentMap<Object, List<Subscription>> cache = subscriptionsForEntitySensorCache;
+        Object token = makeEntitySensorToken(source, sensor);
+        List<Subscription> result = cache.get(token);
+        if (result == null) {
+            Set<Subscription> subscriptions = new LinkedHashSet<Subscription>();
+            addAllFromTokenIndex(subscriptions, token);
+            addAllFromTokenIndex(subscriptions, makeEntitySensorToken(null, sensor));
+            addAllFromTokenIndex(subscriptions, makeEntitySensorToken(source, null));
+            addAllFromTokenIndex(subscriptions, makeEntitySensorToken(null, null));
+            result = ImmutableList.copyOf(subscriptions);
+            List<Subscription> old = cache.putIfAbsent(token, result);
+            if (old != null) result = old;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the subscriptions to the members of any group the source belongs to, or to the children of its parent,
+     * which match the given sensor. These depend on the source's current relationships, so are not cached;
+     * membership subscriptions may still need their event filter applied, as the source's groups can be out of date.
+     */
+    @SuppressWarnings("rawtypes")
+    protected Collection<Subscription> getGroupAndParentSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
+        if (source == null || (subscriptionsByGroupToken.isEmpty() && subscriptionsByParentToken.isEmpty())) {
+            return Collections.emptyList();
+        }
+        Set<Subscription> result = null;
+        if (!subscriptionsByParentToken.isEmpty()) {
+            Entity parent = source.getParent();
+            if (parent != null) {
+                result = addAllFromTokenIndex(result, subscriptionsByParentToken, makeEntitySensorToken(parent, sensor));
+                result = addAllFromTokenIndex(result, subscriptionsByParentToken, makeEntitySensorToken(parent, null));
+            }
+        }
+        if (!subscriptionsByGroupToken.isEmpty()) {
+            for (Group group : source.getGroups()) {
+                result = addAllFromTokenIndex(result, subscriptionsByGroupToken, makeEntitySensorToken(group, sensor));
+                result = addAllFromTokenIndex(result, subscriptionsByGroupToken, makeEntitySensorToken(group, null));
+            }
+        }
+        return (result != null) ? result : Collections.<Subscription>emptyList();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void addAllFromTokenIndex(Set<Subscription> target, Object token) {
+        Set<Subscription> subscriptions = subscriptionsByToken.get(token);
+        if (subscriptions != null) target.addAll(subscriptions);
+    }
+
+    /** as {@link #addAllFromTokenIndex(Set, Object)}, but only creating the target set if there is something to add */
+    @SuppressWarnings("rawtypes")
+    private Set<Subscription> addAllFromTokenIndex(Set<Subscription> target, Map<Object, Set<Subscription>> index, Object token) {
+        Set<Subscription> subscriptions = index.get(token);
+        if (subscriptions == null) return target;
+        if (target == null) target = new LinkedHashSet<Subscription>();
+        target.addAll(subscriptions);
+        return target;
+    }
+
+    /** the index which should hold the given subscription */
+    @SuppressWarnings("rawtypes")
+    private Map<Object, Set<Subscription>> getTokenIndex(Subscription s) {
+        if (s.producerGroup != null) return subscriptionsByGroupToken;
+        if (s.producerParent != null) return subscriptionsByParentToken;
+        return subscriptionsByToken;
+    }
+
+    /** the key for the given subscription in its index */
+    @SuppressWarnings("rawtypes")
+    private Object getToken(Subscription s) {
+        if (s.producerGroup != null) return makeEntitySensorToken(s.producerGroup, s.sensor);
+        if (s.producerParent != null) return makeEntitySensorToken(s.producerParent, s.sensor);
+        return makeEntitySensorToken(s.producer, s.sensor);
+    }
+
+    /** must be called while synchronized on this, as must {@link #removeFromTokenIndex(Map, Object, Subscription)} */
+    @SuppressWarnings("rawtypes")
+    private void addToTokenIndex(Map<Object, Set<Subscription>> index, Object token, Subscription s) {
+        Set<Subscription> old = index.get(token);
+        if (old == null) {
+            index.put(token, ImmutableSet.<Subscription>of(s));
+        } else {
+            index.put(token, ImmutableSet.<Subscription>builder().addAll(old).add(s).build());
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private boolean removeFromTokenIndex(Map<Object, Set<Subscription>> index, Object token, Subscription s) {
+        Set<Subscription> old = index.get(token);
+        if (old == null || !old.contains(s)) return false;
+        if (old.size() == 1) {
+            index.remove(token);
+        } else {
+            index.put(token, ImmutableSet.copyOf(Iterables.filter(old, Predicates.not(Predicates.<Subscription>equalTo(s)))));
+        }
+        return true;
+    }
+
+    /** must be called after the token index has been updated */
+    @SuppressWarnings("rawtypes")
+    private void invalidateSubscriptionsForEntitySensorCache() {
+        subscriptionsForEntitySensorCache = new ConcurrentHashMap<Object, List<Subscription>>();
     }
 
     /**
@@ -121,12 +425,25 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (!(sh instanceof Subscription)) throw new IllegalArgumentException("Only subscription handles of type Subscription supported: sh="+sh+"; type="+(sh != null ? sh.getClass().getCanonicalName() : null));
         Subscription s = (Subscription) sh;
         boolean result = allSubscriptions.remove(s.id) != null;
-        boolean b2 = LanguageUtils.removeFromMapOfCollections(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        boolean b2 = removeFromTokenIndex(getTokenIndex(s), getToken(s), s);
         assert result==b2;
+        invalidateSubscriptionsForEntitySensorCache();
         if (s.subscriber!=null) {
             boolean b3 = LanguageUtils.removeFromMapOfCollections(subscriptionsBySubscriber, s.subscriber, s);
             assert b3 == b2;
         }
+        if (result && s.blocking && s.subscriberExecutionManagerTag!=null && em instanceof BasicExecutionManager) {
+            Integer count = blockingSubscriptionCountByTag.remove(s.subscriberExecutionManagerTag);
+            if (count != null && count > 1) {
+                blockingSubscriptionCountByTag.put(s.subscriberExecutionManagerTag, count-1);
+            } else {
+                ((BasicExecutionManager) em).clearBlockingTag(s.subscriberExecutionManagerTag);
+            }
+        }
+        if (result && s.mailbox!=null && --s.mailbox.subscriptionCount <= 0 && s.mailbox.isIdle()) {
+            // otherwise it is forgotten when its drain completes, see onMailboxIdle
+            mailboxesByTag.remove(s.subscriberExecutionManagerTag, s.mailbox);
+        }
         
         // TODO Requires code review: why did we previously do exactly same check twice in a row (with no synchronization in between)? 
         if ((subscriptionsBySubscriber.size() == 0 || !groovyTruth(subscriptionsBySubscriber.get(s.subscriber))) && !s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
@@ -157,22 +474,75 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (LOG.isTraceEnabled()) LOG.trace("{} got event {}", this, event);
         totalEventsPublishedCount.incrementAndGet();
         
-        Set<Subscription> subs = (Set<Subscription>) ((Set<?>) getSubscriptionsForEntitySensor(event.getSource(), event.getSensor()));
-        if (groovyTruth(subs)) {
-            if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(subs, ",")});
+        List<Subscription> subs = getCachedSubscriptionsForEntitySensor(event.getSource(), event.getSensor());
+        Collection<Subscription> relatedSubs = getGroupAndParentSubscriptionsForEntitySensor(event.getSource(), event.getSensor());
+        if (!subs.isEmpty() || !relatedSubs.isEmpty()) {
+            if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(ImmutableList.copyOf(Iterables.concat(subs, relatedSubs)), ",")});
             for (Subscription s : subs) {
-                if (s.eventFilter!=null && !s.eventFilter.apply(event))
-                    continue;
-                final Subscription sAtClosureCreation = s;
-                em.submit(mapOf("tag", s.subscriberExecutionManagerTag), new Runnable() {
-                    public void run() {
-                        sAtClosureCreation.listener.onEvent(event);
-                    }});
-                totalEventsDeliveredCount.incrementAndGet();
+                deliver(s, event);
             }
+            for (Subscription s : relatedSubs) {
+                deliver(s, event);
+            }
+        }
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private <T> void deliver(Subscription s, final SensorEvent<T> event) {
+        if (s.eventFilter!=null && !s.eventFilter.apply(event))
+            return;
+        if (s.mailbox!=null) {
+            s.mailbox.enqueue(s, event);
+        } else {
+            submitDelivery(s, event);
+        }
+        totalEventsDeliveredCount.incrementAndGet();
+    }
+    
+    /**
+     * Arranges for the event to be passed to the listener of a subscription which does not use a mailbox;
+     * by default in a task with the subscriber's execution manager tag.
+     * Called in the publishing thread, and must preserve the order of calls for any one subscriber.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected void submitDelivery(final Subscription<?> s, final SensorEvent<?> event) {
+        Runnable delivery = new Runnable() {
+            public void run() {
+                ((SensorEventListener) s.listener).onEvent(event);
+            }};
+        if (em instanceof BasicExecutionManager) {
+            ((BasicExecutionManager) em).submitSystemTask(s.subscriberExecutionManagerTag, delivery);
+        } else {
+            em.submit(mapOf("tag", s.subscriberExecutionManagerTag), delivery);
         }
     }
     
+    /**
+     * Arranges for a subscriber's mailbox to be drained, by running the given job; by default in a task with the subscriber's 
+     * execution manager tag. Implementations must run it after any deliveries already submitted for that subscriber 
+     * (see {@link #submitDelivery(Subscription, SensorEvent)}), so that the subscriber's events stay in order.
+     */
+    protected void submitDrain(Object tag, Runnable drainer) {
+        if (em instanceof BasicExecutionManager) {
+            ((BasicExecutionManager) em).submitSystemTask(tag, drainer);
+        } else {
+            em.submit(mapOf("tag", tag), drainer);
+        }
+    }
+    
+    /** 
+     * Whether the current thread is one which this manager uses to deliver events (other than tasks for a subscriber);
+     * such threads are never blocked when publishing to a full queue, as that could deadlock. 
+     */
+    protected boolean isDeliveryThread() {
+        return false;
+    }
+    
+    /** releases any resources (such as threads) held by this manager; called when the management context terminates */
+    public void shutdownNow() {
+        // no-op; delivery is done by the execution manager
+    }
+    
     @Override
     public String toString() {
         return tostring;
@@ -0,0 +1,311 @@
+package brooklyn.management.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.config.ConfigKey;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.basic.BasicConfigKey;
+import brooklyn.management.ExecutionManager;
+import brooklyn.util.text.Identifiers;
+
+/**
+ * A {@link LocalSubscriptionManager} which delivers events through pre-allocated ring buffers,
+ * each drained by its own long-lived consumer thread, instead of submitting a task per event
+ * to the {@link ExecutionManager}.
+ * <p>
+ * Subscribers are assigned to a ring (a "shard") by the hash of their execution manager tag, so all events for
+ * a subscriber are delivered by the same thread, in the order they were published. The slots of the ring are
+ * re-used, so publishing allocates nothing beyond the event itself. When a ring is full the publisher waits for
+ * the consumer to catch up; except when the publisher is itself one of the consumer threads (i.e. a listener
+ * publishing an event), in which case the event is put on an overflow queue, to avoid deadlock.
+ * <p>
+ * Listeners are called directly by the consumer thread, rather than in a task, so {@link brooklyn.util.task.Tasks#current()}
+ * is null while they run; and a listener which blocks holds up delivery to all the other subscribers in its shard.
+ * Listeners which block, or which need a task context, should hand off to their entity's execution context.
+ * Subscribers which use a mailbox (see {@link LocalSubscriptionManager#BATCH_DELIVERY} and the <code>coalesce</code>
+ * and <code>maxQueuedEvents</code> flags) have it drained by their shard's thread too, so their events also stay in order.
+ * <p>
+ * Once {@link #shutdownNow()} has been called (when the management context terminates), events are discarded.
+ * <p>
+ * To use, set {@link LocalManagementContext#SUBSCRIPTION_MANAGER_CLASS} to the name of this class.
+ */
+public class RingBufferSubscriptionManager extends LocalSubscriptionManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RingBufferSubscriptionManager.class);
+
+    public static final ConfigKey<Integer> NUM_CONSUMER_THREADS = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.subscriptions.ringBuffer.consumerThreads",
+            "the number of rings (each with its own delivery thread) to shard subscribers across; 0 means one per available processor",
+            0);
+
+    public static final ConfigKey<Integer> RING_SIZE = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.subscriptions.ringBuffer.size",
+            "the number of slots in each ring (rounded up to a power of two)",
+            4096);
+
+    /** how many times an idle consumer checks for work before parking */
+    private static final int SPIN_TRIES = 100;
+    /** maximum time an idle consumer parks before checking again; publishers normally wake it sooner */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Shard[] shards;
+    private volatile boolean running = true;
+
+    public RingBufferSubscriptionManager(ExecutionManager m) {
+        this(m, BrooklynProperties.Factory.newEmpty());
+    }
+
+    public RingBufferSubscriptionManager(ExecutionManager m, BrooklynProperties brooklynProperties) {
+        super(m, brooklynProperties);
+        int numShards = brooklynProperties.getConfig(NUM_CONSUMER_THREADS);
+        if (numShards <= 0) numShards = Runtime.getRuntime().availableProcessors();
+        int ringSize = Integer.highestOneBit(Math.max(brooklynProperties.getConfig(RING_SIZE), 2) - 1) << 1;
+
+        String id = Identifiers.getBase64IdFromValue(System.identityHashCode(this), 5);
+        shards = new Shard[numShards];
+        for (int i = 0; i < numShards; i++) {
+            shards[i] = new Shard(ringSize, "brooklyn-subscriptions-"+id+"-"+i);
+        }
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    public int getNumShards() {
+        return shards.length;
+    }
+
+    /** number of events currently waiting in the rings (and their overflow queues) for delivery */
+    public long getNumPendingDeliveries() {
+        long result = 0;
+        for (Shard shard : shards) {
+            result += shard.size();
+        }
+        return result;
+    }
+
+    @Override
+    protected void submitDelivery(Subscription<?> s, SensorEvent<?> event) {
+        if (!running) {
+            if (LOG.isDebugEnabled()) LOG.debug("Discarding {} for {}, as {} has been shut down", new Object[] {event, s, this});
+            return;
+        }
+        Object key = s.subscriberExecutionManagerTag != null ? s.subscriberExecutionManagerTag : s.subscriber != null ? s.subscriber : s.id;
+        getShard(key).publish(s, event, null);
+    }
+
+    /** drains the mailbox in the shard for its tag, i.e. in the same thread as any deliveries already submitted for the subscriber */
+    @Override
+    protected void submitDrain(Object tag, Runnable drainer) {
+        if (!running) {
+            if (LOG.isDebugEnabled()) LOG.debug("Discarding {}, as {} has been shut down", drainer, this);
+            return;
+        }
+        getShard(tag).publish(null, null, drainer);
+    }
+
+    @Override
+    protected boolean isDeliveryThread() {
+        Thread current = Thread.currentThread();
+        for (Shard shard : shards) {
+            if (shard.thread == current) return true;
+        }
+        return false;
+    }
+
+    private Shard getShard(Object key) {
+        return shards[(key.hashCode() & Integer.MAX_VALUE) % shards.length];
+    }
+
+    /** stops the consumer threads; any events not yet delivered are discarded */
+    @Override
+    public void shutdownNow() {
+        running = false;
+        for (Shard shard : shards) {
+            shard.thread.interrupt();
+        }
+    }
+
+    /** a re-usable entry in a ring; holds either an event for a subscription, or a job which drains a subscriber's mailbox */
+    private static class Slot {
+        /** the sequence number of the delivery currently in this slot; written last by the publisher, so the consumer can read the fields once it sees it */
+        volatile long sequence = -1;
+        Subscription<?> subscription;
+        SensorEvent<?> event;
+        Runnable drainer;
+    }
+
+    private class Shard implements Runnable {
+        private final Slot[] ring;
+        private final int mask;
+        private final Thread thread;
+
+        /** next sequence number to be claimed by a publisher */
+        private final AtomicLong claimed = new AtomicLong();
+        /** next sequence number to be delivered; only written by the consumer thread */
+        private volatile long consumed = 0;
+        /** whether the consumer is (about to be) parked, so publishers should wake it */
+        private volatile boolean sleeping = false;
+
+        /**
+         * Deliveries which could not go in the ring because it was full and the publisher was a consumer thread.
+         * While this is non-empty all new deliveries for the shard go here too, so they are not delivered out of order;
+         * the count is incremented before the delivery is added and decremented once it has been delivered.
+         */
+        private final Queue<Slot> overflow = new ConcurrentLinkedQueue<Slot>();
+        private final AtomicInteger overflowCount = new AtomicInteger();
+
+        Shard(int size, String threadName) {
+            ring = new Slot[size];
+            for (int i = 0; i < size; i++) {
+                ring[i] = new Slot();
+            }
+            mask = size - 1;
+            thread = new Thread(this, threadName);
+            thread.setDaemon(true);
+        }
+
+        long size() {
+            return (claimed.get() - consumed) + overflowCount.get();
+        }
+
+        void publish(Subscription<?> s, SensorEvent<?> event, Runnable drainer) {
+            while (true) {
+                if (addToOverflowIfNotEmpty(s, event, drainer)) return;
+
+                long seq = claimed.get();
+                if (seq - consumed >= ring.length) {
+                    if (isDeliveryThread()) {
+                        // waiting would deadlock if this shard's consumer (or another waiting on ours) is the publisher
+                        overflowCount.incrementAndGet();
+                        addToOverflow(s, event, drainer);
+                        return;
+                    }
+                    if (!waitForSpace(seq)) return;
+                    continue;
+                }
+                if (claimed.compareAndSet(seq, seq+1)) {
+                    Slot slot = ring[(int) seq & mask];
+                    slot.subscription = s;
+                    slot.event = event;
+                    slot.drainer = drainer;
+                    slot.sequence = seq;
+                    wakeConsumer();
+                    return;
+                }
+            }
+        }
+
+        private boolean addToOverflowIfNotEmpty(Subscription<?> s, SensorEvent<?> event, Runnable drainer) {
+            while (true) {
+                int count = overflowCount.get();
+                if (count == 0) return false;
+                if (overflowCount.compareAndSet(count, count+1)) {
+                    addToOverflow(s, event, drainer);
+                    return true;
+                }
+            }
+        }
+
+        private void addToOverflow(Subscription<?> s, SensorEvent<?> event, Runnable drainer) {
+            Slot slot = new Slot();
+            slot.subscription = s;
+            slot.event = event;
+            slot.drainer = drainer;
+            overflow.add(slot);
+            wakeConsumer();
+        }
+
+        /** @return false if the manager was shut down while waiting */
+        private boolean waitForSpace(long seq) {
+            int tries = 0;
+            while (running && seq - consumed >= ring.length) {
+                if (++tries < SPIN_TRIES) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+                }
+            }
+            return running;
+        }
+
+        private void wakeConsumer() {
+            if (sleeping) LockSupport.unpark(thread);
+        }
+
+        private boolean hasWork() {
+            return ring[(int) consumed & mask].sequence == consumed || overflowCount.get() > 0;
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running) {
+                try {
+                    Slot slot = ring[(int) consumed & mask];
+                    if (slot.sequence == consumed) {
+                        Subscription<?> s = slot.subscription;
+                        SensorEvent<?> event = slot.event;
+                        Runnable drainer = slot.drainer;
+                        slot.subscription = null;
+                        slot.event = null;
+                        slot.drainer = null;
+                        consumed++;
+                        idle = 0;
+                        deliver(s, event, drainer);
+                    } else if (overflowCount.get() > 0 && claimed.get() == consumed) {
+                        // the ring is empty (apart from publishers who have yet to claim), so now deliver what overflowed, in order
+                        Slot o = overflow.poll();
+                        if (o != null) {
+                            try {
+                                deliver(o.subscription, o.event, o.drainer);
+                            } finally {
+                                // even if the listener threw an Error, else all later deliveries would go to the overflow queue
+                                overflowCount.decrementAndGet();
+                            }
+                        }
+                        idle = 0;
+                    } else if (++idle < SPIN_TRIES) {
+                        Thread.yield();
+                    } else {
+                        sleeping = true;
+                        if (!hasWork()) LockSupport.parkNanos(MAX_PARK_NANOS);
+                        sleeping = false;
+                    }
+                } catch (Throwable t) {
+                    if (!running) break;
+                    LOG.warn("Error in subscription delivery thread "+thread.getName()+" (continuing)", t);
+                }
+            }
+            if (LOG.isDebugEnabled()) LOG.debug("Subscription delivery thread {} stopped; {} deliveries discarded", thread.getName(), size());
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private void deliver(Subscription s, SensorEvent event, Runnable drainer) {
+            if (drainer != null) {
+                // catches its listeners' exceptions itself
+                drainer.run();
+                return;
+            }
+            try {
+                s.listener.onEvent(event);
+            } catch (Exception e) {
+                LOG.warn("Error delivering "+event+" to "+s+" (continuing with other events)", e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RingBuffer"+super.toString();
+    }
+}
@@ -0,0 +1,320 @@
+package brooklyn.management.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Entity;
+import brooklyn.event.Sensor;
+import brooklyn.event.SensorEvent;
+import brooklyn.management.Task;
+import brooklyn.management.internal.LocalSubscriptionManager.QueueOverflowPolicy;
+import brooklyn.util.task.Tasks;
+
+import com.google.common.base.Objects;
+
+/**
+ * Queue of sensor events awaiting delivery to a single subscriber (identified by its execution manager tag).
+ * <p>
+ * At most one task at a time drains the queue, delivering a run of events in one pass; so a burst of events
+ * costs one task submission rather than one per event, and events are delivered in the order they were published.
+ * The drain task is submitted by the manager (see {@link LocalSubscriptionManager#submitDrain(Object, Runnable)}), by default
+ * with the subscriber's tag, so it is still subject to any {@link brooklyn.util.task.TaskScheduler} defined for that tag; and once a subscriber has a mailbox, all its subscriptions use it, so that events already 
+ * submitted for it directly are delivered before those queued.
+ * <p>
+ * For subscriptions with {@link Subscription#coalesce} set, an event which is still queued is replaced by any newer
+ * event from the same producer and sensor, so only the latest value is delivered and a slow subscriber's backlog
+ * is bounded by the number of distinct producer/sensor pairs.
+ * <p>
+ * The queue can also be given a (soft) limit on its length, with a {@link QueueOverflowPolicy} saying whether to drop
+ * the oldest or the newest event, or to block the publisher, when the limit is reached. Concurrent publishers
+ * may briefly take the queue slightly over the limit.
+ */
+class SubscriberMailbox {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubscriberMailbox.class);
+
+    /** maximum number of events to deliver in one task, before handing the thread back to the pool */
+    static final int MAX_BATCH_SIZE = 1000;
+
+    private final LocalSubscriptionManager manager;
+    private final Object tag;
+    private final int maxQueuedEvents;
+    private final QueueOverflowPolicy overflowPolicy;
+    private final long blockTimeoutMillis;
+    
+    /** 
+     * set while a thread is delivering events from any mailbox; such threads are never blocked by {@link QueueOverflowPolicy#BLOCK},
+     * nor are threads running any other task with the subscriber's tag, nor the manager's own delivery threads
+     */
+    private static final ThreadLocal<SubscriberMailbox> drainingInThread = new ThreadLocal<SubscriberMailbox>();
+    
+    private final Queue<Delivery> queue = new ConcurrentLinkedQueue<Delivery>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    
+    /** length of the queue; tracked separately as {@link ConcurrentLinkedQueue#size()} is not constant-time */
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+    private final AtomicLong droppedCount = new AtomicLong();
+    
+    /** for {@link QueueOverflowPolicy#BLOCK}: publishers wait on this until there is room in the queue */
+    private final Object notFull = new Object();
+    private final AtomicInteger blockedPublishers = new AtomicInteger();
+    /** latest undelivered event for coalescing subscriptions; a key is present iff a delivery for it is queued */
+    private final ConcurrentMap<CoalesceKey, SensorEvent<?>> latestEvents = new ConcurrentHashMap<CoalesceKey, SensorEvent<?>>();
+
+    /** number of subscriptions using this mailbox; written only while synchronized on the owning subscription manager */
+    volatile int subscriptionCount = 0;
+
+    private final Runnable drainer = new Runnable() {
+        @Override public void run() {
+            drain();
+        }
+        @Override public String toString() {
+            return "drainer["+tag+"]";
+        }
+    };
+
+    /**
+     * @param maxQueuedEvents maximum length of the queue, or 0 for unbounded
+     * @param blockTimeoutMillis for {@link QueueOverflowPolicy#BLOCK}, how long to wait for room before dropping the event
+     */
+    SubscriberMailbox(LocalSubscriptionManager manager, Object tag, int maxQueuedEvents, QueueOverflowPolicy overflowPolicy,
+            long blockTimeoutMillis) {
+        this.manager = manager;
+        this.tag = tag;
+        this.maxQueuedEvents = maxQueuedEvents;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+    }
+
+    Object getTag() {
+        return tag;
+    }
+    
+    int getMaxQueuedEvents() {
+        return maxQueuedEvents;
+    }
+    
+    QueueOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    
+    int getQueueDepth() {
+        return depth.get();
+    }
+    
+    int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+    
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+    
+    /** whether there are no events queued and no drain pending */
+    boolean isIdle() {
+        return !draining.get() && queue.isEmpty();
+    }
+    
+    @SuppressWarnings("rawtypes")
+    void enqueue(Subscription s, SensorEvent<?> event) {
+        CoalesceKey key = null;
+        if (s.coalesce) {
+            key = new CoalesceKey(s, event.getSource(), event.getSensor());
+            if (latestEvents.put(key, event) != null) {
+                // a delivery for this key is already queued, and will now pick up this newer event
+                return;
+            }
+        }
+        if (maxQueuedEvents > 0 && depth.get() >= maxQueuedEvents && !makeRoom()) {
+            if (key != null) {
+                // another publisher may have replaced our event meanwhile, relying on this delivery; its event is lost too
+                SensorEvent<?> replacement = latestEvents.remove(key);
+                if (replacement != null && replacement != event) onDropped();
+            }
+            return;
+        }
+        queue.add(key != null ? new Delivery(s, key) : new Delivery(s, event));
+        int newDepth = depth.incrementAndGet();
+        if (newDepth > highWaterMark.get()) {
+            updateHighWaterMark(newDepth);
+        }
+        submitDrainIfNecessary();
+    }
+    
+    /** 
+     * Applies the overflow policy when the queue is full.
+     * @return whether the new event should be queued
+     */
+    private boolean makeRoom() {
+        switch (overflowPolicy) {
+        case DROP_NEWEST:
+            onDropped();
+            return false;
+        case DROP_OLDEST:
+            Delivery oldest = queue.poll();
+            if (oldest != null) {
+                depth.decrementAndGet();
+                if (oldest.coalesceKey != null) latestEvents.remove(oldest.coalesceKey);
+                onDropped();
+            }
+            return true;
+        case BLOCK:
+            if (drainingInThread.get() != null || isInSubscriberTask() || manager.isDeliveryThread()) {
+                // a listener publishing an event, or another of this subscriber's tasks (which its drain may be queued behind);
+                // waiting could deadlock, e.g. if this subscriber's queue is waiting on us
+                return true;
+            }
+            blockedPublishers.incrementAndGet();
+            try {
+                long deadline = System.currentTimeMillis() + blockTimeoutMillis;
+                synchronized (notFull) {
+                    while (depth.get() >= maxQueuedEvents) {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            LOG.warn("{} still full after waiting {}ms to publish; dropping event", this, blockTimeoutMillis);
+                            onDropped();
+                            return false;
+                        }
+                        // the drainer notifies as it takes events off the queue; the timeout is a safety net
+                        notFull.wait(Math.min(remaining, 100));
+                    }
+                }
+            } catch (InterruptedException e) {
+                // deliver it anyway, rather than losing the event; but preserve the interrupt
+                Thread.currentThread().interrupt();
+            } finally {
+                blockedPublishers.decrementAndGet();
+            }
+            return true;
+        default:
+            throw new IllegalStateException("Unexpected overflow policy "+overflowPolicy+" for "+this);
+        }
+    }
+    
+    /** whether the current thread is running a task with this subscriber's tag */
+    private boolean isInSubscriberTask() {
+        Task<?> current = Tasks.current();
+        return current != null && current.getTags().contains(tag);
+    }
+    
+    private void onDropped() {
+        long count = droppedCount.incrementAndGet();
+        manager.onEventDropped();
+        if (count == 1 || (count % 1000) == 0) {
+            LOG.warn("{} is full ({} events queued), dropping events by policy {}; {} dropped in total", new Object[] {this, depth.get(), overflowPolicy, count});
+        }
+    }
+    
+    private void updateHighWaterMark(int newDepth) {
+        while (true) {
+            int old = highWaterMark.get();
+            if (newDepth <= old) return;
+            if (highWaterMark.compareAndSet(old, newDepth)) {
+                manager.onQueueDepth(newDepth);
+                return;
+            }
+        }
+    }
+
+    private void submitDrainIfNecessary() {
+        if (!queue.isEmpty() && draining.compareAndSet(false, true)) {
+            try {
+                manager.submitDrain(tag, drainer);
+            } catch (RuntimeException e) {
+                // e.g. rejected as the execution manager is shutting down; let a later publish try again
+                draining.set(false);
+                throw e;
+            }
+        }
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void drain() {
+        drainingInThread.set(this);
+        try {
+            for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+                Delivery d = queue.poll();
+                if (d == null) break;
+                depth.decrementAndGet();
+                if (blockedPublishers.get() > 0) {
+                    synchronized (notFull) {
+                        notFull.notifyAll();
+                    }
+                }
+                SensorEvent<?> event = (d.coalesceKey != null) ? latestEvents.remove(d.coalesceKey) : d.event;
+                if (event == null) continue;
+                try {
+                    d.subscription.listener.onEvent(event);
+                } catch (Exception e) {
+                    LOG.warn("Error delivering "+event+" to "+d.subscription+" (continuing with other events)", e);
+                }
+            }
+        } finally {
+            drainingInThread.remove();
+            draining.set(false);
+            // check again, in case an event was enqueued after our last poll but before we cleared the flag
+            submitDrainIfNecessary();
+            if (subscriptionCount <= 0) {
+                manager.onMailboxIdle(this);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriberMailbox["+tag+"]";
+    }
+
+    /** an event to deliver to a subscription; either the event itself, or the key under which to find the latest one */
+    @SuppressWarnings("rawtypes")
+    private static class Delivery {
+        final Subscription subscription;
+        final SensorEvent<?> event;
+        final CoalesceKey coalesceKey;
+
+        Delivery(Subscription subscription, SensorEvent<?> event) {
+            this.subscription = subscription;
+            this.event = event;
+            this.coalesceKey = null;
+        }
+        
+        Delivery(Subscription subscription, CoalesceKey coalesceKey) {
+            this.subscription = subscription;
+            this.event = null;
+            this.coalesceKey = coalesceKey;
+        }
+    }
+    
+    @SuppressWarnings("rawtypes")
+    private static class CoalesceKey {
+        final Subscription subscription;
+        final Entity source;
+        final Sensor<?> sensor;
+        
+        CoalesceKey(Subscription subscription, Entity source, Sensor<?> sensor) {
+            this.subscription = subscription;
+            this.source = source;
+            this.sensor = sensor;
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(subscription, source, sensor);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof CoalesceKey)) return false;
+            CoalesceKey o = (CoalesceKey) obj;
+            return subscription.equals(o.subscription) && Objects.equal(source, o.source) && Objects.equal(sensor, o.sensor);
+        }
+    }
+}
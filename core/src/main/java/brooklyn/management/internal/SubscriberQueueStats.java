@@ -0,0 +1,51 @@
+package brooklyn.management.internal;
+
+import com.google.common.base.Objects;
+
+/**
+ * A snapshot of the queue of undelivered events for one subscriber of a {@link LocalSubscriptionManager}.
+ */
+public class SubscriberQueueStats {
+
+    private final Object subscriberTag;
+    private final int queueDepth;
+    private final int highWaterMark;
+    private final long droppedCount;
+
+    public SubscriberQueueStats(Object subscriberTag, int queueDepth, int highWaterMark, long droppedCount) {
+        this.subscriberTag = subscriberTag;
+        this.queueDepth = queueDepth;
+        this.highWaterMark = highWaterMark;
+        this.droppedCount = droppedCount;
+    }
+
+    /** the execution manager tag identifying the subscriber */
+    public Object getSubscriberTag() {
+        return subscriberTag;
+    }
+
+    /** number of events currently awaiting delivery */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /** the longest the queue has been */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /** number of events discarded because the queue was full */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("subscriber", subscriberTag)
+                .add("queueDepth", queueDepth)
+                .add("highWaterMark", highWaterMark)
+                .add("dropped", droppedCount)
+                .toString();
+    }
+}
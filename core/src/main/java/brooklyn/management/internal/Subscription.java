@@ -3,6 +3,7 @@ package brooklyn.management.internal;
 import java.util.Map;
 
 import brooklyn.entity.Entity;
+import brooklyn.entity.Group;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
@@ -19,10 +20,20 @@ class Subscription<T> implements SubscriptionHandle {
     /** whether the tag was supplied by user, in which case we should not clear execution semantics */
     public boolean subscriberExecutionManagerTagSupplied;
     public Entity producer;
+    /** for subscriptions to the members of a group (producer is then null) */
+    public Group producerGroup;
+    /** for subscriptions to the children of an entity (producer is then null) */
+    public Entity producerParent;
     public Sensor<T> sensor;
     public SensorEventListener<? super T> listener;
     public Map<String,Object> flags;
     public Predicate<SensorEvent<T>> eventFilter;
+    /** whether undelivered events from the same producer and sensor should be collapsed into the latest one */
+    public boolean coalesce;
+    /** whether the listener may block for a long time, so its subscriber's deliveries must not use the bounded pool for short tasks */
+    public boolean blocking;
+    /** where events are queued for delivery, if the subscriber uses queued delivery; otherwise null (set under the manager's lock) */
+    volatile SubscriberMailbox mailbox;
 
     public Subscription() {
     }
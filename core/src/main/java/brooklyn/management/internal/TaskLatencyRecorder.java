@@ -0,0 +1,108 @@
+package brooklyn.management.internal;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import brooklyn.entity.Entity;
+import brooklyn.management.Task;
+import brooklyn.util.math.LatencyHistogram;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.task.BasicTask;
+import brooklyn.util.task.ExecutionListener;
+import brooklyn.util.task.ScheduledTask;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Records, for each {@link TaskCategory}, histograms of how long tasks wait between being submitted and starting,
+ * and of how long they then take to run.
+ * <p>
+ * The wait includes time queued for a thread, and time queued behind other tasks with the same tag
+ * in a {@link brooklyn.util.task.SingleThreadedScheduler} (e.g. earlier deliveries to the same subscriber);
+ * so slow event delivery can be told apart from slow listeners. For a {@link brooklyn.util.task.ContinuationTask},
+ * the run time includes the time waiting for its continuation.
+ * <p>
+ * Registered as an {@link ExecutionListener} with the {@link BasicExecutionManager} of a {@link LocalManagementContext}.
+ */
+public class TaskLatencyRecorder implements ExecutionListener {
+
+    public enum TaskCategory {
+        /** an effector invocation */
+        EFFECTOR,
+        /** a run of a {@link ScheduledTask}, such as a feed's poll */
+        POLL,
+        /** delivery of sensor events to a subscriber */
+        SUBSCRIPTION_DELIVERY,
+        /** any other task in an entity's execution context */
+        ENTITY,
+        OTHER
+    }
+
+    private final Map<TaskCategory, LatencyHistogram> queuedTimes = new EnumMap<TaskCategory, LatencyHistogram>(TaskCategory.class);
+    private final Map<TaskCategory, LatencyHistogram> runTimes = new EnumMap<TaskCategory, LatencyHistogram>(TaskCategory.class);
+
+    public TaskLatencyRecorder() {
+        for (TaskCategory category : TaskCategory.values()) {
+            queuedTimes.put(category, new LatencyHistogram());
+            runTimes.put(category, new LatencyHistogram());
+        }
+    }
+
+    public TaskLatencyRecorder(BasicExecutionManager executionManager) {
+        this();
+        executionManager.addListener(this);
+    }
+
+    @Override
+    public void onTaskDone(Task<?> task) {
+        if (!(task instanceof BasicTask)) return;
+        long queuedNanos = ((BasicTask<?>)task).getQueuedTimeNanos();
+        long runNanos = ((BasicTask<?>)task).getRunTimeNanos();
+        // cancelled before starting
+        if (queuedNanos < 0) return;
+
+        TaskCategory category = categorize(task);
+        queuedTimes.get(category).recordNanos(queuedNanos);
+        if (runNanos >= 0) runTimes.get(category).recordNanos(runNanos);
+    }
+
+    /** histogram of the time between submission and start of tasks in the given category */
+    public LatencyHistogram getQueuedTimes(TaskCategory category) {
+        return queuedTimes.get(category);
+    }
+
+    /** histogram of the time between start and end of tasks in the given category */
+    public LatencyHistogram getRunTimes(TaskCategory category) {
+        return runTimes.get(category);
+    }
+
+    /**
+     * For each category (by lower-case name), the {@link LatencyHistogram#getSummary()} of the times 
+     * tasks were queued (keyed "queued") and ran (keyed "run").
+     */
+    public Map<String, Map<String, Map<String,Object>>> getSummary() {
+        Map<String, Map<String, Map<String,Object>>> result = Maps.newLinkedHashMap();
+        for (TaskCategory category : TaskCategory.values()) {
+            result.put(category.name().toLowerCase(), ImmutableMap.of(
+                    "queued", getQueuedTimes(category).getSummary(), 
+                    "run", getRunTimes(category).getSummary()));
+        }
+        return result;
+    }
+
+    public static TaskCategory categorize(Task<?> task) {
+        Set<Object> tags = task.getTags();
+        if (tags.contains(AbstractManagementContext.EFFECTOR_TAG)) return TaskCategory.EFFECTOR;
+        if (task instanceof BasicTask && ((BasicTask<?>)task).getSubmittedByTask() instanceof ScheduledTask) return TaskCategory.POLL;
+
+        boolean entity = false;
+        for (Object tag : tags) {
+            // see LocalSubscriptionManager.subscribe for the tags used for delivery
+            if (tag instanceof String && ((String)tag).startsWith("subscription-delivery")) return TaskCategory.SUBSCRIPTION_DELIVERY;
+            if (tag instanceof Entity) entity = true;
+        }
+        return entity ? TaskCategory.ENTITY : TaskCategory.OTHER;
+    }
+}
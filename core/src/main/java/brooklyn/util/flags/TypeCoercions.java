@@ -32,6 +32,8 @@ import brooklyn.util.net.Cidr;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Primitives;
 
@@ -42,6 +44,27 @@ public class TypeCoercions {
     private static Map<Class,Map<Class,Function>> registeredAdapters = Collections.synchronizedMap(
             new LinkedHashMap<Class,Map<Class,Function>>());
     
+    /** Maximum number of pairs of types whose conversion is cached; far more than are normally coerced between. */
+    private static final int ADAPTER_CACHE_MAX_SIZE = 1000;
+    
+    /** 
+     * The conversion to use for each target type and value type, as found by {@link #findAdapter(Class, Class)}, 
+     * so repeated coercions need not search again; cleared when adapters are registered. 
+     * <p>
+     * Bounded, as the types come from whatever values are coerced; and rather than weakly keyed, as the conversions 
+     * found by reflection reference methods of those types, so would keep them reachable anyway.
+     */
+    private static final Cache<TypePair,Function> adapterCache = CacheBuilder.newBuilder()
+            .maximumSize(ADAPTER_CACHE_MAX_SIZE)
+            .build();
+    
+    /** Cached where there is no conversion between two types. */
+    private static final Function<Object,Object> NO_ADAPTER = new Function<Object,Object>() {
+        @Override public Object apply(Object input) {
+            throw new IllegalStateException("no adapter");
+        }
+    };
+    
     
     /** attempts to coerce 'value' to 'targetType', 
      * using a variety of strategies,
@@ -77,34 +100,96 @@ public class TypeCoercions {
             return (T) value.toString();
         }
 
+        Function adapter = getAdapter(value.getClass(), targetType);
+        if (adapter == NO_ADAPTER) {
+            throw new ClassCastException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): no adapter known");
+        }
+        return (T) adapter.apply(value);
+    }
+
+    /** 
+     * Returns the conversion from values of the given type to the target type, or {@link #NO_ADAPTER};
+     * finding it (by reflection, and searching the registered adapters) only the first time that pair of types is seen.
+     */
+    @SuppressWarnings("rawtypes")
+    private static Function getAdapter(Class<?> valueType, Class<?> targetType) {
+        TypePair types = new TypePair(valueType, targetType);
+        Function result = adapterCache.getIfPresent(types);
+        if (result == null) {
+            // synchronized with registerAdapter, so we never cache a conversion from before an adapter was registered
+            synchronized (TypeCoercions.class) {
+                result = adapterCache.getIfPresent(types);
+                if (result == null) {
+                    result = findAdapter(valueType, targetType);
+                    adapterCache.put(types, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** The key for {@link #adapterCache}: a type of value, and the type it is to be coerced to. */
+    private static class TypePair {
+        private final Class<?> valueType;
+        private final Class<?> targetType;
+        
+        TypePair(Class<?> valueType, Class<?> targetType) {
+            this.valueType = valueType;
+            this.targetType = targetType;
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31*valueType.hashCode() + targetType.hashCode();
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TypePair)) return false;
+            TypePair o = (TypePair) obj;
+            return valueType == o.valueType && targetType == o.targetType;
+        }
+    }
+
+    /** @see #coerce(Object, Class) for the strategies tried, in order */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Function findAdapter(final Class<?> valueType, final Class<?> targetType) {
         //look for value.asType where Type is castable to targetType
         String targetTypeSimpleName = getVerySimpleName(targetType);
         if (targetTypeSimpleName!=null && targetTypeSimpleName.length()>0) {
-            for (Method m: value.getClass().getMethods()) {
+            for (final Method m: valueType.getMethods()) {
                 if (m.getName().startsWith("as") && m.getParameterTypes().length==0 &&
                         targetType.isAssignableFrom(m.getReturnType()) ) {
                     if (m.getName().equals("as"+getVerySimpleName(m.getReturnType()))) {
-                        try {
-                            return (T) m.invoke(value);
-                        } catch (Exception e) {
-                            throw new ClassCastException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                        }
+                        return new Function() {
+                            @Override public Object apply(Object value) {
+                                try {
+                                    return m.invoke(value);
+                                } catch (Exception e) {
+                                    throw new ClassCastException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
+                                }
+                            }
+                        };
                     }
                 }
             }
         }
         
         //now look for static TargetType.fromType(Type t) where value instanceof Type  
-        for (Method m: targetType.getMethods()) {
+        for (final Method m: targetType.getMethods()) {
             if (((m.getModifiers()&Modifier.STATIC)==Modifier.STATIC) && 
                     m.getName().startsWith("from") && m.getParameterTypes().length==1 &&
-                    m.getParameterTypes()[0].isInstance(value)) {
+                    m.getParameterTypes()[0].isAssignableFrom(valueType)) {
                 if (m.getName().equals("from"+getVerySimpleName(m.getParameterTypes()[0]))) {
-                    try {
-                        return (T) m.invoke(null, value);
-                    } catch (Exception e) {
-                        throw new ClassCastException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                    }
+                    return new Function() {
+                        @Override public Object apply(Object value) {
+                            try {
+                                return m.invoke(null, value);
+                            } catch (Exception e) {
+                                throw new ClassCastException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
+                            }
+                        }
+                    };
                 }
             }
         }
@@ -112,41 +197,50 @@ public class TypeCoercions {
        //ENHANCEMENT could look in type hierarchy of both types for a conversion method...
         
         //primitives get run through again boxed up
-        Class boxedT = UNBOXED_TO_BOXED_TYPES.get(targetType);
-        Class boxedVT = UNBOXED_TO_BOXED_TYPES.get(value.getClass());
+        final Class boxedT = UNBOXED_TO_BOXED_TYPES.get(targetType);
+        final Class boxedVT = UNBOXED_TO_BOXED_TYPES.get(valueType);
         if (boxedT!=null || boxedVT!=null) {
-            try {
-                if (boxedT==null) boxedT=targetType;
-                Object boxedV;
-                if (boxedVT==null) { boxedV = value; }
-                else { boxedV = boxedVT.getConstructor(value.getClass()).newInstance(value); }
-                return (T) coerce(boxedV, boxedT);
-            } catch (Exception e) {
-                throw new ClassCastException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): unboxing failed, "+e);
-            }
+            return new Function() {
+                @Override public Object apply(Object value) {
+                    try {
+                        Object boxedV;
+                        if (boxedVT==null) { boxedV = value; }
+                        else { boxedV = boxedVT.getConstructor(value.getClass()).newInstance(value); }
+                        return coerce(boxedV, (boxedT==null) ? targetType : boxedT);
+                    } catch (Exception e) {
+                        throw new ClassCastException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): unboxing failed, "+e);
+                    }
+                }
+            };
         }
 
         if (targetType.isEnum()) {
-            try {
-                return (T) Enum.valueOf((Class)targetType, ""+value);
-            } catch (IllegalArgumentException e) {
-                // some enums (eg Lifecycle) use a tostring which is different, not ideal...
-                return (T) Enum.valueOf((Class)targetType, (""+value).toUpperCase());
-            }
+            return new Function() {
+                @Override public Object apply(Object value) {
+                    try {
+                        return Enum.valueOf((Class)targetType, ""+value);
+                    } catch (IllegalArgumentException e) {
+                        // some enums (eg Lifecycle) use a tostring which is different, not ideal...
+                        return Enum.valueOf((Class)targetType, (""+value).toUpperCase());
+                    }
+                }
+            };
         }
 
         //now look in registry - TODO use registry first?
-        Map<?,?> adaptersToTarget = registeredAdapters.get(targetType);
+        Map<Class,Function> adaptersToTarget = registeredAdapters.get(targetType);
         if (adaptersToTarget!=null) {
-            for (Map.Entry e: adaptersToTarget.entrySet()) {
-                if ( ((Class)e.getKey()).isInstance(value) ) {
-                    return (T) ((Function)e.getValue()).apply(value);
+            synchronized (adaptersToTarget) {
+                for (Map.Entry<Class,Function> e: adaptersToTarget.entrySet()) {
+                    if (e.getKey().isAssignableFrom(valueType)) {
+                        return e.getValue();
+                    }
                 }
             }
         }
                 
         //not found
-        throw new ClassCastException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): no adapter known");
+        return NO_ADAPTER;
     }
 
     /**
@@ -315,6 +409,7 @@ public class TypeCoercions {
             registeredAdapters.put(targetType, sources);
         }
         sources.put(sourceType, fn);
+        adapterCache.invalidateAll();
     }
     
     static {
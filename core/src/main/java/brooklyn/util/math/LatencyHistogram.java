@@ -0,0 +1,105 @@
+package brooklyn.util.math;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A histogram of durations, cheap enough to record into from many threads on every task.
+ * <p>
+ * Values are recorded in microseconds, bucketed by magnitude in the style of HdrHistogram: each power of two
+ * is split into {@value #SUB_BUCKETS} linear sub-buckets, so a reported percentile is within 1/{@value #SUB_BUCKETS}
+ * of the true value, using a fixed small amount of memory whatever the range of values.
+ * Recording is lock-free; reads are not an atomic snapshot, so may be very slightly inconsistent while recording continues.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) micros = 0;
+        counts.incrementAndGet(bucketIndex(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        while (true) {
+            long oldMax = maxMicros.get();
+            if (micros <= oldMax || maxMicros.compareAndSet(oldMax, micros)) break;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    public double getMeanMicros() {
+        long n = count.get();
+        return (n == 0) ? 0 : ((double) totalMicros.get()) / n;
+    }
+
+    /**
+     * Returns the value (in microseconds) at or below which the given percentage of recorded values lie,
+     * to the precision of the buckets; or 0 if nothing has been recorded.
+     */
+    public long getPercentileMicros(double percentile) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * n));
+        long cumulative = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= target) return Math.min(bucketUpperBound(i), getMaxMicros());
+        }
+        return getMaxMicros();
+    }
+
+    /** the count, mean, 50th, 90th and 99th percentiles, and max (all in microseconds), keyed by name */
+    public Map<String,Object> getSummary() {
+        return ImmutableMap.<String,Object>builder()
+                .put("count", getCount())
+                .put("meanMicros", Math.round(getMeanMicros()))
+                .put("p50Micros", getPercentileMicros(50))
+                .put("p90Micros", getPercentileMicros(90))
+                .put("p99Micros", getPercentileMicros(99))
+                .put("maxMicros", getMaxMicros())
+                .build();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram[count="+getCount()+"; meanMicros="+Math.round(getMeanMicros())+
+                "; p50Micros="+getPercentileMicros(50)+"; p99Micros="+getPercentileMicros(99)+"; maxMicros="+getMaxMicros()+"]";
+    }
+}
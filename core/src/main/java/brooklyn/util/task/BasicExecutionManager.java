@@ -15,9 +15,14 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.SynchronousQueue;
@@ -30,12 +35,21 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.BrooklynProperties;
+import brooklyn.config.ConfigKey;
+import brooklyn.event.basic.BasicConfigKey;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.Task;
+import brooklyn.util.GroovyJavaMethods;
 import brooklyn.util.internal.LanguageUtils;
 
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
@@ -51,10 +65,69 @@ public class BasicExecutionManager implements ExecutionManager {
      * <p>
      * (In old Groovy version btw we could run 6500/s vs 2300/s with renaming, from a single thread.) 
      * <p>
-     * Defaults to false if system property is not set.
+     * Defaults to false if system property is not set. The task each thread is running is always available
+     * much more cheaply from {@link #getCurrentTasksByThread()}, including over JMX (see {@link #JMX_DIAGNOSTICS}).
      */
     private static final boolean RENAME_THREADS = Boolean.parseBoolean(System.getProperty("brooklyn.executionManager.renameThreads"));
     
+    /**
+     * If true, and the JVM supports virtual threads (Java 21+), tasks in the growable pool (i.e. blocking tasks, or all tasks 
+     * if {@link #MAX_SHORT_TASK_THREADS} is not set) each run in their own virtual thread, so that many tasks blocked on I/O
+     * need only a few platform threads. Task semantics are unchanged: {@link Tasks#current()} is a thread-local,
+     * which virtual threads support, and {@link TaskScheduler}s such as {@link SingleThreadedScheduler} still control when 
+     * tasks are submitted. Note that a virtual thread blocking in a <code>synchronized</code> block may hold on to its 
+     * carrier thread.
+     */
+    public static final ConfigKey<Boolean> USE_VIRTUAL_THREADS = new BasicConfigKey<Boolean>(
+            Boolean.class, "brooklyn.executionManager.useVirtualThreads", 
+            "whether to run tasks in the growable pool on virtual threads, if supported by the JVM (Java 21+); ignored otherwise", 
+            false);
+    
+    /**
+     * If positive, tasks are run in a pool of at most this many threads, unless they are blocking (see {@link #isBlocking(Task)}),
+     * in which case they are run in a separate pool which grows as needed. This stops a burst of short tasks (such as
+     * sensor event deliveries) creating an unbounded number of threads. Tasks which wait on other tasks,
+     * or on slow I/O, should be submitted with the flag <code>blocking: true</code> so they cannot starve the bounded pool;
+     * likewise subscriptions whose listeners may block (whose deliveries then use the elastic pool, see {@link #setBlockingTag(Object)}).
+     * <p>
+     * If zero (the default), all tasks share the growable pool; if negative, the bound is twice the number of processors.
+     */
+    public static final ConfigKey<Integer> MAX_SHORT_TASK_THREADS = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.executionManager.maxShortTaskThreads", 
+            "maximum number of threads for running short (non-blocking) tasks; 0 to run all tasks in a single pool which grows as needed, "+
+            "or -1 for twice the number of processors", 
+            0);
+    
+    /**
+     * If true, {@link ScheduledTask}s (such as polls) are triggered by a {@link HashedWheelTimer}, 
+     * rather than a {@link ScheduledThreadPoolExecutor}. This scales better to many thousands of periodic tasks,
+     * as scheduling is O(1) and allocates nothing for the timer on each period, but tasks run up to 
+     * {@link #SCHEDULED_TASK_TIMER_TICK_MILLIS} late. 
+     */
+    public static final ConfigKey<Boolean> USE_HASHED_WHEEL_TIMER = new BasicConfigKey<Boolean>(
+            Boolean.class, "brooklyn.executionManager.scheduledTasks.useHashedWheelTimer", 
+            "whether to trigger scheduled tasks from a hashed wheel timer, rather than a scheduled executor", 
+            false);
+    
+    public static final ConfigKey<Long> SCHEDULED_TASK_TIMER_TICK_MILLIS = new BasicConfigKey<Long>(
+            Long.class, "brooklyn.executionManager.scheduledTasks.timerTickMillis", 
+            "granularity of the hashed wheel timer for scheduled tasks, if used", 
+            10L);
+    
+    /**
+     * If true, an {@link ExecutionManagerDiagnosticsMXBean} is registered with the platform MBean server,
+     * so the task each thread is running can be seen with any JMX client (e.g. alongside a thread dump in jconsole).
+     * Defaults to false, as the MBean is only unregistered when the execution manager is shut down (or, failing that, 
+     * once it has been garbage collected and the MBean is next read), and many are created e.g. in tests.
+     */
+    public static final ConfigKey<Boolean> JMX_DIAGNOSTICS = new BasicConfigKey<Boolean>(
+            Boolean.class, "brooklyn.executionManager.jmxDiagnostics", 
+            "whether to register an MBean showing the task being run by each thread", 
+            false);
+    
+    /** number of buckets in the {@link HashedWheelTimer}; with the default tick, one revolution is about 5s */
+    private static final int SCHEDULED_TASK_TIMER_WHEEL_SIZE = 512;
+    
     private static class PerThreadCurrentTaskHolder {
         public static final ThreadLocal<Task> perThreadCurrentTask = new ThreadLocal<Task>();
     }
@@ -87,44 +160,159 @@ public class BasicExecutionManager implements ExecutionManager {
     
     private final ThreadFactory daemonThreadFactory;
     
+    /** 
+     * elastic pool, for blocking tasks (and for all tasks, if there is no {@link #shortTaskRunner});
+     * either a {@link ThreadPoolExecutor}, or a thread-per-task executor if using virtual threads
+     */
     private final ExecutorService runner;
+    
+    /** for virtual threads, which are not pooled: how many are running, and the most there have been */
+    private final AtomicInteger virtualThreadCount = new AtomicInteger();
+    private final AtomicInteger largestVirtualThreadCount = new AtomicInteger();
+    
+    /** bounded pool for short (non-blocking) tasks, or null if all tasks use {@link #runner} */
+    private final ThreadPoolExecutor shortTaskRunner;
         
 	private final ScheduledExecutorService delayedRunner;
 	
+	/** triggers scheduled tasks instead of {@link #delayedRunner}, if set */
+	private final HashedWheelTimer scheduledTaskTimer;
+	
     // TODO Could have a set of all knownTasks; but instead we're having a separate set per tag,
     // so the same task could be listed multiple times if it has multiple tags...
 
-    //access to the below is synchronized in code in this class, to allow us to preserve order while guaranteeing thread-safe
-    //(but more testing is needed before we are sure it is thread-safe!)
-    //synch blocks are as finely grained as possible for efficiency
-    //Not using a CopyOnWriteArraySet for each, because profiling showed this being a massive perf bottleneck.
-    private ConcurrentMap<Object,Set<Task>> tasksByTag = new ConcurrentHashMap<Object,Set<Task>>();
+    //Tasks for each tag, keyed by submission sequence so they are kept in the order submitted.
+    //Concurrent (lock-free) maps rather than synchronized sets, as the entity and subscription tags are hot:
+    //every sensor delivery adds and later removes a task, and the GC and REST API query them at the same time.
+    //(Not using a CopyOnWriteArraySet for each, because profiling showed this being a massive perf bottleneck.)
+    private ConcurrentMap<Object,ConcurrentNavigableMap<Long,Task>> tasksByTag = new ConcurrentHashMap<Object,ConcurrentNavigableMap<Long,Task>>();
+    
+    private final AtomicLong taskSequence = new AtomicLong();
 
     @Deprecated
     private ConcurrentMap<Object, TaskPreprocessor> preprocessorByTag = new ConcurrentHashMap<Object, TaskPreprocessor>();
 
     private ConcurrentMap<Object, TaskScheduler> schedulerByTag = new ConcurrentHashMap<Object, TaskScheduler>();
     
+    /** tags whose tasks may block, so are kept out of the bounded pool; see {@link #setBlockingTag(Object)}; written under schedulerByTag */
+    private final Set<Object> blockingTags = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+    
     private final AtomicLong totalTaskCount = new AtomicLong();
     
     private final AtomicInteger incompleteTaskCount = new AtomicInteger();
     
     private final AtomicInteger activeTaskCount = new AtomicInteger();
     
+    private final AtomicLong scheduledTaskRunCount = new AtomicLong();
+    
+    private final AtomicLong totalScheduledTaskLagMillis = new AtomicLong();
+    
+    private final AtomicLong maxScheduledTaskLagMillis = new AtomicLong();
+    
     private final List<ExecutionListener> listeners = new CopyOnWriteArrayList<ExecutionListener>();
     
+    private final List<TaskDeletionListener> deletionListeners = new CopyOnWriteArrayList<TaskDeletionListener>();
+    
+    /** the task running in each thread; a cheap alternative to renaming threads, see {@link #getCurrentTasksByThread()} */
+    private final ConcurrentMap<Thread, Task<?>> tasksByThread = new ConcurrentHashMap<Thread, Task<?>>();
+    
+    private final ExecutionManagerDiagnostics diagnostics;
+    
     public BasicExecutionManager(String contextid) {
+        this(contextid, BrooklynProperties.Factory.newEmpty());
+    }
+    
+    public BasicExecutionManager(String contextid, BrooklynProperties brooklynProperties) {
         threadFactory = newThreadFactory(contextid);
         daemonThreadFactory = new ThreadFactoryBuilder()
                 .setThreadFactory(threadFactory)
                 .setDaemon(true)
                 .build();
                 
-        // use Executors.newCachedThreadPool(daemonThreadFactory), but timeout of 1s rather than 60s for better shutdown!
-        runner = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
-                daemonThreadFactory);
+        ExecutorService virtualThreadRunner = null;
+        if (brooklynProperties.getConfig(USE_VIRTUAL_THREADS)) {
+            virtualThreadRunner = newVirtualThreadExecutor("brooklyn-execmanager-"+contextid+"-virtual-");
+            if (virtualThreadRunner == null) {
+                log.warn("Virtual threads requested for execution manager "+contextid+", but not supported by this JVM (requires Java 21+); using platform threads");
+            }
+        }
+        if (virtualThreadRunner != null) {
+            runner = virtualThreadRunner;
+        } else {
+            // use Executors.newCachedThreadPool(daemonThreadFactory), but timeout of 1s rather than 60s for better shutdown!
+            runner = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
+                    daemonThreadFactory);
+        }
             
         delayedRunner = new ScheduledThreadPoolExecutor(1, daemonThreadFactory);
+        
+        if (brooklynProperties.getConfig(USE_HASHED_WHEEL_TIMER)) {
+            scheduledTaskTimer = new HashedWheelTimer(
+                    new ThreadFactoryBuilder()
+                            .setThreadFactory(newThreadFactory(contextid+"-timer"))
+                            .setDaemon(true)
+                            .build(),
+                    brooklynProperties.getConfig(SCHEDULED_TASK_TIMER_TICK_MILLIS), TimeUnit.MILLISECONDS, 
+                    SCHEDULED_TASK_TIMER_WHEEL_SIZE);
+        } else {
+            scheduledTaskTimer = null;
+        }
+        
+        int maxShortTaskThreads = brooklynProperties.getConfig(MAX_SHORT_TASK_THREADS);
+        if (maxShortTaskThreads < 0) maxShortTaskThreads = Runtime.getRuntime().availableProcessors() * 2;
+        if (maxShortTaskThreads > 0) {
+            shortTaskRunner = new ThreadPoolExecutor(maxShortTaskThreads, maxShortTaskThreads, 1L, TimeUnit.SECONDS, 
+                    new LinkedBlockingQueue<Runnable>(), 
+                    new ThreadFactoryBuilder()
+                            .setThreadFactory(newThreadFactory(contextid+"-short"))
+                            .setDaemon(true)
+                            .build());
+            shortTaskRunner.allowCoreThreadTimeOut(true);
+        } else {
+            shortTaskRunner = null;
+        }
+        
+        diagnostics = brooklynProperties.getConfig(JMX_DIAGNOSTICS) ? ExecutionManagerDiagnostics.register(this, contextid) : null;
+    }
+    
+    /**
+     * Returns an executor which starts a new virtual thread for each task, 
+     * or null if virtual threads are not available (i.e. before Java 21).
+     * Uses reflection, as this code is compiled for earlier versions of Java.
+     */
+    protected ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        final ThreadFactory virtualThreadFactory;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            virtualThreadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) log.debug("Virtual threads not available: "+e);
+            return null;
+        }
+        ThreadFactory countingThreadFactory = new ThreadFactory() {
+            @Override public Thread newThread(final Runnable r) {
+                return virtualThreadFactory.newThread(new Runnable() {
+                    @Override public void run() {
+                        int count = virtualThreadCount.incrementAndGet();
+                        while (true) {
+                            int largest = largestVirtualThreadCount.get();
+                            if (count <= largest || largestVirtualThreadCount.compareAndSet(largest, count)) break;
+                        }
+                        try {
+                            r.run();
+                        } finally {
+                            virtualThreadCount.decrementAndGet();
+                        }
+                    }});
+            }};
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, countingThreadFactory);
+        } catch (Exception e) {
+            log.warn("Virtual threads available but unable to create executor for them; using platform threads", e);
+            return null;
+        }
     }
     
 	/** 
@@ -144,7 +332,15 @@ public class BasicExecutionManager implements ExecutionManager {
 	}
 	
     public void shutdownNow() {
+        if (diagnostics != null) diagnostics.unregister();
         runner.shutdownNow();
+        if (shortTaskRunner != null) shortTaskRunner.shutdownNow();
+        if (scheduledTaskTimer != null) scheduledTaskTimer.stop();
+    }
+    
+    /** the diagnostics registered over JMX, or null if not enabled (see {@link #JMX_DIAGNOSTICS}) or registration failed */
+    public ExecutionManagerDiagnostics getJmxDiagnostics() {
+        return diagnostics;
     }
     
     public void addListener(ExecutionListener listener) {
@@ -155,6 +351,15 @@ public class BasicExecutionManager implements ExecutionManager {
         listeners.remove(listener);
     }
     
+    /** the listener is called in the thread deleting the task, so should be quick */
+    public void addDeletionListener(TaskDeletionListener listener) {
+        deletionListeners.add(listener);
+    }
+    
+    public void removeDeletionListener(TaskDeletionListener listener) {
+        deletionListeners.remove(listener);
+    }
+    
     /**
      * Deletes the given tag, including all tasks using this tag.
      * 
@@ -162,20 +367,28 @@ public class BasicExecutionManager implements ExecutionManager {
      * a reference to it as a tag.
      */
     public void deleteTag(Object tag) {
-        Set<Task> tasks = tasksByTag.remove(tag);
+        Map<Long,Task> tasks = tasksByTag.remove(tag);
         if (tasks != null) {
-            for (Task task : tasks) {
+            for (Task task : tasks.values()) {
                 deleteTask(task);
             }
         }
     }
 
     public void deleteTask(Task<?> task) {
-        Set<?> tags = checkNotNull((BasicTask<?>)task, "task").tags;
+        BasicTask<?> basicTask = checkNotNull((BasicTask<?>)task, "task");
+        Set<?> tags = basicTask.tags;
         if (tags != null) {
             for (Object tag : tags) {
-                Set<Task> tasks = getMutableTasksWithTagOrNull(tag);
-                if (tasks != null) tasks.remove(task);
+                Map<Long,Task> tasks = getMutableTasksWithTagOrNull(tag);
+                if (tasks != null) tasks.remove(basicTask.submissionSequence);
+            }
+        }
+        for (TaskDeletionListener listener : deletionListeners) {
+            try {
+                listener.onTaskDeleted(task);
+            } catch (Exception e) {
+                log.warn("Error notifying listener "+listener+" of task "+task+" deleted", e);
             }
         }
     }
@@ -196,24 +409,93 @@ public class BasicExecutionManager implements ExecutionManager {
         return activeTaskCount.get();
     }
     
-    private Set<Task> getMutableTasksWithTag(Object tag) {
-        if (tag == null) {
-            System.out.println("argph, null");
+    /** 
+     * Returns the task running in each thread (a snapshot); threads running no task of this manager are not included.
+     * <p>
+     * Unlike renaming threads, maintaining this costs little more than setting {@link Tasks#current()}.
+     */
+    public Map<Thread, Task<?>> getCurrentTasksByThread() {
+        return ImmutableMap.copyOf(tasksByThread);
+    }
+    
+    /** number of threads in the pool for short tasks (or 0 if there is no such pool) */
+    public int getNumShortTaskThreads() {
+        return shortTaskRunner != null ? shortTaskRunner.getPoolSize() : 0;
+    }
+    
+    /** number of short tasks waiting for a thread */
+    public int getShortTaskQueueLength() {
+        return shortTaskRunner != null ? shortTaskRunner.getQueue().size() : 0;
+    }
+    
+    /** number of threads in the pool for blocking tasks (which runs all tasks, if there is no pool for short tasks) */
+    public int getNumBlockingTaskThreads() {
+        return (runner instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor)runner).getPoolSize() : virtualThreadCount.get();
+    }
+    
+    /** the largest number of threads there have been in the pool for blocking tasks */
+    public int getLargestNumBlockingTaskThreads() {
+        return (runner instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor)runner).getLargestPoolSize() : largestVirtualThreadCount.get();
+    }
+    
+    /** whether blocking tasks (or all tasks, if there is no pool for short tasks) are run on virtual threads */
+    public boolean isUsingVirtualThreads() {
+        return !(runner instanceof ThreadPoolExecutor);
+    }
+    
+    /** whether {@link ScheduledTask}s are triggered by a {@link HashedWheelTimer} (see {@link #USE_HASHED_WHEEL_TIMER}) */
+    public boolean isUsingHashedWheelTimer() {
+        return scheduledTaskTimer != null;
+    }
+    
+    /** number of times a {@link ScheduledTask} has been triggered to run */
+    public long getNumScheduledTaskRuns() {
+        return scheduledTaskRunCount.get();
+    }
+    
+    /** 
+     * total lag of all scheduled task runs, i.e. the sum of how late each was triggered (and submitted) compared to when it was due;
+     * divide by {@link #getNumScheduledTaskRuns()} for the mean
+     */
+    public long getTotalScheduledTaskLagMillis() {
+        return totalScheduledTaskLagMillis.get();
+    }
+    
+    /** the most that any scheduled task run has lagged */
+    public long getMaxScheduledTaskLagMillis() {
+        return maxScheduledTaskLagMillis.get();
+    }
+    
+    private void recordScheduledTaskLag(long lagMillis) {
+        if (lagMillis < 0) lagMillis = 0;
+        scheduledTaskRunCount.incrementAndGet();
+        totalScheduledTaskLagMillis.addAndGet(lagMillis);
+        while (true) {
+            long max = maxScheduledTaskLagMillis.get();
+            if (lagMillis <= max || maxScheduledTaskLagMillis.compareAndSet(max, lagMillis)) break;
         }
-        tasksByTag.putIfAbsent(tag, Collections.synchronizedSet(new LinkedHashSet<Task>()));
-        return tasksByTag.get(tag);
+    }
+    
+    private Map<Long,Task> getMutableTasksWithTag(Object tag) {
+        checkNotNull(tag, "tag");
+        ConcurrentNavigableMap<Long,Task> result = tasksByTag.get(tag);
+        if (result == null) {
+            ConcurrentNavigableMap<Long,Task> old = tasksByTag.putIfAbsent(tag, result = new ConcurrentSkipListMap<Long,Task>());
+            if (old != null) result = old;
+        }
+        return result;
     }
 
-    private Set<Task> getMutableTasksWithTagOrNull(Object tag) {
+    private Map<Long,Task> getMutableTasksWithTagOrNull(Object tag) {
         return tasksByTag.get(tag);
     }
 
     @Override
     public Set<Task<?>> getTasksWithTag(Object tag) {
-        Set<Task> result = getMutableTasksWithTag(tag);
-        synchronized (result) {
-            return (Set)Collections.unmodifiableSet(new LinkedHashSet<Task>(result));
-        }
+        Map<Long,Task> result = getMutableTasksWithTagOrNull(tag);
+        if (result == null) return Collections.emptySet();
+        // weakly consistent snapshot, in submission order; does not block submitters
+        return (Set)Collections.unmodifiableSet(new LinkedHashSet<Task>(result.values()));
     }
     
     @Override
@@ -285,40 +567,108 @@ public class BasicExecutionManager implements ExecutionManager {
 	protected Task submitNewScheduledTask(final Map flags, final ScheduledTask task) {
 		task.submitTimeUtc = System.currentTimeMillis();
 		if (!task.isDone()) {
-			task.result = delayedRunner.schedule(new Callable() { public Object call() {
-				if (task.startTimeUtc==-1) task.startTimeUtc = System.currentTimeMillis();
-				final BasicTask taskScheduled = (BasicTask) task.newTask();
-				taskScheduled.submittedByTask = task;
-				final Callable oldJob = taskScheduled.job;
-				taskScheduled.job = new Callable() { public Object call() {
-					task.recentRun = taskScheduled;
-					synchronized (task) {
-					    task.notifyAll();
-					}
-					Object result;
-					try {
-					    result = oldJob.call();
-					} catch (Exception e) {
-					    log.warn("Error executing "+oldJob+" ("+task.getDescription()+")", e);
-					    throw Throwables.propagate(e);
-				    }
-					task.runCount++;
-					if (task.period!=null && !task.isCancelled()) {
-						task.delay = task.period;
-						submitNewScheduledTask(flags, task);
-					}
-					return result;
-				}};
-				task.nextRun = taskScheduled;
-				return submit(taskScheduled);
-			}},
-			task.delay.toMilliseconds(), TimeUnit.MILLISECONDS);
+			// the same trigger (and timeout, if using the timer) is re-used for each run
+			if (task.trigger==null) task.trigger = new ScheduledTaskTrigger(task);
+			long delayMillis = task.delay.toMilliseconds();
+			task.nextRunDueUtc = task.submitTimeUtc + delayMillis;
+			if (scheduledTaskTimer!=null) {
+				if (task.timeout==null) task.timeout = scheduledTaskTimer.newTimeout(task.trigger);
+				task.result = task.timeout;
+				scheduledTaskTimer.schedule(task.timeout, delayMillis, TimeUnit.MILLISECONDS);
+			} else {
+				task.result = delayedRunner.schedule(task.trigger, delayMillis, TimeUnit.MILLISECONDS);
+			}
 		} else {
 			task.endTimeUtc = System.currentTimeMillis();
+			task.ended();
 		}
 		return task;
 	}
 
+	/** 
+	 * Submits a new run of a scheduled task, when its delay has elapsed; then schedules the next run, if periodic, once that has run.
+	 * <p>
+	 * It is also the job of each run (wrapping the job of the task made by the scheduled task's factory), so nothing need be
+	 * allocated for it on each period. Runs never overlap, as the next is only scheduled at the end of this one's job;
+	 * and the job reads the fields for its run as it starts, before it can schedule the next.
+	 */
+	private class ScheduledTaskTrigger implements Runnable, Callable<Object> {
+		private final ScheduledTask task;
+		/** the run most recently submitted, and the job it was created with; written by the trigger, then read by that run's job */
+		private BasicTask currentRun;
+		private Callable currentJob;
+		
+		ScheduledTaskTrigger(ScheduledTask task) {
+			this.task = task;
+		}
+		
+		public void run() {
+			long now = System.currentTimeMillis();
+			recordScheduledTaskLag(now - task.nextRunDueUtc);
+			if (task.startTimeUtc==-1) task.startTimeUtc = now;
+			BasicTask taskScheduled = (BasicTask) task.newTask();
+			taskScheduled.submittedByTask = task;
+			currentRun = taskScheduled;
+			currentJob = taskScheduled.job;
+			taskScheduled.job = this;
+			task.nextRun = taskScheduled;
+			// as for a system task, skip the (deprecated) tag-linked preprocessors, and the flags map which records them
+			submitNewTask(null, taskScheduled);
+		}
+		
+		public Object call() {
+			final BasicTask taskScheduled = currentRun;
+			Callable oldJob = currentJob;
+			task.recentRun = taskScheduled;
+			synchronized (task) {
+			    task.notifyAll();
+			}
+			Object result;
+			boolean rescheduled = false;
+			try {
+			    try {
+			        result = oldJob.call();
+			    } catch (Exception e) {
+			        log.warn("Error executing "+oldJob+" ("+task.getDescription()+")", e);
+			        throw Throwables.propagate(e);
+			    }
+			    task.runCount++;
+			    if (task.period!=null && !task.isCancelled()) {
+			        task.delay = task.getNextDelay();
+			        submitNewScheduledTask(null, task);
+			        rescheduled = true;
+			    }
+			} finally {
+			    // this is the final run, so the scheduled task ends once this run has ended
+			    if (!rescheduled) taskScheduled.addListener(new Runnable() {
+			            public void run() {
+			                task.ended();
+			            }}, MoreExecutors.sameThreadExecutor());
+			}
+			return result;
+		}
+		
+		@Override
+		public String toString() {
+			return "trigger["+task+"]";
+		}
+	}
+
+    /**
+     * Submits a short job generated by the system itself, such as a sensor event delivery, with a single tag (or none, if null).
+     * <p>
+     * This is cheaper than {@link #submit(Map, Runnable)}, as it is run often: there is no flags map, the tag is held 
+     * in a singleton set and used as the display name, and tag-linked {@link TaskPreprocessor}s are not applied. 
+     * Any {@link TaskScheduler} for the tag is used as normal, and {@link ExecutionListener}s are notified.
+     */
+    public Task<?> submitSystemTask(Object tag, Runnable job) {
+        return submitNewTask(null, new BasicTask<Void>(tag, GroovyJavaMethods.<Void>callableFromRunnable(job)));
+    }
+
+    /**
+     * @param flags as passed to {@link #submit(Map, Task)}, which are modified; 
+     *        or null for a system task (see {@link #submitSystemTask(Object, Runnable)})
+     */
     protected <T> Task<T> submitNewTask(final Map flags, final Task<T> task) {
         if (task instanceof ScheduledTask)
             return submitNewScheduledTask(flags, (ScheduledTask)task);
@@ -330,7 +680,57 @@ public class BasicExecutionManager implements ExecutionManager {
         if (((BasicTask)task).job==null) 
             throw new NullPointerException("Task "+task+" submitted with with null job: job must be supplied.");
         
-        Callable job = new Callable() { public Object call() {
+        ((BasicTask)task).initExecutionManager(this);
+        
+        if (task instanceof ContinuationTask) {
+            SettableFuture result = SettableFuture.create();
+            execute(task, new ContinuationTaskStarter(flags, (ContinuationTask)task, result));
+            cancelContinuationOnCancel((ContinuationTask)task, result);
+            ((BasicTask)task).initResult(result);
+        } else {
+            ((BasicTask)task).initResult(execute(task, new TaskRunner(flags, task)));
+        }
+        return task;
+    }
+
+    /** 
+     * Runs the job for the given task in the scheduler for its tags, if there is one, 
+     * or otherwise in the pool for short or blocking tasks as appropriate.
+     */
+    private <T> ListenableFuture<T> execute(Task<?> task, Callable<T> job) {
+        ListenableFutureTask<T> future = ListenableFutureTask.create(job);
+        
+        // If there's a scheduler then use that; otherwise execute it directly
+        TaskScheduler scheduler = null;
+        for (Object tago: ((BasicTask)task).tags) {
+            TaskScheduler s = getTaskSchedulerForTag(tago);
+            if (s!=null) {
+                if (scheduler==null) scheduler = s;
+                else if (s!=scheduler) log.warn("multiple schedulers detected, using only the first ("+scheduler+"), for "+task+": also "+s);
+            }
+        }
+        if (scheduler!=null) {
+            scheduler.submit(Executors.callable(future));
+        } else if (shortTaskRunner != null && !isBlocking(task)) {
+            shortTaskRunner.execute(future);
+        } else {
+            runner.execute(future);
+        }
+        return future;
+    }
+
+    /** runs the task's job in the executor's thread, wrapped in the before-start and after-end housekeeping */
+    private class TaskRunner implements Callable<Object> {
+        /** cleared once the task has ended, as the runner is referenced by the task's future */
+        private Map flags;
+        private final Task<?> task;
+        
+        TaskRunner(Map flags, Task<?> task) {
+            this.flags = flags;
+            this.task = task;
+        }
+        
+        public Object call() {
             Object result = null;
             Throwable error = null;
             String oldThreadName = Thread.currentThread().getName();
@@ -351,36 +751,115 @@ public class BasicExecutionManager implements ExecutionManager {
                     Thread.currentThread().setName(oldThreadName);
                 }
                 afterEnd(flags, task);
+                flags = null;
             }
             if (error!=null) {
                 log.warn("Error while running task "+task+" (rethrowing): "+error.getMessage(), error);
                 throw Throwables.propagate(error);
             }
             return result;
-        }};
-        ((BasicTask)task).initExecutionManager(this);
+        }
+    }
+
+    /**
+     * Runs the job of a {@link ContinuationTask} in the executor's thread, with the usual before-start housekeeping,
+     * then releases the thread; once the future returned by the job completes, the after-end housekeeping 
+     * (including notifying {@link ExecutionListener}s) is done, and the task's result set, in a pooled thread
+     * (see {@link #continuationEndExecutor}), rather than in whichever thread completed that future.
+     */
+    private class ContinuationTaskStarter implements Callable<Void> {
+        private final Map flags;
+        private final ContinuationTask task;
+        private final SettableFuture result;
         
-        // If there's a scheduler then use that; otherwise execute it directly
-        Set<TaskScheduler> schedulers = null;
-        for (Object tago: ((BasicTask)task).tags) {
-            TaskScheduler scheduler = getTaskSchedulerForTag(tago);
-            if (scheduler!=null) {
-                if (schedulers==null) schedulers = new LinkedHashSet(2);
-                schedulers.add(scheduler);
+        ContinuationTaskStarter(Map flags, ContinuationTask task, SettableFuture result) {
+            this.flags = flags;
+            this.task = task;
+            this.result = result;
+        }
+        
+        public Void call() {
+            ListenableFuture continuation = null;
+            Throwable error = null;
+            try {
+                beforeStart(flags, task);
+                if (!task.isCancelled()) {
+                    continuation = (ListenableFuture) task.job.call();
+                    if (continuation==null) throw new NullPointerException("Task "+task+" returned null instead of a future");
+                } else throw new CancellationException();
+            } catch (Throwable e) {
+                error = e;
+            }
+            
+            if (error!=null) {
+                afterEnd(flags, task);
+                if (error instanceof CancellationException) {
+                    // cancelled before it started
+                    result.cancel(false);
+                } else {
+                    log.warn("Error while running task "+task+": "+error.getMessage(), error);
+                    result.setException(error);
+                }
+                return null;
             }
+            
+            // not running in this thread any more, though not yet ended
+            PerThreadCurrentTaskHolder.perThreadCurrentTask.remove();
+            tasksByThread.remove(Thread.currentThread(), task);
+            task.thread = null;
+            
+            task.continuation = continuation;
+            if (task.isCancelled()) continuation.cancel(true);
+            final ListenableFuture finalContinuation = continuation;
+            continuation.addListener(new Runnable() {
+                public void run() {
+                    afterEnd(flags, task);
+                    Tasks.setFromCompletedFuture(result, finalContinuation);
+                }}, continuationEndExecutor);
+            return null;
         }
-        Future future;
-        if (schedulers!=null && !schedulers.isEmpty()) {
-			if (schedulers.size()>1) log.warn("multiple schedulers detected, using only the first, for "+task+": "+schedulers);
-            future = schedulers.iterator().next().submit(job);
-        } else {
-            future = runner.submit(job);
+    }
+    
+    /** 
+     * Runs the end of a {@link ContinuationTask} in the pool for short tasks (or the main pool, if there is none),
+     * so listeners are not run by e.g. the thread delivering the sensor event the task was waiting for; 
+     * or in the calling thread if the pool has been shut down, so the task still ends.
+     */
+    private final Executor continuationEndExecutor = new Executor() {
+        public void execute(Runnable command) {
+            try {
+                (shortTaskRunner != null ? shortTaskRunner : runner).execute(command);
+            } catch (RejectedExecutionException e) {
+                command.run();
+            }
         }
-
-        ((BasicTask)task).initResult(future);
-        return task;
+    };
+    
+    private void cancelContinuationOnCancel(final ContinuationTask task, final ListenableFuture result) {
+        result.addListener(new Runnable() {
+            public void run() {
+                ListenableFuture continuation = task.continuation;
+                if (result.isCancelled() && continuation!=null) continuation.cancel(true);
+            }}, MoreExecutors.sameThreadExecutor());
     }
-
+    
+    /** 
+     * Whether the task may block for a long time (e.g. waiting on I/O or on other tasks), so should not take a thread 
+     * from the bounded pool for short tasks: i.e. it is marked as blocking, or it waits on child tasks, or it is a run 
+     * of a {@link ScheduledTask} (typically polling a remote system), or it has a tag marked as blocking (see {@link #setBlockingTag(Object)}).
+     */
+    protected boolean isBlocking(Task<?> task) {
+        return ((BasicTask<?>)task).blocking || task instanceof CompoundTask || ((BasicTask<?>)task).submittedByTask instanceof ScheduledTask
+                || (!blockingTags.isEmpty() && hasBlockingTag(task));
+    }
+    
+    private boolean hasBlockingTag(Task<?> task) {
+        for (Object tag : ((BasicTask<?>)task).tags) {
+            if (blockingTags.contains(tag)) return true;
+        }
+        return false;
+    }
+    
     @SuppressWarnings("deprecation")
     protected void beforeSubmit(Map flags, Task<?> task) {
         incompleteTaskCount.incrementAndGet();
@@ -388,14 +867,21 @@ public class BasicExecutionManager implements ExecutionManager {
 		Task currentTask = getCurrentTask();
         if (currentTask!=null) ((BasicTask)task).submittedByTask = currentTask;
         ((BasicTask)task).submitTimeUtc = System.currentTimeMillis();
+        ((BasicTask)task).submitTimeNanos = System.nanoTime();
+        ((BasicTask)task).submissionSequence = taskSequence.incrementAndGet();
         
-        if (flags.get("tag")!=null) ((BasicTask)task).tags.add(flags.remove("tag"));
-        if (flags.get("tags")!=null) ((BasicTask)task).tags.addAll((Collection)flags.remove("tags"));
+        if (flags!=null) {
+            if (flags.get("tag")!=null) ((BasicTask)task).tags.add(flags.remove("tag"));
+            if (flags.get("tags")!=null) ((BasicTask)task).tags.addAll((Collection)flags.remove("tags"));
+        }
 
         for (Object tag: ((BasicTask)task).tags) {
-            getMutableTasksWithTag(tag).add(task);
+            getMutableTasksWithTag(tag).put(((BasicTask)task).submissionSequence, task);
         }
         
+        // system tasks skip the (deprecated) preprocessors, and need no flags to record them in
+        if (flags==null) return;
+        
         List tagLinkedPreprocessors = new ArrayList();
         for (Object tag: ((BasicTask)task).tags) {
             TaskPreprocessor p = getTaskPreprocessorForTag(tag);
@@ -416,13 +902,16 @@ public class BasicExecutionManager implements ExecutionManager {
         if (log.isTraceEnabled()) log.trace(""+this+" beforeStart, task: "+task);
         if (!task.isCancelled()) {
             ((BasicTask)task).thread = Thread.currentThread();
+            tasksByThread.put(Thread.currentThread(), task);
             if (RENAME_THREADS) {
                 String newThreadName = "brooklyn-" + CaseFormat.LOWER_HYPHEN.to(CaseFormat.LOWER_CAMEL, task.getDisplayName().replace(" ", "")) + "-" + task.getId().substring(0, 8);
                 ((BasicTask)task).thread.setName(newThreadName);
             }
             PerThreadCurrentTaskHolder.perThreadCurrentTask.set(task);
             ((BasicTask)task).startTimeUtc = System.currentTimeMillis();
+            ((BasicTask)task).startTimeNanos = System.nanoTime();
         }
+        if (flags==null) return;
         for (Object to : (Collection)flags.get("tagLinkedPreprocessors")) { 
             TaskPreprocessor t = (TaskPreprocessor)to;
             t.onStart(flags, task); 
@@ -436,22 +925,29 @@ public class BasicExecutionManager implements ExecutionManager {
         incompleteTaskCount.decrementAndGet();
 
         if (log.isTraceEnabled()) log.trace(this+" afterEnd, task: "+task);
-        ExecutionUtils.invoke(flags.get("newTaskEndCallback"), task);
-        List l = (List)flags.get("tagLinkedPreprocessors");
-        Collections.reverse(l);
-        for (Object li: l) {
-            TaskPreprocessor t = (TaskPreprocessor)li;
-            t.onEnd(flags, task); 
+        if (flags!=null) {
+            ExecutionUtils.invoke(flags.get("newTaskEndCallback"), task);
+            List l = (List)flags.get("tagLinkedPreprocessors");
+            Collections.reverse(l);
+            for (Object li: l) {
+                TaskPreprocessor t = (TaskPreprocessor)li;
+                t.onEnd(flags, task); 
+            }
         }
 
-        PerThreadCurrentTaskHolder.perThreadCurrentTask.remove();
+        // continuation tasks may end in some other thread, which may be running a task of its own 
+        if (PerThreadCurrentTaskHolder.perThreadCurrentTask.get()==task) PerThreadCurrentTaskHolder.perThreadCurrentTask.remove();
         ((BasicTask)task).endTimeUtc = System.currentTimeMillis();
+        ((BasicTask)task).endTimeNanos = System.nanoTime();
         //clear thread _after_ endTime set, so we won't get a null thread when there is no end-time
-        if (RENAME_THREADS) {
+        if (((BasicTask)task).thread!=null) tasksByThread.remove(((BasicTask)task).thread, task);
+        if (RENAME_THREADS && ((BasicTask)task).thread!=null) {
             String newThreadName = "brooklyn-"+LanguageUtils.newUid();
             ((BasicTask)task).thread.setName(newThreadName);
         }
         ((BasicTask)task).thread = null;
+        // completed tasks can be retained for some time, so drop what is only needed while running
+        ((BasicTask)task).compact();
         synchronized (task) { task.notifyAll(); }
 
         for (ExecutionListener listener : listeners) {
@@ -563,7 +1059,8 @@ public class BasicExecutionManager implements ExecutionManager {
      */
     public void setTaskSchedulerForTag(Object tag, TaskScheduler scheduler) {
         synchronized (schedulerByTag) {
-            scheduler.injectExecutor(runner);
+            // schedulers are used for delivering events to listeners, which should be short unless the tag says otherwise
+            scheduler.injectExecutor(getExecutorForScheduler(tag));
 
             Object old = schedulerByTag.put(tag, scheduler);
             if (old!=null && old!=scheduler) {
@@ -573,6 +1070,41 @@ public class BasicExecutionManager implements ExecutionManager {
         }
     }
 
+    /**
+     * Marks the tasks with the given tag as possibly blocking for a long time, e.g. those delivering events to a subscriber 
+     * whose listener does I/O; so they, and any {@link TaskScheduler} for the tag, use the elastic pool rather than 
+     * the bounded pool for short tasks (see {@link #MAX_SHORT_TASK_THREADS}). 
+     *
+     * @see #clearBlockingTag(Object)
+     */
+    public void setBlockingTag(Object tag) {
+        synchronized (schedulerByTag) {
+            if (blockingTags.add(tag)) {
+                TaskScheduler scheduler = schedulerByTag.get(tag);
+                if (scheduler != null) scheduler.injectExecutor(getExecutorForScheduler(tag));
+            }
+        }
+    }
+    
+    /**
+     * Forgets that tasks with the given tag may block.
+     *
+     * @see #setBlockingTag(Object)
+     */
+    public boolean clearBlockingTag(Object tag) {
+        synchronized (schedulerByTag) {
+            if (!blockingTags.remove(tag)) return false;
+            TaskScheduler scheduler = schedulerByTag.get(tag);
+            if (scheduler != null) scheduler.injectExecutor(getExecutorForScheduler(tag));
+            return true;
+        }
+    }
+    
+    /** must be called while synchronized on schedulerByTag */
+    private ExecutorService getExecutorForScheduler(Object tag) {
+        return (shortTaskRunner != null && !blockingTags.contains(tag)) ? shortTaskRunner : runner;
+    }
+
     /**
      * Forgets that any scheduler was associated with a tag.
      *
@@ -10,6 +10,7 @@ import java.io.StringWriter;
 import java.lang.management.LockInfo;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
+import java.lang.ref.WeakReference;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
@@ -21,6 +22,7 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -32,8 +34,13 @@ import brooklyn.management.ExecutionManager;
 import brooklyn.management.Task;
 import brooklyn.util.GroovyJavaMethods;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.flags.TypeCoercions;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ExecutionList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * The basic concrete implementation of a {@link Task} to be executed.
@@ -57,9 +64,15 @@ public class BasicTask<T> extends BasicTaskStub implements Task<T> {
     public final String displayName;
     public final String description;
 
-    protected final Set tags = new LinkedHashSet();
+    /** 
+     * a (mutable) {@link LinkedHashSet} until submitted, except for system tasks, which have a single tag in an immutable set;
+     * replaced by a compact immutable copy once the task has ended (see {@link #compact()})
+     */
+    protected Set tags;
 
     protected String blockingDetails = null;
+    /** whether this task may block for a long time, e.g. on I/O or other tasks; set from the <code>blocking</code> flag */
+    protected final boolean blocking;
     Object extraStatusText = null;
 
     /**
@@ -74,6 +87,7 @@ public class BasicTask<T> extends BasicTaskStub implements Task<T> {
     
     public BasicTask(Map flags, Callable<T> job) {
         this.job = job;
+        this.tags = new LinkedHashSet();
 
         if (flags.containsKey("tag")) tags.add(flags.remove("tag"));
         Object ftags = flags.remove("tags");
@@ -85,12 +99,25 @@ public class BasicTask<T> extends BasicTaskStub implements Task<T> {
             }
         }
 
+        blocking = Boolean.TRUE.equals(TypeCoercions.coerce(flags.remove("blocking"), Boolean.class));
         description = elvisString(flags.remove("description"), "");
         String d = asString(flags.remove("displayName"));
         if (d==null) d = join(tags, "-");
         displayName = d;
     }
 
+    /**
+     * For system tasks (see {@link BasicExecutionManager#submitSystemTask(Object, Runnable)}): takes the single tag
+     * (if not null) directly rather than from a flags map, and uses it as the display name.
+     */
+    BasicTask(Object tag, Callable<T> job) {
+        this.job = job;
+        this.tags = (tag != null) ? Collections.singleton(tag) : Collections.emptySet();
+        blocking = false;
+        description = "";
+        displayName = (tag != null) ? tag.toString() : "";
+    }
+
     public BasicTask(Runnable job) { this(GroovyJavaMethods.<T>callableFromRunnable(job)); }
     public BasicTask(Map flags, Runnable job) { this(flags, GroovyJavaMethods.<T>callableFromRunnable(job)); }
     public BasicTask(Closure<T> job) { this(GroovyJavaMethods.callableFromClosure(job)); }
@@ -134,11 +161,23 @@ public class BasicTask<T> extends BasicTaskStub implements Task<T> {
     protected long submitTimeUtc = -1;
     protected long startTimeUtc = -1;
     protected long endTimeUtc = -1;
+    /** as the *TimeUtc fields, but from {@link System#nanoTime()}, for measuring how long each stage took */
+    protected long submitTimeNanos = -1;
+    protected long startTimeNanos = -1;
+    protected long endTimeNanos = -1;
+    /** the task which submitted this one, while it is running; see {@link #getSubmittedByTask()} */
     protected Task<?> submittedByTask;
+    /** once this task has ended, the task which submitted it is only weakly referenced, so chains of completed tasks can be collected */
+    private WeakReference<Task<?>> submittedByTaskRef;
+    private String submittedByTaskId;
+    /** unique and increasing within the execution manager, set on submission; orders the manager's per-tag task registries */
+    protected long submissionSequence = -1;
 
     protected volatile Thread thread = null;
     private volatile boolean cancelled = false;
     protected volatile Future<T> result = null;
+    /** listeners added before the task had a result; created on demand, and handed on once there is a result */
+    private ExecutionList pendingListeners;
 
     /** discouraged, but used in tests. not always set (e.g. if it is a scheduled task)
      * @deprecated in 0.4.0; use current execution context, as per CompoundTask.submitXxx */
@@ -150,22 +189,68 @@ public class BasicTask<T> extends BasicTaskStub implements Task<T> {
         this.em = em;
     }
     
-    synchronized void initResult(Future result) {
-        if (this.result != null) 
-            throw new IllegalStateException("task "+this+" is being given a result twice");
-        this.result = result;
-        notifyAll();
+    void initResult(ListenableFuture result) {
+        ExecutionList listeners;
+        synchronized (this) {
+            if (this.result != null) 
+                throw new IllegalStateException("task "+this+" is being given a result twice");
+            this.result = result;
+            listeners = pendingListeners;
+            pendingListeners = null;
+            notifyAll();
+        }
+        if (listeners != null) addListener(executing(listeners), MoreExecutors.sameThreadExecutor());
     }
 
     // metadata accessors ------------
 
-    public Set<Object> getTags() { return Collections.unmodifiableSet(new LinkedHashSet(tags)); }
+    public Set<Object> getTags() { 
+        Set result = tags;
+        return (result instanceof ImmutableSet) ? result : Collections.unmodifiableSet(new LinkedHashSet(result));
+    }
     public long getSubmitTimeUtc() { return submitTimeUtc; }
     public long getStartTimeUtc() { return startTimeUtc; }
     public long getEndTimeUtc() { return endTimeUtc; }
+    /** how long the task waited between being submitted and starting, in nanoseconds; or -1 if it has not started */
+    public long getQueuedTimeNanos() { return (startTimeNanos >= 0 && submitTimeNanos >= 0) ? startTimeNanos - submitTimeNanos : -1; }
+    /** how long the task took from starting until it ended, in nanoseconds; or -1 if it has not ended */
+    public long getRunTimeNanos() { return (endTimeNanos >= 0 && startTimeNanos >= 0) ? endTimeNanos - startTimeNanos : -1; }
 
     public Future<T> getResult() { return result; }
-    public Task<?> getSubmittedByTask() { return submittedByTask; }
+    /** 
+     * the task which submitted this one, if any; once this task has ended, this may return null 
+     * if the submitter has been garbage collected (see {@link #getSubmittedByTaskId()})
+     */
+    public Task<?> getSubmittedByTask() { 
+        Task<?> result = submittedByTask;
+        if (result==null && submittedByTaskRef!=null) result = submittedByTaskRef.get();
+        return result;
+    }
+    /** the id of the task which submitted this one, if any, even if that task is no longer available */
+    public String getSubmittedByTaskId() {
+        Task<?> submitter = submittedByTask;
+        return (submitter!=null) ? submitter.getId() : submittedByTaskId;
+    }
+
+    /**
+     * Called by the execution manager once the task has ended, to release what is needed only while it is pending or running, 
+     * as completed tasks can be kept for a long time (e.g. for the history of an entity): the job (typically a closure, 
+     * holding on to whatever it references), the strong reference to the submitting task (which would keep whole chains 
+     * of tasks reachable), blocking details, and the mutable set of tags.
+     */
+    protected void compact() {
+        job = null;
+        blockingDetails = null;
+        Task<?> submitter = submittedByTask;
+        if (submitter!=null) {
+            submittedByTaskId = submitter.getId();
+            submittedByTaskRef = new WeakReference<Task<?>>(submitter);
+            submittedByTask = null;
+        }
+        if (!(tags instanceof ImmutableSet) && !tags.contains(null)) {
+            tags = ImmutableSet.copyOf(tags);
+        }
+    }
 
     /** the thread where the task is running, if it is running */
     public Thread getThread() { return thread; }
@@ -180,16 +265,53 @@ public class BasicTask<T> extends BasicTaskStub implements Task<T> {
         return startTimeUtc >= 0;
     }
 
-    public synchronized boolean cancel() { return cancel(true); }
-    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
-        if (isDone()) return false;
+    public boolean cancel() { return cancel(true); }
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        ExecutionList listeners;
         boolean cancel = true;
-        if (GroovyJavaMethods.truth(result)) { cancel = result.cancel(mayInterruptIfRunning); }
-        cancelled = true;
-        notifyAll();
+        synchronized (this) {
+            if (isDone()) return false;
+            if (GroovyJavaMethods.truth(result)) { cancel = result.cancel(mayInterruptIfRunning); }
+            cancelled = true;
+            // if there is no result yet, nothing else will run the listeners
+            listeners = pendingListeners;
+            pendingListeners = null;
+            notifyAll();
+        }
+        if (listeners != null) listeners.execute();
         return cancel;
     }
 
+    public void addListener(Runnable listener, Executor executor) {
+        Future<T> r;
+        synchronized (this) {
+            r = result;
+            if (r == null && !cancelled) {
+                if (pendingListeners == null) pendingListeners = new ExecutionList();
+                pendingListeners.add(listener, executor);
+                return;
+            }
+        }
+        if (r instanceof ListenableFuture) {
+            ((ListenableFuture<T>) r).addListener(listener, executor);
+        } else if (r == null) {
+            // cancelled before it was submitted
+            executor.execute(listener);
+        } else {
+            // as is the case for ScheduledTask, which ends when it stops repeating rather than with any one future
+            throw new IllegalStateException("Task "+this+" has a result which is not listenable ("+r.getClass().getName()+"); "+
+                    "it must override addListener to say when it ends");
+        }
+    }
+
+    private static Runnable executing(final ExecutionList listeners) {
+        return new Runnable() {
+            public void run() {
+                listeners.execute();
+            }
+        };
+    }
+
     public boolean isCancelled() {
         return cancelled || (result!=null && result.isCancelled());
     }
@@ -405,6 +527,9 @@ public class BasicTask<T> extends BasicTaskStub implements Task<T> {
 		if (t == null) {
 			if (isDone()) {
 				return getStatusString(verbosity);
+			} else if (blockingDetails != null) {
+			    //e.g. a continuation task, waiting for its result without a thread
+			    return (verbosity >= 1) ? blockingDetails : "Waiting";
 			} else {
 			    //should only happen for repeating task which is not active
                 return "Sleeping";
@@ -430,8 +555,9 @@ public class BasicTask<T> extends BasicTaskStub implements Task<T> {
             }
             
 		    rv += ""+toString()+"\n";
-		    if (submittedByTask!=null) {
-		        rv += "Submitted by "+submittedByTask+"\n";
+		    Task<?> submitter = getSubmittedByTask();
+		    if (submitter!=null) {
+		        rv += "Submitted by "+submitter+"\n";
 		    }
 
 		    if (this instanceof CompoundTask) {
@@ -0,0 +1,139 @@
+package brooklyn.util.task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import brooklyn.management.Task;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Runs {@link Task}s in parallel, as {@link ParallelTask}, but with a limit on how many children
+ * are in progress at any one time; for example so that stopping a large cluster does not open
+ * hundreds of ssh sessions, or make hundreds of cloud API calls, at once.
+ * <p>
+ * Options, set before the task is submitted:
+ * <ul>
+ * <li>{@link #maxInFlight(int)}: the maximum number of children running at once (default unbounded);
+ *     another child is started as each one completes
+ * <li>{@link #batchSize(int)}: if set, children are run in batches of this size, the next batch only
+ *     starting once every child in the previous batch has completed (e.g. for a rolling restart)
+ * <li>{@link #failFast(boolean)}: if true, no more children are started after one has failed, and those
+ *     not started are cancelled; otherwise (the default) all children are run
+ * </ul>
+ * In either case the task waits for the children in progress to complete, then fails with the error of
+ * the first failed child (in the order supplied), or returns the children's results in the order supplied.
+ * <p>
+ * Progress is reported as the task's blocking details (see {@link #getBlockingDetails()}),
+ * and by {@link #getNumChildrenCompleted()} etc.
+ */
+public class BoundedParallelTask<T> extends CompoundTask<T> {
+
+    private int maxInFlight = Integer.MAX_VALUE;
+    private int batchSize = Integer.MAX_VALUE;
+    private boolean failFast = false;
+
+    private volatile int numChildrenStarted = 0;
+    private volatile int numChildrenCompleted = 0;
+    private volatile int numChildrenFailed = 0;
+
+    public BoundedParallelTask(Object... tasks) { super(tasks); }
+    public BoundedParallelTask(Collection<? extends Object> tasks) { super(tasks); }
+    public BoundedParallelTask(Iterable<? extends Object> tasks) { super(ImmutableList.copyOf(tasks)); }
+
+    /** sets the maximum number of children to run at once; zero or negative means unbounded */
+    public BoundedParallelTask<T> maxInFlight(int val) {
+        Preconditions.checkState(!isSubmitted(), "cannot change maxInFlight of %s once submitted", this);
+        maxInFlight = (val > 0) ? val : Integer.MAX_VALUE;
+        return this;
+    }
+
+    /** sets the number of children in each batch; zero or negative means a single batch of all children */
+    public BoundedParallelTask<T> batchSize(int val) {
+        Preconditions.checkState(!isSubmitted(), "cannot change batchSize of %s once submitted", this);
+        batchSize = (val > 0) ? val : Integer.MAX_VALUE;
+        return this;
+    }
+
+    /** sets whether to stop starting children once one has failed */
+    public BoundedParallelTask<T> failFast(boolean val) {
+        Preconditions.checkState(!isSubmitted(), "cannot change failFast of %s once submitted", this);
+        failFast = val;
+        return this;
+    }
+
+    public int getMaxInFlight() { return maxInFlight; }
+    public int getBatchSize() { return batchSize; }
+    public boolean isFailFast() { return failFast; }
+
+    public int getNumChildrenStarted() { return numChildrenStarted; }
+    public int getNumChildrenCompleted() { return numChildrenCompleted; }
+    public int getNumChildrenFailed() { return numChildrenFailed; }
+    public int getNumChildrenInProgress() { return numChildrenStarted - numChildrenCompleted; }
+
+    protected List<T> runJobs() throws InterruptedException, ExecutionException {
+        final BlockingQueue<Task<?>> completed = new LinkedBlockingQueue<Task<?>>();
+        int total = children.size();
+        int next = 0;
+        int batchEnd = (int) Math.min(total, (long) batchSize);
+        boolean stopping = false;
+
+        try {
+            updateProgress();
+            while (true) {
+                while (!stopping && next < batchEnd && getNumChildrenInProgress() < maxInFlight) {
+                    final Task<? extends T> child = children.get(next++);
+                    child.addListener(new Runnable() {
+                        public void run() {
+                            completed.add(child);
+                        }}, MoreExecutors.sameThreadExecutor());
+                    submitIfNecessary(child);
+                    numChildrenStarted++;
+                }
+                updateProgress();
+                if (getNumChildrenInProgress() == 0) {
+                    if (stopping || next >= total) break;
+                    // previous batch all done
+                    batchEnd = (int) Math.min(total, (long) batchEnd + batchSize);
+                    continue;
+                }
+
+                Task<?> done = completed.take();
+                numChildrenCompleted++;
+                if (done.isError()) {
+                    numChildrenFailed++;
+                    if (failFast) stopping = true;
+                }
+            }
+        } finally {
+            for (int i = next; i < total; i++) {
+                children.get(i).cancel(true);
+            }
+        }
+
+        // children were started in order, so any failure comes before those cancelled
+        List<T> result = new ArrayList<T>(total);
+        for (Task<? extends T> task : children) {
+            result.add(task.get());
+        }
+        return result;
+    }
+
+    protected void updateProgress() {
+        int total = children.size();
+        StringBuilder details = new StringBuilder("Executing ")
+                .append(total==1 ? "1 child task" : total+" children tasks in parallel");
+        if (maxInFlight < total) details.append(", at most ").append(maxInFlight).append(" at a time");
+        if (batchSize < total) details.append(", in batches of ").append(batchSize);
+        details.append(": ").append(numChildrenCompleted).append(" completed");
+        if (numChildrenFailed > 0) details.append(" (").append(numChildrenFailed).append(" failed)");
+        details.append(", ").append(getNumChildrenInProgress()).append(" in progress");
+        setBlockingDetails(details.toString());
+    }
+}
@@ -0,0 +1,38 @@
+package brooklyn.util.task;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A task whose job starts some work which completes asynchronously (e.g. when a sensor event arrives),
+ * returning a {@link ListenableFuture} for the result, rather than blocking until the work is done.
+ * <p>
+ * When run by a {@link BasicExecutionManager}, the job runs in a pooled thread like any other task,
+ * but the task only ends when the returned future completes; no thread is held in the meantime.
+ * Cancelling the task cancels the future. While waiting, the task reports its blocking details
+ * (see {@link #setBlockingDetails(String)}) as its status.
+ * <p>
+ * Useful where a great many tasks may be waiting at once, such as those from
+ * {@link brooklyn.event.basic.DependentConfiguration#attributeWhenReady(brooklyn.entity.Entity, brooklyn.event.AttributeSensor)}.
+ */
+public class ContinuationTask<T> extends BasicTask<T> {
+
+    /** the future returned by the job, once it has run */
+    volatile ListenableFuture<T> continuation;
+
+    public ContinuationTask(Callable<? extends ListenableFuture<T>> job) { this(Collections.emptyMap(), job); }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ContinuationTask(Map flags, Callable<? extends ListenableFuture<T>> job) {
+        super(flags, (Callable) job);
+    }
+
+    @Override
+    protected void compact() {
+        super.compact();
+        continuation = null;
+    }
+}
@@ -0,0 +1,131 @@
+package brooklyn.util.task;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.management.Task;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Implements {@link ExecutionManagerDiagnosticsMXBean}, reading the {@link BasicExecutionManager}'s registry
+ * of the task running in each thread (see {@link BasicExecutionManager#getCurrentTasksByThread()}).
+ * <p>
+ * Only weakly references the execution manager, so that one which is discarded without being shut down
+ * is not kept alive by the platform MBean server.
+ */
+public class ExecutionManagerDiagnostics implements ExecutionManagerDiagnosticsMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionManagerDiagnostics.class);
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final WeakReference<BasicExecutionManager> executionManager;
+    private final ObjectName objectName;
+
+    protected ExecutionManagerDiagnostics(BasicExecutionManager executionManager, ObjectName objectName) {
+        this.executionManager = new WeakReference<BasicExecutionManager>(executionManager);
+        this.objectName = objectName;
+    }
+
+    /** registers diagnostics for the given execution manager with the platform MBean server; returns null (logging why) if that fails */
+    public static ExecutionManagerDiagnostics register(BasicExecutionManager executionManager, String contextid) {
+        try {
+            ObjectName name = new ObjectName("brooklyn:type=ExecutionManager,name="+ObjectName.quote(contextid)+",id="+nextId.incrementAndGet());
+            ExecutionManagerDiagnostics result = new ExecutionManagerDiagnostics(executionManager, name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(result, name);
+            return result;
+        } catch (Exception e) {
+            log.warn("Unable to register JMX diagnostics for execution manager "+contextid+" (continuing): "+e);
+            return null;
+        }
+    }
+
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        } catch (Exception e) {
+            log.debug("Unable to unregister JMX diagnostics "+objectName+" (continuing): "+e);
+        }
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    private BasicExecutionManager getExecutionManager() {
+        BasicExecutionManager result = executionManager.get();
+        if (result == null) unregister();
+        return result;
+    }
+
+    @Override
+    public long getTotalTasksSubmitted() {
+        BasicExecutionManager em = getExecutionManager();
+        return (em != null) ? em.getTotalTasksSubmitted() : 0;
+    }
+
+    @Override
+    public long getNumIncompleteTasks() {
+        BasicExecutionManager em = getExecutionManager();
+        return (em != null) ? em.getNumIncompleteTasks() : 0;
+    }
+
+    @Override
+    public long getNumActiveTasks() {
+        BasicExecutionManager em = getExecutionManager();
+        return (em != null) ? em.getNumActiveTasks() : 0;
+    }
+
+    @Override
+    public Map<String,String> getCurrentTasksByThread() {
+        BasicExecutionManager em = getExecutionManager();
+        if (em == null) return Collections.emptyMap();
+        Map<String,String> result = Maps.newLinkedHashMap();
+        for (Map.Entry<Thread, Task<?>> entry : em.getCurrentTasksByThread().entrySet()) {
+            result.put(entry.getKey().getName(), describe(entry.getValue()));
+        }
+        return result;
+    }
+
+    @Override
+    public String dumpThreadsWithTasks() {
+        BasicExecutionManager em = getExecutionManager();
+        Map<Long, Task<?>> tasksByThreadId = Maps.newHashMap();
+        if (em != null) {
+            for (Map.Entry<Thread, Task<?>> entry : em.getCurrentTasksByThread().entrySet()) {
+                tasksByThreadId.put(entry.getKey().getId(), entry.getValue());
+            }
+        }
+
+        StringBuilder result = new StringBuilder();
+        for (ThreadInfo info : ManagementFactory.getThreadMXBean().dumpAllThreads(false, false)) {
+            result.append('"').append(info.getThreadName()).append("\" id=").append(info.getThreadId())
+                    .append(' ').append(info.getThreadState());
+            if (info.getLockName() != null) result.append(" on ").append(info.getLockName());
+            Task<?> task = tasksByThreadId.get(info.getThreadId());
+            if (task != null) result.append(" running task ").append(describe(task));
+            result.append('\n');
+            for (StackTraceElement element : info.getStackTrace()) {
+                result.append("\tat ").append(element).append('\n');
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    private static String describe(Task<?> task) {
+        return task.getDisplayName()+" ["+task.getId()+"]";
+    }
+}
@@ -0,0 +1,25 @@
+package brooklyn.util.task;
+
+import java.util.Map;
+
+/**
+ * JMX view of what a {@link BasicExecutionManager} is doing, registered (if enabled by
+ * {@link BasicExecutionManager#JMX_DIAGNOSTICS}) under the object name
+ * <code>brooklyn:type=ExecutionManager,name=&lt;contextid&gt;,id=&lt;n&gt;</code>.
+ * <p>
+ * Gives the task each thread is running, without the cost of renaming threads for every task.
+ */
+public interface ExecutionManagerDiagnosticsMXBean {
+
+    public long getTotalTasksSubmitted();
+
+    public long getNumIncompleteTasks();
+
+    public long getNumActiveTasks();
+
+    /** the task each thread is currently running, as the thread's name mapped to the task's display name and id */
+    public Map<String,String> getCurrentTasksByThread();
+
+    /** stack traces of all threads in the JVM, annotated with the task each is running (if any) */
+    public String dumpThreadsWithTasks();
+}
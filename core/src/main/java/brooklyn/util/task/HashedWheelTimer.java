@@ -0,0 +1,332 @@
+package brooklyn.util.task;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A timer for very many (mostly periodic) timeouts of modest precision, such as polls: a single thread
+ * wakes every tick and fires the timeouts in the current bucket of a "wheel", so scheduling and cancelling
+ * are O(1), rather than O(log n) as in the heap of a {@link java.util.concurrent.ScheduledThreadPoolExecutor}.
+ * Timeouts fire up to a tick late.
+ * <p>
+ * A {@link Timeout} can be scheduled again once it has fired, so a periodic job need allocate nothing
+ * for the timer on each period. Actions run in the timer's thread, so must be quick: typically they submit a task.
+ * <p>
+ * Records the lag of each tick (how late the timer thread woke, plus how long the previous tick took),
+ * which grows if the timer cannot keep up.
+ */
+public class HashedWheelTimer {
+    private static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private static final int INIT = 0, PENDING = 1, EXPIRED = 2, CANCELLED = 3;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Thread worker;
+    private final long startTime = System.nanoTime();
+
+    /** timeouts scheduled since the last tick, to be put in their buckets by the worker */
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+    /** timeouts cancelled since the last tick, to be taken out of their buckets by the worker */
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+    private final AtomicInteger numPendingTimeouts = new AtomicInteger();
+    private volatile long lastTickLagNanos = 0;
+    private final AtomicLong maxTickLagNanos = new AtomicLong();
+    private volatile boolean running = true;
+
+    /** the number of ticks done; only written by the worker */
+    private long tick = 0;
+
+    /**
+     * @param tickDuration granularity of the timer; timeouts fire up to this much late
+     * @param ticksPerWheel number of buckets (rounded up to a power of two); timeouts further ahead than this many ticks
+     *        go round the wheel several times, so the wheel should typically span the common periods
+     */
+    public HashedWheelTimer(ThreadFactory threadFactory, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) throw new IllegalArgumentException("tickDuration must be positive, but was "+tickDuration);
+        tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(Math.max(ticksPerWheel, 2) - 1) << 1;
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+        worker = threadFactory.newThread(new Runnable() {
+            public void run() {
+                runWorker();
+            }});
+        worker.start();
+    }
+
+    /** a new timeout which will run the given action each time it fires */
+    public Timeout newTimeout(Runnable action) {
+        return new Timeout(this, action);
+    }
+
+    /**
+     * Schedules the timeout to fire after the given delay.
+     *
+     * @return false if the timeout has been cancelled (in which case it will not fire)
+     * @throws IllegalStateException if it is already scheduled
+     */
+    public boolean schedule(Timeout timeout, long delay, TimeUnit unit) {
+        if (timeout.timer != this) throw new IllegalArgumentException("Timeout "+timeout+" does not belong to "+this);
+        while (true) {
+            int state = timeout.state.get();
+            if (state == CANCELLED) return false;
+            if (state == PENDING) throw new IllegalStateException("Timeout "+timeout+" is already scheduled");
+            timeout.deadline = System.nanoTime() - startTime + Math.max(unit.toNanos(delay), 0);
+            if (timeout.state.compareAndSet(state, PENDING)) break;
+        }
+        numPendingTimeouts.incrementAndGet();
+        newTimeouts.add(timeout);
+        return true;
+    }
+
+    /** stops the timer; pending timeouts will not fire */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getNumPendingTimeouts() {
+        return numPendingTimeouts.get();
+    }
+
+    public long getLastTickLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastTickLagNanos);
+    }
+
+    public long getMaxTickLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxTickLagNanos.get());
+    }
+
+    private void runWorker() {
+        while (running) {
+            long now = waitForNextTick();
+            if (!running) break;
+            long lag = now - (tick+1) * tickNanos;
+            lastTickLagNanos = lag;
+            while (true) {
+                long max = maxTickLagNanos.get();
+                if (lag <= max || maxTickLagNanos.compareAndSet(max, lag)) break;
+            }
+            try {
+                removeCancelledTimeouts();
+                addNewTimeouts();
+                expireTimeouts(wheel[(int) tick & mask], now);
+            } catch (Throwable t) {
+                LOG.warn("Error in timer "+worker.getName()+" (continuing)", t);
+            }
+            tick++;
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Timer {} stopped; {} timeouts discarded", worker.getName(), numPendingTimeouts.get());
+    }
+
+    /** @return the time (relative to the start of the timer) once the next tick is due */
+    private long waitForNextTick() {
+        long deadline = (tick+1) * tickNanos;
+        while (running) {
+            long now = System.nanoTime() - startTime;
+            long sleepMillis = TimeUnit.NANOSECONDS.toMillis(deadline - now + 999999);
+            if (sleepMillis <= 0) return now;
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                if (!running) return now;
+            }
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private void removeCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+                numPendingTimeouts.decrementAndGet();
+            }
+        }
+    }
+
+    private void addNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.state.get() != PENDING) {
+                // cancelled before it got in to a bucket
+                numPendingTimeouts.decrementAndGet();
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // if the deadline has passed (i.e. this tick is late), put it in the current bucket, to fire now
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) ticks & mask].add(timeout);
+        }
+    }
+
+    private void expireTimeouts(Bucket bucket, long now) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                bucket.remove(timeout);
+                numPendingTimeouts.decrementAndGet();
+                timeout.expire();
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HashedWheelTimer["+worker.getName()+"]";
+    }
+
+    /** linked list of the timeouts in one slot of the wheel; only accessed by the worker */
+    private static class Bucket {
+        Timeout head, tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) timeout.prev.next = timeout.next;
+            if (timeout.next != null) timeout.next.prev = timeout.prev;
+            if (timeout == head) head = timeout.next;
+            if (timeout == tail) tail = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+
+    /**
+     * A timeout which runs an action when it fires, and which can be scheduled again after that. As a {@link ScheduledFuture},
+     * it refers to the most recent scheduling: {@link #get()} waits for that to fire (returning null), and
+     * {@link #cancel(boolean)} stops it firing and prevents it being scheduled again.
+     */
+    public static class Timeout implements ScheduledFuture<Void> {
+        private final HashedWheelTimer timer;
+        private final Runnable action;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        /** when to fire, in nanos relative to the start of the timer */
+        private volatile long deadline;
+
+        // only accessed by the worker
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev, next;
+
+        private Timeout(HashedWheelTimer timer, Runnable action) {
+            this.timer = timer;
+            this.action = action;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) return;
+            synchronized (this) {
+                notifyAll();
+            }
+            try {
+                action.run();
+            } catch (Throwable t) {
+                LOG.warn("Error running timeout "+this+" in "+timer+" (continuing)", t);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            while (true) {
+                int s = state.get();
+                if (s == CANCELLED) return false;
+                if (state.compareAndSet(s, CANCELLED)) {
+                    if (s == PENDING) timer.cancelledTimeouts.add(this);
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            int s = state.get();
+            return s == EXPIRED || s == CANCELLED;
+        }
+
+        @Override
+        public Void get() throws InterruptedException {
+            synchronized (this) {
+                while (!isDone()) {
+                    wait();
+                }
+            }
+            if (isCancelled()) throw new CancellationException();
+            return null;
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            long end = System.currentTimeMillis() + unit.toMillis(timeout);
+            synchronized (this) {
+                while (!isDone()) {
+                    long remaining = end - System.currentTimeMillis();
+                    if (remaining <= 0) throw new TimeoutException();
+                    wait(remaining);
+                }
+            }
+            if (isCancelled()) throw new CancellationException();
+            return null;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - (System.nanoTime() - timer.startTime), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            long diff = getDelay(TimeUnit.NANOSECONDS) - o.getDelay(TimeUnit.NANOSECONDS);
+            return (diff < 0) ? -1 : (diff > 0) ? 1 : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Timeout["+action+"]";
+        }
+    }
+}
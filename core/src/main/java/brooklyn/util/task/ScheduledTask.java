@@ -2,21 +2,25 @@ package brooklyn.util.task;
 
 import static brooklyn.util.GroovyJavaMethods.elvis;
 import static brooklyn.util.GroovyJavaMethods.truth;
+import static com.google.common.base.Preconditions.checkArgument;
 import groovy.time.TimeDuration;
 
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import brooklyn.management.Task;
 import brooklyn.util.JavaGroovyEquivalents;
 import brooklyn.util.MutableMap;
+import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.internal.TimeExtras;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ExecutionList;
 
 public class ScheduledTask extends BasicTask {
 
@@ -37,9 +41,20 @@ public class ScheduledTask extends BasicTask {
 	protected TimeDuration period = null;
 	/** optional, set as flag in constructor; defaults to null meaning no limit */
 	protected Integer maxIterations = null;
+	/** fraction of the period by which each subsequent run may randomly be early or late (so many periodic tasks 
+	 * started together drift apart), set as flag in constructor; defaults to 0, meaning runs are exactly one period apart */
+	protected double jitter = 0;
 	
 	protected int runCount=0;
 	protected Task recentRun, nextRun;
+	/** when the next run is due, for measuring how late it is triggered */
+	protected long nextRunDueUtc = -1;
+	/** set by the execution manager on first submission, and re-used to trigger each run */
+	Runnable trigger;
+	/** the timeout which triggers each run, if the execution manager uses a {@link HashedWheelTimer} */
+	HashedWheelTimer.Timeout timeout;
+	/** listeners to run once the task ends, when cancelled or after its final run; see {@link #ended()} */
+	private final ExecutionList endListeners = new ExecutionList();
 
 	public int getRunCount() { return runCount; }
 	public ScheduledFuture getNextScheduled() { return (ScheduledFuture)result; }
@@ -54,6 +69,8 @@ public class ScheduledTask extends BasicTask {
 		delay = JavaGroovyEquivalents.toTimeDuration(elvis(flags.remove("delay"), 0));
 		period = JavaGroovyEquivalents.toTimeDuration(elvis(flags.remove("period"), null));
 		maxIterations = elvis(flags.remove("maxIterations"), null);
+		Double jitterFlag = TypeCoercions.coerce(flags.remove("jitter"), Double.class);
+		if (jitterFlag!=null) jitter(jitterFlag);
 	}
 	
 	public ScheduledTask delay(long val) {
@@ -71,6 +88,20 @@ public class ScheduledTask extends BasicTask {
         return this;
     }
 
+    public ScheduledTask jitter(double val) {
+        checkArgument(val >= 0 && val <= 1, "jitter must be between 0 and 1, but was %s", val);
+        this.jitter = val;
+        return this;
+    }
+
+	/** the delay before the next run: the period, randomly adjusted by up to {@link #jitter} of it either way */
+	protected TimeDuration getNextDelay() {
+		if (jitter <= 0 || period == null) return period;
+		long periodMillis = period.toMilliseconds();
+		long offset = (long) (periodMillis * jitter * (2*Math.random() - 1));
+		return JavaGroovyEquivalents.toTimeDuration(Math.max(periodMillis + offset, 0));
+	}
+
     public Callable<Task<?>> getTaskFactory() {
         return taskFactory;
     }
@@ -121,6 +152,28 @@ public class ScheduledTask extends BasicTask {
 		while (!isDone()) super.blockUntilEnded();
 	}
 
+	/** a scheduled task ends when it is cancelled or stops repeating, rather than with any one future, so listeners are kept until then */
+	@Override
+	public void addListener(Runnable listener, Executor executor) {
+	    endListeners.add(listener, executor);
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+	    boolean result = super.cancel(mayInterruptIfRunning);
+	    ended();
+	    return result;
+	}
+
+	/** 
+	 * called when the task is cancelled, and by the execution manager once the final run has completed 
+	 * (or once it has failed, as the task is not re-scheduled after an error), to run the listeners; 
+	 * does nothing if they have already been run
+	 */
+	void ended() {
+	    endListeners.execute();
+	}
+
 	/** gets the value of the most recently run task */
 	public Object get() throws InterruptedException, ExecutionException {
 		blockUntilStarted();
@@ -1,16 +1,12 @@
 package brooklyn.util.task;
 
-import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,25 +16,60 @@ import brooklyn.management.Task;
 /**
  * Instances of this class ensures that {@link Task}s it is shown execute with in-order
  * single-threaded semantics.
- *
- * Tasks can be presented through {@link #onSubmit(Map)}, {@link #onStart(Map)}, and
- * {@link #onEnd(Map)} (but not necessarily all in the same thread).  The order is that in which
- * it is submitted.
  * <p>
- * This implementation does so by blocking on a {@link ConcurrentLinkedQueue}, <em>after</em>
- * the task is started in a thread (and {@link Task#isStarted()} returns true), but (of course)
- * <em>before</em> the {@link Task#job} actually gets invoked.
+ * The order is that in which they are submitted. Submissions are added to a lock-free queue (many producers, 
+ * one consumer), and a count of those not yet run is kept; whoever takes the count from zero hands a "drainer" 
+ * to the executor, which runs queued tasks one after another, in the same thread, until there are none left. 
+ * So submitting never blocks, and a busy scheduler does not go back to the executor between each task;
+ * except that after {@link #MAX_BATCH_SIZE} tasks the drainer re-submits itself, so as not to monopolise a pooled thread.
+ * <p>
+ * The {@link Future} returned is a {@link FutureTask} which is also the queue entry, so a submission costs one allocation.
+ * Cancelling it before it runs means it is skipped.
+ * <p>
+ * If the executor rejects the drainer (e.g. as it is shutting down), the tasks queued at that point are failed
+ * with the {@link RejectedExecutionException} rather than left waiting, and a later submission starts afresh.
  */
 public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     private static final Logger LOG = LoggerFactory.getLogger(SingleThreadedScheduler.class);
     
-    private final Queue<QueuedSubmission<?>> order = new ConcurrentLinkedQueue<QueuedSubmission<?>>();
-    private final AtomicBoolean running = new AtomicBoolean(false);
+    /** maximum number of tasks run by the drainer in one hand-off from the executor */
+    public static final int MAX_BATCH_SIZE = 64;
+    
+    private static final Callable<Object> NO_OP = new Callable<Object>() {
+        public Object call() { return null; }
+    };
+    
+    /** 
+     * number of submissions which have not finished running; incremented <em>before</em> a submission is queued,
+     * so when non-zero the drainer can rely on there being (or about to be) something in the queue 
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+    
+    /** 
+     * the last entry taken from the queue (initially a stub); its <code>next</code> is the next to run. 
+     * Only accessed by the drainer, which runs in one thread at a time (hand-offs are ordered by {@link #pending}). 
+     */
+    private QueuedTask<?> head = new QueuedTask<Object>(NO_OP);
+    
+    /** the most recently queued entry; producers atomically swap themselves in, then link the previous to themselves */
+    private final AtomicReference<QueuedTask<?>> tail = new AtomicReference<QueuedTask<?>>(head);
+    
+    private final Runnable drainer = new Runnable() {
+        public void run() {
+            drain();
+        }
+        @Override
+        public String toString() {
+            return "drainer["+SingleThreadedScheduler.this+"]";
+        }
+    };
     
-    private ExecutorService executor;
+    private volatile ExecutorService executor;
 
     private String name;
     
+    private volatile int lastSizeWarn = 0;
+    
     @Override
     public void setName(String name) {
         this.name = name;
@@ -51,137 +82,81 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     
     public void injectExecutor(ExecutorService executor) { this.executor = executor; }
 
-    public synchronized <T> Future<T> submit(Callable<T> c) {
-        if (running.compareAndSet(false, true)) {
-            return executeNow(c);
-        } else {
-            WrappingFuture<T> f = new WrappingFuture<T>();
-            order.add(new QueuedSubmission<T>(c, f));
-            int size = order.size();
-            if (size>0 && (size == 10 || (size<=500 && (size%100)==0) || (size%1000)==0) && size!=lastSizeWarn) {
-                LOG.warn("{} is backing up, {} tasks queued", this, size);
-                lastSizeWarn = size;
+    public <T> Future<T> submit(Callable<T> c) {
+        QueuedTask<T> task = new QueuedTask<T>(c);
+        int ahead = pending.getAndIncrement();
+        QueuedTask<?> prev = tail.getAndSet(task);
+        prev.next = task;
+        if (ahead == 0) {
+            try {
+                executor.execute(drainer);
+            } catch (RejectedExecutionException e) {
+                failQueued(e);
+                throw e;
             }
-            return f;
+        } else {
+            warnIfBackingUp(ahead);
         }
+        return task;
     }
-    int lastSizeWarn = 0;
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
-    private synchronized void onEnd() {
-        boolean done = false;
-        while (!done) {
-            if (order.isEmpty()) {
-                running.set(false);
-                done = true;
-            } else {
-                QueuedSubmission<?> qs = order.remove();
-                if (!qs.f.isCancelled()) {
-                    Future future = executeNow(qs.c);
-                    qs.f.setDelegate(future);
-                    done = true;
-                }
-            }
+    /** @param size number of tasks waiting, as per the old queue size (i.e. including the one being run, but not the new one) */
+    private void warnIfBackingUp(int size) {
+        if ((size == 10 || (size<=500 && (size%100)==0) || (size%1000)==0) && size!=lastSizeWarn) {
+            LOG.warn("{} is backing up, {} tasks queued", this, size);
+            lastSizeWarn = size;
         }
     }
 
-    private synchronized <T> Future<T> executeNow(final Callable<T> c) {
-        return executor.submit(new Callable<T>() {
-            public T call() throws Exception {
-                try {
-                    return c.call();
-                } finally {
-                    onEnd();
-                }
-            }});
-    }
-    
-    
-    private static class QueuedSubmission<T> {
-        final Callable<T> c;
-        final WrappingFuture<T> f;
-        
-        QueuedSubmission(Callable<T> c, WrappingFuture<T> f) {
-            this.c = c;
-            this.f = f;
+    private void drain() {
+        for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+            QueuedTask<?> task = poll();
+            // does nothing if cancelled; any exception is reported through the future
+            task.run();
+            // clear any interrupt from the task being cancelled, as a pool would between tasks
+            Thread.interrupted();
+            if (pending.decrementAndGet() == 0) return;
+        }
+        try {
+            executor.execute(drainer);
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) LOG.debug("{} not continuing, as executor rejected it ({} tasks not run): {}", new Object[] {this, pending.get(), e});
+            failQueued(e);
         }
     }
     
     /**
-     * A future, where the task may not yet have been submitted to the real executor.
-     * It delegates to the real future if present, and otherwise waits for that to appear
+     * Fails everything still queued, for when the executor will not run the drainer. 
+     * Must only be called by whoever would otherwise have handed off the drainer, as it takes the drainer's place 
+     * until {@link #pending} is back to zero; anything submitted meanwhile is failed too, and after that 
+     * the next submission tries the executor again.
      */
-    private static class WrappingFuture<T> implements Future<T> {
-        private volatile Future<T> delegate;
-        private boolean cancelled;
-        
-        void setDelegate(Future<T> delegate) {
-            synchronized (this) {
-                this.delegate = delegate;
-                notifyAll();
-            }
-        }
-        
-        @Override public boolean cancel(boolean mayInterruptIfRunning) {
-            if (delegate != null) {
-                return delegate.cancel(mayInterruptIfRunning);
-            } else {
-                cancelled = true;
-                synchronized (this) {
-                    notifyAll();
-                }
-                return true;
-            }
-        }
-        
-        @Override public boolean isCancelled() {
-            if (delegate != null) {
-                return delegate.isCancelled();
-            } else {
-                return cancelled;
-            }
-        }
-        
-        @Override public boolean isDone() {
-            return (delegate != null) ? delegate.isDone() : cancelled;
+    private void failQueued(RejectedExecutionException e) {
+        do {
+            poll().fail(e);
+        } while (pending.decrementAndGet() != 0);
+    }
+    
+    /** the next task, waiting for it to be linked in if a producer has counted it but not yet queued it */
+    private QueuedTask<?> poll() {
+        QueuedTask<?> next;
+        while ((next = head.next) == null) {
+            Thread.yield();
         }
+        head = next;
+        return next;
+    }
+
+    private static class QueuedTask<T> extends FutureTask<T> {
+        volatile QueuedTask<?> next;
         
-        @Override public T get() throws CancellationException, ExecutionException, InterruptedException {
-            if (cancelled) {
-                throw new CancellationException();
-            } else if (delegate != null) {
-                return delegate.get();
-            } else {
-                synchronized (this) {
-                    while (delegate == null && !cancelled) {
-                        wait();
-                    }
-                }
-                return get();
-            }
+        QueuedTask(Callable<T> c) {
+            super(c);
         }
         
-        @Override public T get(long timeout, TimeUnit unit) throws CancellationException, ExecutionException, InterruptedException, TimeoutException {
-            long endtime = System.currentTimeMillis()+unit.toMillis(timeout);
-            
-            if (cancelled) {
-                throw new CancellationException();
-            } else if (delegate != null) {
-                return delegate.get(timeout, unit);
-            } else if (System.currentTimeMillis() >= endtime) {
-                throw new TimeoutException();
-            } else {
-                synchronized (this) {
-                    while (delegate == null && !cancelled && System.currentTimeMillis() < endtime) {
-                        long remaining = endtime - System.currentTimeMillis();
-                        if (remaining > 0) {
-                            wait(remaining);
-                        }
-                    }
-                }
-                long remaining = endtime - System.currentTimeMillis();
-                return get(remaining, TimeUnit.MILLISECONDS);
-            }
+        /** does nothing if already cancelled */
+        void fail(Throwable t) {
+            setException(t);
         }
     }
 }
@@ -0,0 +1,13 @@
+package brooklyn.util.task;
+
+import brooklyn.management.Task;
+
+/**
+ * Told when a {@link BasicExecutionManager} stops keeping a record of a task, 
+ * whether through {@link BasicExecutionManager#deleteTask(Task)} or {@link BasicExecutionManager#deleteTag(Object)};
+ * so anything indexing completed tasks can drop them too.
+ */
+public interface TaskDeletionListener {
+
+    public void onTaskDeleted(Task<?> task);
+}
@@ -1,8 +1,11 @@
 package brooklyn.util.task;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
@@ -14,8 +17,14 @@ import brooklyn.management.ExecutionContext;
 import brooklyn.management.Task;
 import brooklyn.util.flags.TypeCoercions;
 
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 public class Tasks {
 
@@ -133,6 +142,101 @@ public class Tasks {
         return resolveValue(v, type, exec, contextMessage);
     }
 
+    /**
+     * Returns a task which, once the given task has completed (submitting it in the current execution context if necessary), 
+     * applies the given function to its result. It does not hold a thread while waiting (see {@link ContinuationTask}).
+     */
+    public static <T,V> Task<V> then(final Task<T> task, final Function<? super T,V> function) {
+        return new ContinuationTask<V>(new Callable<ListenableFuture<V>>() {
+            public ListenableFuture<V> call() {
+                submitIfNecessary(task);
+                return Futures.transform(task, function, MoreExecutors.sameThreadExecutor());
+            }});
+    }
+
+    /**
+     * Returns a task which waits for all the given tasks to complete (submitting them in the current execution context 
+     * if necessary), then returns the list of their results in the order given, or fails with the first error in 
+     * that order, as {@link ParallelTask} does. It does not hold a thread while waiting (see {@link ContinuationTask}).
+     */
+    public static <T> Task<List<T>> allOf(Iterable<? extends Task<? extends T>> tasks) {
+        final List<Task<? extends T>> taskList = ImmutableList.copyOf(tasks);
+        return new ContinuationTask<List<T>>(new Callable<ListenableFuture<List<T>>>() {
+            public ListenableFuture<List<T>> call() {
+                for (Task<? extends T> task : taskList) {
+                    submitIfNecessary(task);
+                }
+                final SettableFuture<List<T>> result = SettableFuture.create();
+                Futures.successfulAsList(taskList).addListener(new Runnable() {
+                    public void run() {
+                        List<T> values = Lists.newArrayListWithCapacity(taskList.size());
+                        for (Task<? extends T> task : taskList) {
+                            try {
+                                values.add(task.get());
+                            } catch (ExecutionException e) {
+                                result.setException(e.getCause());
+                                return;
+                            } catch (CancellationException e) {
+                                result.cancel(false);
+                                return;
+                            } catch (InterruptedException e) {
+                                // shouldn't happen, as the task has completed
+                                Thread.currentThread().interrupt();
+                                result.setException(e);
+                                return;
+                            }
+                        }
+                        result.set(values);
+                    }}, MoreExecutors.sameThreadExecutor());
+                return result;
+            }});
+    }
+
+    /**
+     * Returns a task which completes as the first of the given tasks to complete does (submitting them in the current 
+     * execution context if necessary): with its result, or failing with its error. The other tasks are left to run.
+     * It does not hold a thread while waiting (see {@link ContinuationTask}).
+     */
+    public static <T> Task<T> anyOf(Iterable<? extends Task<? extends T>> tasks) {
+        final List<Task<? extends T>> taskList = ImmutableList.copyOf(tasks);
+        checkArgument(!taskList.isEmpty(), "anyOf requires at least one task");
+        return new ContinuationTask<T>(new Callable<ListenableFuture<T>>() {
+            public ListenableFuture<T> call() {
+                final SettableFuture<T> result = SettableFuture.create();
+                for (final Task<? extends T> task : taskList) {
+                    submitIfNecessary(task);
+                    task.addListener(new Runnable() {
+                        public void run() {
+                            setFromCompletedFuture(result, task);
+                        }}, MoreExecutors.sameThreadExecutor());
+                }
+                return result;
+            }});
+    }
+
+    private static void submitIfNecessary(Task<?> task) {
+        if (!task.isSubmitted()) {
+            ExecutionContext exec = BasicExecutionContext.getCurrentExecutionContext();
+            if (exec == null) throw new IllegalStateException("Cannot submit "+task+" when not running in an execution context");
+            exec.submit(task);
+        }
+    }
+
+    /** sets the given future to the outcome of a future which has completed: its value, its error, or cancellation */
+    static <T> void setFromCompletedFuture(SettableFuture<T> target, Future<? extends T> completed) {
+        try {
+            target.set(completed.get());
+        } catch (ExecutionException e) {
+            target.setException(e.getCause());
+        } catch (CancellationException e) {
+            target.cancel(false);
+        } catch (InterruptedException e) {
+            // shouldn't happen, as the future has completed
+            Thread.currentThread().interrupt();
+            target.setException(e);
+        }
+    }
+
     /** sets extra status details on the current task, if possible (otherwise does nothing).
      * the extra status is presented in Task.getStatusDetails(true)
      */
@@ -1,6 +1,8 @@
 package brooklyn.entity.basic;
 
 import static org.testng.Assert.assertEquals
+import static org.testng.Assert.assertFalse
+import static org.testng.Assert.assertTrue
 
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
@@ -134,4 +136,68 @@ public class AttributeMapTest {
         assertEquals(map.getValue(childSensor), "childValue")
         assertEquals(map.getValue(sensor), "parentValue")
     }
+
+    @Test
+    public void testNullValueDistinctFromRemoved() {
+        BasicAttributeSensor<String> sensor = [ String, "a", "" ]
+        
+        map.update(sensor, null)
+        assertEquals(map.getValue(sensor), null)
+        assertEquals(map.asMap(), [a:null])
+        
+        map.remove(sensor)
+        assertEquals(map.getValue(sensor), null)
+        assertEquals(map.asMap(), [:])
+        
+        map.update(sensor, "val")
+        assertEquals(map.getValue(sensor), "val")
+        assertEquals(map.asMap(), [a:"val"])
+    }
+    
+    @Test
+    public void testUpdateReturnsOldValue() {
+        BasicAttributeSensor<String> sensor = [ String, "a", "" ]
+        
+        assertEquals(map.update(sensor, "1"), null)
+        assertEquals(map.update(sensor, "2"), "1")
+        assertEquals(map.update(sensor, null), "2")
+        assertEquals(map.update(sensor, "3"), null)
+    }
+    
+    @Test
+    public void testManySensorsRetrievedAfterGrowing() {
+        List<BasicAttributeSensor<Integer>> sensors = []
+        for (int i = 0; i < 200; i++) {
+            BasicAttributeSensor<Integer> sensor = [ Integer, "attributeMapTest.manySensors"+i, "" ]
+            sensors.add(sensor)
+            map.update(sensor, i)
+        }
+        for (int i = 0; i < 200; i++) {
+            assertEquals(map.getValue(sensors.get(i)), i)
+        }
+        assertEquals(map.asMap().size(), 200)
+        assertEquals(map.asMap().get("attributeMapTest.manySensors7"), 7)
+    }
+    
+    @Test
+    public void testUpdateIfChangedOnlyChangesDifferentValues() {
+        BasicAttributeSensor<String> sensor = [ String, "a", "" ]
+        assertEquals(map.getLastUpdated(sensor), -1L)
+        
+        // never set is different from null
+        assertTrue(map.updateWithoutPublishingIfChanged(sensor, null))
+        assertFalse(map.updateWithoutPublishingIfChanged(sensor, null))
+        assertTrue(map.updateWithoutPublishingIfChanged(sensor, "1"))
+        assertFalse(map.updateWithoutPublishingIfChanged(sensor, new String("1")))
+        assertEquals(map.getValue(sensor), "1")
+        
+        long lastUpdated = map.getLastUpdated(sensor)
+        assertTrue(lastUpdated > 0)
+        Thread.sleep(10)
+        assertFalse(map.updateWithoutPublishingIfChanged(sensor, "1"))
+        assertTrue(map.getLastUpdated(sensor) > lastUpdated)
+        
+        map.remove(sensor)
+        assertTrue(map.updateWithoutPublishingIfChanged(sensor, "1"))
+    }
 }
@@ -1,5 +1,6 @@
 package brooklyn.entity.basic;
 
+import java.util.concurrent.CountDownLatch
 import java.util.concurrent.TimeUnit
 
 import org.testng.Assert
@@ -10,6 +11,7 @@ import brooklyn.event.basic.DependentConfiguration;
 import brooklyn.management.ExecutionContext
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.Task
+import brooklyn.test.TestUtils
 import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.BasicExecutionManager
 import brooklyn.util.task.BasicTask
@@ -35,6 +37,20 @@ public class DependentConfigurationTest {
         Assert.assertEquals(t.get(1, TimeUnit.SECONDS), 3);
     }
 
+    @Test
+    public void testTransformDoesNotHoldThreadWhileWaiting() {
+        CountDownLatch latch = new CountDownLatch(1)
+        Task t = DependentConfiguration.transform(new BasicTask({ latch.await(); 2 }), { it+1 });
+        ec.submit(t);
+        TestUtils.executeUntilSucceeds(timeout:10*1000) {
+            Assert.assertTrue(t.isBegun())
+            Assert.assertNull(t.getThread())
+        }
+        Assert.assertFalse(t.isDone())
+        latch.countDown()
+        Assert.assertEquals(t.get(1, TimeUnit.SECONDS), 3);
+    }
+
     @Test
     public void testFormatString() {
         Task t = DependentConfiguration.formatString("%s://%s:%d/",
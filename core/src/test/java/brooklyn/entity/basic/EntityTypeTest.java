@@ -5,6 +5,7 @@ import static brooklyn.entity.basic.AbstractEntity.SENSOR_REMOVED;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 import org.testng.annotations.BeforeMethod;
@@ -19,6 +20,7 @@ import brooklyn.event.basic.BasicSensorEvent;
 import brooklyn.test.TestUtils;
 import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
+import brooklyn.test.entity.TestEntityImpl;
 
 import com.google.common.base.Predicates;
 import com.google.common.base.Suppliers;
@@ -156,4 +158,21 @@ public class EntityTypeTest {
         assertTrue(entity.getEntityType().hasSensor("entity.sensor.added"));
         assertFalse(entity.getEntityType().hasSensor("does.not.exist"));
     }
+
+    @Test
+    public void testInstancesShareClassMetadataUntilSensorsChanged() throws Exception {
+        AbstractEntity entity2 = new TestEntityImpl(app);
+        AbstractEntity entity3 = new TestEntityImpl(app);
+        EntityDynamicType type2 = entity2.getMutableEntityType();
+        EntityDynamicType type3 = entity3.getMutableEntityType();
+        
+        assertSame(type2.getEffectors(), type3.getEffectors());
+        assertSame(type2.getConfigKeys(), type3.getConfigKeys());
+        assertSame(entity2.getEntityType(), entity3.getEntityType());
+        
+        type2.addSensor(TEST_SENSOR);
+        assertTrue(entity2.getEntityType().hasSensor(TEST_SENSOR.getName()));
+        assertFalse(entity3.getEntityType().hasSensor(TEST_SENSOR.getName()));
+        assertFalse(EntityTypes.getDefinedSensors(TestEntityImpl.class).containsKey(TEST_SENSOR.getName()));
+    }
 }
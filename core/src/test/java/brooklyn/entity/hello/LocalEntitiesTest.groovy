@@ -17,6 +17,7 @@ import brooklyn.event.SensorEvent
 import brooklyn.event.SensorEventListener
 import brooklyn.location.basic.SimulatedLocation;
 import brooklyn.management.Task
+import brooklyn.test.TestUtils
 import brooklyn.test.entity.TestApplication
 import brooklyn.test.entity.TestApplicationImpl
 import brooklyn.util.task.ParallelTask
@@ -223,6 +224,30 @@ public class LocalEntitiesTest {
         assertEquals(son.getConfig(HelloEntity.MY_NAME), "Danny")
     }
     @Test
+    public void testAttributeWhenReadyWaitsWithoutThread() {
+        TestApplication app = new TestApplicationImpl();
+        HelloEntity dad = new HelloEntity(app)
+        HelloEntity son = new HelloEntity(dad)
+        Entities.startManagement(app);
+
+        List<Task> tasks = []
+        for (int i=0; i<100; i++) {
+            tasks << son.getExecutionContext().submit(attributeWhenReady(dad, HelloEntity.FAVOURITE_NAME))
+        }
+        TestUtils.executeUntilSucceeds(timeout:10*1000) {
+            for (Task t in tasks) {
+                assertTrue(t.isBegun())
+                assertFalse(t.isDone())
+                assertNull(t.getThread())
+            }
+        }
+        
+        dad.setAttribute(HelloEntity.FAVOURITE_NAME, "Dan");
+        for (Task t in tasks) {
+            assertEquals(t.get(10, TimeUnit.SECONDS), "Dan")
+        }
+    }
+    @Test
     public void testConfigSetFromAttributeWhenReadyNullTransformations() {
         TestApplication app = new TestApplicationImpl();
         app.setConfig(HelloEntity.MY_NAME, "Bob")
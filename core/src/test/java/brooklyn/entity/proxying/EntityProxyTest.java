@@ -12,10 +12,14 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import brooklyn.entity.Application;
+import brooklyn.entity.Effector;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.AbstractEntity;
 import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Description;
 import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.MethodEffector;
+import brooklyn.entity.basic.NamedParameter;
 import brooklyn.entity.basic.StartableApplication;
 import brooklyn.management.EntityManager;
 import brooklyn.management.ManagementContext;
@@ -75,6 +79,37 @@ public class EntityProxyTest {
         assertTrue(task.getDescription().contains("identityEffector"));
     }
     
+    @Test
+    public void testRepeatedCallsDispatchToOwnEntity() {
+        TestEntity entity2 = app.createAndManageChild(TestEntity.Spec.newInstance());
+        for (int i = 0; i < 3; i++) {
+            entity.setSequenceValue(i);
+            entity2.setSequenceValue(i+10);
+            assertEquals(entity.getSequenceValue(), i);
+            assertEquals(entity2.getSequenceValue(), i+10);
+            assertEquals(entity2.identityEffector("abc"+i), "abc"+i);
+        }
+        
+        Set<Task<?>> tasks = managementContext.getExecutionManager().getTasksWithAllTags(
+                ImmutableList.of(AbstractManagementContext.EFFECTOR_TAG, entity2));
+        assertEquals(tasks.size(), 3, "tasks="+tasks);
+    }
+    
+    @Test
+    public void testOverloadOfEffectorIsNotInvokedAsEffector() {
+        OverloadedEffectorEntity entity2 = app.createAndManageChild(BasicEntitySpec.newInstance(OverloadedEffectorEntity.class)
+                .impl(OverloadedEffectorEntityImpl.class));
+        
+        assertEquals(entity2.greet("world"), "hello world");
+        assertEquals(managementContext.getExecutionManager().getTasksWithAllTags(
+                ImmutableList.of(AbstractManagementContext.EFFECTOR_TAG, entity2)).size(), 0);
+        
+        assertEquals(entity2.greet("world", "goodbye"), "goodbye world");
+        Set<Task<?>> tasks = managementContext.getExecutionManager().getTasksWithAllTags(
+                ImmutableList.of(AbstractManagementContext.EFFECTOR_TAG, entity2));
+        assertEquals(tasks.size(), 1, "tasks="+tasks);
+    }
+    
     @Test
     public void testEntityManagerQueriesGiveProxies() {
         EntityManager entityManager = managementContext.getEntityManager();
@@ -153,6 +188,26 @@ public class EntityProxyTest {
         }
     }
 
+    public static interface OverloadedEffectorEntity extends Entity {
+        public static final Effector<String> GREET = new MethodEffector<String>(OverloadedEffectorEntity.class, "greet");
+        
+        @Description("returns the greeting for the name")
+        public String greet(@NamedParameter("name") String name, @NamedParameter("greeting") String greeting);
+        
+        /** not an effector, though it shares its name */
+        public String greet(String name);
+    }
+    
+    public static class OverloadedEffectorEntityImpl extends AbstractEntity implements OverloadedEffectorEntity {
+        public String greet(String name, String greeting) {
+            return greeting+" "+name;
+        }
+        
+        public String greet(String name) {
+            return "hello "+name;
+        }
+    }
+    
     private void assertIsProxy(Entity e) {
         assertFalse(e instanceof AbstractEntity, "e="+e+";e.class="+(e != null ? e.getClass() : null));
         assertTrue(e instanceof EntityProxy, "e="+e+";e.class="+(e != null ? e.getClass() : null));
@@ -0,0 +1,78 @@
+package brooklyn.event.feed;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.proxying.BasicEntitySpec;
+import brooklyn.event.feed.Poller.PollPhase;
+import brooklyn.test.TestUtils;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.MutableMap;
+
+public class PollerTest {
+
+    private TestApplication app;
+    private EntityLocal entity;
+    private Poller<Integer> poller;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        app = ApplicationBuilder.builder(TestApplication.class).manage();
+        entity = app.createAndManageChild(BasicEntitySpec.newInstance(TestEntity.class));
+        poller = new Poller<Integer>(entity);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (poller != null && poller.isRunning()) poller.stop();
+        if (app != null) Entities.destroyAll(app);
+    }
+
+    @Test
+    public void testInitialDelayForEachPhase() throws Exception {
+        long period = 1000;
+        assertEquals(poller.getInitialDelay(PollPhase.NONE, 0, period), 0);
+        for (int i = 0; i < 10; i++) {
+            long hashDelay = poller.getInitialDelay(PollPhase.ENTITY_ID_HASH, i, period);
+            assertTrue(hashDelay >= 0 && hashDelay < period, "delay="+hashDelay);
+            assertEquals(poller.getInitialDelay(PollPhase.ENTITY_ID_HASH, i, period), hashDelay);
+
+            long randomDelay = poller.getInitialDelay(PollPhase.RANDOM, i, period);
+            assertTrue(randomDelay >= 0 && randomDelay < period, "delay="+randomDelay);
+        }
+    }
+
+    @Test
+    public void testPollsWithPhaseAndJitter() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        poller.setPhase(PollPhase.ENTITY_ID_HASH);
+        poller.setJitter(0.5);
+        poller.scheduleAtFixedRate(
+                new Callable<Integer>() {
+                    public Integer call() {
+                        return count.incrementAndGet();
+                    }},
+                new PollHandler<Integer>() {
+                    public void onSuccess(Integer val) {}
+                    public void onError(Exception error) {}
+                },
+                10);
+        poller.start();
+
+        TestUtils.executeUntilSucceeds(MutableMap.of(), new Runnable() {
+            public void run() {
+                assertTrue(count.get() > 3, "count="+count.get());
+            }});
+    }
+}
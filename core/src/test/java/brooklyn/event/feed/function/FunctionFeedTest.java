@@ -16,6 +16,7 @@ import org.testng.annotations.Test;
 
 import brooklyn.entity.basic.ApplicationBuilder;
 import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.entity.proxying.BasicEntitySpec;
 import brooklyn.event.SensorEvent;
@@ -140,6 +141,32 @@ public class FunctionFeedTest {
             }});
     }
     
+    @Test
+    public void testOnlyIfChangedPublishesOnlyChangedValues() throws Exception {
+        final List<Integer> ints = new CopyOnWriteArrayList<Integer>();
+        entity.subscribe(entity, SENSOR_INT, new SensorEventListener<Integer>() {
+                @Override public void onEvent(SensorEvent<Integer> event) {
+                    ints.add(event.getValue());
+                }});
+        
+        feed = FunctionFeed.builder()
+                .entity(entity)
+                .poll(new FunctionPollConfig<Integer, Integer>(SENSOR_INT)
+                        .period(1)
+                        .callable(Callables.returning(123))
+                        .onlyIfChanged(true))
+                .build();
+
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_INT, 123);
+        final long firstUpdated = ((EntityInternal)entity).getAttributeLastUpdated(SENSOR_INT);
+        TestUtils.executeUntilSucceeds(MutableMap.of(), new Runnable() {
+            public void run() {
+                // polls have carried on setting the attribute, without publishing
+                assertTrue(((EntityInternal)entity).getAttributeLastUpdated(SENSOR_INT) > firstUpdated);
+                assertEquals(ints, ImmutableList.of(123));
+            }});
+    }
+    
     private static class IncrementingCallable implements Callable<Integer> {
         private final AtomicInteger next = new AtomicInteger(0);
         
@@ -0,0 +1,111 @@
+package brooklyn.management.internal;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.management.Task;
+import brooklyn.test.TestUtils;
+import brooklyn.util.MutableMap;
+import brooklyn.util.task.BasicExecutionManager;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * Tests which completed tasks {@link BrooklynGarbageCollector} keeps: per tag, by age, and as tasks are deleted by others.
+ */
+public class BrooklynGarbageCollectorTest {
+
+    private static final int TIMEOUT_MS = 10*1000;
+    private static final int MAX_TASKS_PER_TAG = 2;
+
+    private BasicExecutionManager em;
+    private BrooklynGarbageCollector gc;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("test");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (gc != null) gc.shutdownNow();
+        if (em != null) em.shutdownNow();
+    }
+
+    private void newGarbageCollector(long period, long maxTaskAge) {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BrooklynGarbageCollector.GC_PERIOD, period);
+        props.put(BrooklynGarbageCollector.MAX_TASKS_PER_TAG, MAX_TASKS_PER_TAG);
+        props.put(BrooklynGarbageCollector.MAX_TASK_AGE, maxTaskAge);
+        gc = new BrooklynGarbageCollector(props, em);
+    }
+
+    /** runs a no-op task with the given tags, returning once it has completed */
+    private Task<?> runTask(Object... tags) throws Exception {
+        Task<?> task = em.submit(MutableMap.of("tags", ImmutableList.copyOf(tags)), new Runnable() {
+            public void run() {
+            }});
+        task.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        return task;
+    }
+
+    @Test
+    public void testTransientTasksDeletedOnCompletion() throws Exception {
+        newGarbageCollector(60*1000L, 0L);
+        runTask("a");
+        assertEquals(em.getTasksWithTag("a"), ImmutableSet.of());
+    }
+
+    @Test
+    public void testOldestTasksDeletedPerTag() throws Exception {
+        newGarbageCollector(10L, 0L);
+        List<Task<?>> tasksA = Lists.newArrayList();
+        List<Task<?>> tasksB = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            tasksA.add(runTask("a", AbstractManagementContext.NON_TRANSIENT_TASK_TAG));
+        }
+        tasksB.add(runTask("b", AbstractManagementContext.EFFECTOR_TAG));
+
+        final Set<Task<?>> expectedA = ImmutableSet.copyOf(tasksA.subList(5-MAX_TASKS_PER_TAG, 5));
+        final Set<Task<?>> expectedB = ImmutableSet.copyOf(tasksB);
+        TestUtils.executeUntilSucceeds(MutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            public void run() {
+                assertEquals(em.getTasksWithTag("a"), expectedA);
+                assertEquals(em.getTasksWithTag("b"), expectedB);
+            }});
+    }
+
+    @Test
+    public void testTasksDeletedWhenTooOld() throws Exception {
+        newGarbageCollector(10L, 50L);
+        runTask("a", AbstractManagementContext.EFFECTOR_TAG);
+        TestUtils.executeUntilSucceeds(MutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            public void run() {
+                assertEquals(em.getTasksWithTag("a"), ImmutableSet.of());
+                assertEquals(em.getTasksWithTag(AbstractManagementContext.EFFECTOR_TAG), ImmutableSet.of());
+            }});
+    }
+
+    @Test
+    public void testTaskDeletedElsewhereNoLongerCountsTowardsTagLimit() throws Exception {
+        newGarbageCollector(10L, 0L);
+        Task<?> t1 = runTask("a", AbstractManagementContext.NON_TRANSIENT_TASK_TAG);
+        Task<?> t2 = runTask("a", AbstractManagementContext.NON_TRANSIENT_TASK_TAG);
+        em.deleteTask(t1);
+        Task<?> t3 = runTask("a", AbstractManagementContext.NON_TRANSIENT_TASK_TAG);
+        
+        // if t1 were still indexed, "a" would be over the limit and t2 deleted
+        Thread.sleep(100);
+        assertEquals(em.getTasksWithTag("a"), ImmutableSet.of(t2, t3));
+    }
+}
@@ -1,9 +1,13 @@
 package brooklyn.management.internal;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -12,6 +16,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.config.BrooklynProperties;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.ApplicationBuilder;
 import brooklyn.entity.basic.BasicGroup;
@@ -20,10 +25,14 @@ import brooklyn.entity.basic.Entities;
 import brooklyn.entity.proxying.BasicEntitySpec;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicSensorEvent;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.SubscriptionManager;
+import brooklyn.test.TestUtils;
 import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
+import brooklyn.util.MutableMap;
+import brooklyn.util.task.BasicExecutionManager;
 
 /**
  * testing the {@link SubscriptionManager} and associated classes.
@@ -98,6 +107,43 @@ public class LocalSubscriptionManagerTest {
         }
     }
     
+    @Test
+    public void testSubscribeToChildrenDeliversOnlyFromChildrenAndUnsubscribeRemovesIndexEntry() throws Exception {
+        LocalSubscriptionManager subscriptionManager = (LocalSubscriptionManager) app.getManagementContext().getSubscriptionManager();
+        TestEntity parent = app.createAndManageChild(BasicEntitySpec.newInstance(TestEntity.class));
+        
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        SubscriptionHandle handle = app.subscribeToChildren(parent, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                latch.countDown();
+            }});
+        assertTrue(isInParentIndex(subscriptionManager, handle));
+        
+        // child added after subscribing is still matched, as children are looked up from the publishing entity
+        TestEntity child = parent.createAndManageChild(BasicEntitySpec.newInstance(TestEntity.class));
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        child.setAttribute(TestEntity.SEQUENCE, 2);
+        
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for Event on child listener; got "+values);
+        }
+        // events to a subscriber are delivered in order, so the non-child's would have arrived first
+        assertEquals(values, Arrays.asList(2));
+        
+        app.unsubscribe(parent, handle);
+        assertFalse(isInParentIndex(subscriptionManager, handle));
+    }
+    
+    @SuppressWarnings("rawtypes")
+    private boolean isInParentIndex(LocalSubscriptionManager subscriptionManager, SubscriptionHandle handle) {
+        for (Set<Subscription> subscriptions : subscriptionManager.subscriptionsByParentToken.values()) {
+            if (subscriptions.contains(handle)) return true;
+        }
+        return false;
+    }
+    
     @Test
     public void testSubscribeToMemberAttributeChange() throws Exception {
         BasicGroup group = app.createAndManageChild(BasicEntitySpec.newInstance(BasicGroup.class));
@@ -124,6 +170,318 @@ public class LocalSubscriptionManagerTest {
         assertEquals(events.get(0).getSource().getId(), member.getId());
     }
     
+    @Test
+    public void testSubscribeToMembersOnlyDeliversEventsFromCurrentMembers() throws Exception {
+        BasicGroup group = app.createAndManageChild(BasicEntitySpec.newInstance(BasicGroup.class));
+        TestEntity member = app.createAndManageChild(BasicEntitySpec.newInstance(TestEntity.class));
+        TestEntity member2 = app.createAndManageChild(BasicEntitySpec.newInstance(TestEntity.class));
+        TestEntity nonMember = app.createAndManageChild(BasicEntitySpec.newInstance(TestEntity.class));
+        group.addMember(member);
+        group.addMember(member2);
+
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(2);
+        app.subscribeToMembers(group, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                latch.countDown();
+            }});
+        nonMember.setAttribute(TestEntity.SEQUENCE, 1);
+        member.setAttribute(TestEntity.SEQUENCE, 2);
+        group.removeMember(member);
+        member.setAttribute(TestEntity.SEQUENCE, 3);
+        member2.setAttribute(TestEntity.SEQUENCE, 4);
+
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for Events on group member listener; got "+values);
+        }
+        // events to a subscriber are delivered in order, so nothing else can still be in flight
+        assertEquals(values, Arrays.asList(2, 4));
+    }
+    
+    @Test
+    public void testSubscriptionChangesAfterPublishAreHonoured() throws Exception {
+        final List<Object> values = new CopyOnWriteArrayList<Object>();
+        SensorEventListener<Object> listener = new SensorEventListener<Object>() {
+            @Override public void onEvent(SensorEvent<Object> event) {
+                values.add(event.getValue());
+            }};
+        
+        // publish with no subscribers, so an empty set of subscriptions is resolved for this entity+sensor
+        entity.setSequenceValue(1);
+        
+        SubscriptionHandle handle = app.subscribe(null, TestEntity.SEQUENCE, listener);
+        entity.setSequenceValue(2);
+        app.unsubscribe(null, handle);
+        entity.setSequenceValue(3);
+        
+        SubscriptionManager subscriptionManager = app.getManagementContext().getSubscriptionManager();
+        assertEquals(subscriptionManager.getSubscriptionsForEntitySensor(entity, TestEntity.SEQUENCE).size(), 0);
+        
+        app.subscribe(entity, TestEntity.SEQUENCE, listener);
+        assertEquals(subscriptionManager.getSubscriptionsForEntitySensor(entity, TestEntity.SEQUENCE).size(), 1);
+        entity.setSequenceValue(4);
+        
+        long endTime = System.currentTimeMillis() + TIMEOUT_MS;
+        while (values.size() < 2 && System.currentTimeMillis() < endTime) {
+            Thread.sleep(10);
+        }
+        assertEquals(values, Arrays.<Object>asList(2, 4));
+    }
+    
+    @Test
+    public void testBatchedDeliveryPreservesOrderPerSubscriber() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(LocalSubscriptionManager.BATCH_DELIVERY, true);
+        BasicExecutionManager em = new BasicExecutionManager("test-batched");
+        LocalSubscriptionManager subscriptionManager = new LocalSubscriptionManager(em, props);
+        try {
+            final int numEvents = 1000;
+            final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+            final CountDownLatch latch = new CountDownLatch(numEvents);
+            subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "batched"), entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                @Override public void onEvent(SensorEvent<Integer> event) {
+                    values.add(event.getValue());
+                    latch.countDown();
+                }});
+            
+            for (int i = 0; i < numEvents; i++) {
+                subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, i));
+            }
+            if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                fail("Timeout waiting for batched events; received "+values.size());
+            }
+            for (int i = 0; i < numEvents; i++) {
+                assertEquals(values.get(i), (Integer)i);
+            }
+            assertEquals(subscriptionManager.getTotalEventsDelivered(), numEvents);
+        } finally {
+            em.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testCoalescingSubscriptionDeliversOnlyLatestQueuedValue() throws Exception {
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch firstEventReceived = new CountDownLatch(1);
+        final CountDownLatch releaseListener = new CountDownLatch(1);
+        final CountDownLatch lastEventReceived = new CountDownLatch(1);
+        SubscriptionManager subscriptionManager = app.getManagementContext().getSubscriptionManager();
+        subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "coalescing", "coalesce", true), entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                firstEventReceived.countDown();
+                try {
+                    releaseListener.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (event.getValue() == 99) lastEventReceived.countDown();
+            }});
+        
+        entity.setAttribute(TestEntity.SEQUENCE, 0);
+        assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        
+        // listener is now blocked, so these should all be collapsed into the last one
+        for (int i = 1; i < 100; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+        releaseListener.countDown();
+        
+        if (!lastEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for latest event; received "+values);
+        }
+        assertEquals(values, Arrays.asList(0, 99));
+    }
+    
+    @Test
+    public void testBoundedQueueDropsNewestEventsWhenFull() throws Exception {
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch firstEventReceived = new CountDownLatch(1);
+        final CountDownLatch releaseListener = new CountDownLatch(1);
+        final CountDownLatch allQueuedReceived = new CountDownLatch(6);
+        LocalSubscriptionManager subscriptionManager = (LocalSubscriptionManager) app.getManagementContext().getSubscriptionManager();
+        long droppedBefore = subscriptionManager.getTotalEventsDropped();
+        
+        subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "bounded", "maxQueuedEvents", 5, "queueOverflowPolicy", "DROP_NEWEST"), 
+                entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                firstEventReceived.countDown();
+                try {
+                    releaseListener.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                allQueuedReceived.countDown();
+            }});
+        
+        entity.setAttribute(TestEntity.SEQUENCE, 0);
+        assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        
+        // listener is now blocked; only the first 5 of these fit in its queue
+        for (int i = 1; i <= 20; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+        assertEquals(subscriptionManager.getTotalEventsDropped() - droppedBefore, 15);
+        assertTrue(subscriptionManager.getQueuedEventsHighWaterMark() >= 5);
+        releaseListener.countDown();
+        
+        if (!allQueuedReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for queued events; received "+values);
+        }
+        assertEquals(values, Arrays.asList(0, 1, 2, 3, 4, 5));
+    }
+    
+    @Test
+    public void testBlockingQueueDropsEventAfterTimeout() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(LocalSubscriptionManager.QUEUE_BLOCK_TIMEOUT_MILLIS, 100L);
+        BasicExecutionManager em = new BasicExecutionManager("test-blocking");
+        LocalSubscriptionManager subscriptionManager = new LocalSubscriptionManager(em, props);
+        final CountDownLatch firstEventReceived = new CountDownLatch(1);
+        final CountDownLatch releaseListener = new CountDownLatch(1);
+        try {
+            subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "blocking", "maxQueuedEvents", 1, "queueOverflowPolicy", "BLOCK"), 
+                    entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                @Override public void onEvent(SensorEvent<Integer> event) {
+                    firstEventReceived.countDown();
+                    try {
+                        releaseListener.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }});
+            
+            subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, 0));
+            assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            
+            // listener is now blocked; the first fills the queue, the second waits for room then gives up
+            subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, 1));
+            subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, 2));
+            assertEquals(subscriptionManager.getTotalEventsDropped(), 1);
+        } finally {
+            releaseListener.countDown();
+            em.shutdownNow();
+        }
+    }
+    
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testBlockingQueueDoesNotBlockSubscribersOwnTask() throws Exception {
+        BasicExecutionManager em = new BasicExecutionManager("test-blocking-self");
+        final LocalSubscriptionManager subscriptionManager = new LocalSubscriptionManager(em);
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        try {
+            Subscription s = (Subscription) subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "blocking-self", "maxQueuedEvents", 1, "queueOverflowPolicy", "BLOCK"), 
+                    entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                @Override public void onEvent(SensorEvent<Integer> event) {
+                    values.add(event.getValue());
+                }});
+            
+            // the subscriber's drain is queued behind this task, so waiting for room would only time out
+            em.submit(MutableMap.of("tag", s.subscriberExecutionManagerTag), new Runnable() {
+                public void run() {
+                    for (int i = 0; i < 3; i++) {
+                        subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, i));
+                    }
+                }}).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            
+            TestUtils.executeUntilSucceeds(MutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+                public void run() {
+                    assertEquals(values, Arrays.asList(0, 1, 2));
+                }});
+            assertEquals(subscriptionManager.getTotalEventsDropped(), 0);
+        } finally {
+            em.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testSubscriberWithQueueDeliversEventsOfAllItsSubscriptionsInOrder() throws Exception {
+        BasicExecutionManager em = new BasicExecutionManager("test-mixed");
+        LocalSubscriptionManager subscriptionManager = new LocalSubscriptionManager(em);
+        final List<Object> values = new CopyOnWriteArrayList<Object>();
+        final CountDownLatch firstEventReceived = new CountDownLatch(1);
+        final CountDownLatch releaseListener = new CountDownLatch(1);
+        final CountDownLatch allReceived = new CountDownLatch(7);
+        SensorEventListener<Object> listener = new SensorEventListener<Object>() {
+            @Override public void onEvent(SensorEvent<Object> event) {
+                values.add(event.getValue());
+                firstEventReceived.countDown();
+                try {
+                    releaseListener.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                allReceived.countDown();
+            }};
+        try {
+            subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "mixed"), entity, TestEntity.SEQUENCE, listener);
+            subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, 0));
+            assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, 1));
+            
+            // the listener is blocked; this gives the subscriber a queue, which must not overtake the event above
+            subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "mixed", "maxQueuedEvents", 100), entity, TestEntity.NAME, listener);
+            subscriptionManager.publish(new BasicSensorEvent<String>(TestEntity.NAME, entity, "a"));
+            subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, 2));
+            subscriptionManager.publish(new BasicSensorEvent<String>(TestEntity.NAME, entity, "b"));
+            subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, 3));
+            subscriptionManager.publish(new BasicSensorEvent<String>(TestEntity.NAME, entity, "c"));
+            releaseListener.countDown();
+            
+            if (!allReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                fail("Timeout waiting for events; received "+values);
+            }
+            assertEquals(values, Arrays.<Object>asList(0, 1, "a", 2, "b", 3, "c"));
+        } finally {
+            releaseListener.countDown();
+            em.shutdownNow();
+        }
+    }
+    
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testQueueIsReusedBySubscriberWhileItsDrainIsPending() throws Exception {
+        BasicExecutionManager em = new BasicExecutionManager("test-resubscribe");
+        final LocalSubscriptionManager subscriptionManager = new LocalSubscriptionManager(em);
+        final CountDownLatch firstEventReceived = new CountDownLatch(1);
+        final CountDownLatch releaseListener = new CountDownLatch(1);
+        SensorEventListener<Integer> listener = new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                firstEventReceived.countDown();
+                try {
+                    releaseListener.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }};
+        try {
+            Subscription first = (Subscription) subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "resubscribing", "coalesce", true), 
+                    entity, TestEntity.SEQUENCE, listener);
+            subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, 0));
+            assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            
+            // the drain is still running, so the queue must be kept, and used by a new subscription
+            subscriptionManager.unsubscribe(first);
+            Subscription second = (Subscription) subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "resubscribing", "coalesce", true), 
+                    entity, TestEntity.SEQUENCE, listener);
+            assertTrue(second.mailbox == first.mailbox);
+            
+            // once unused and drained, the queue is forgotten
+            subscriptionManager.unsubscribe(second);
+            releaseListener.countDown();
+            TestUtils.executeUntilSucceeds(MutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+                public void run() {
+                    assertTrue(subscriptionManager.getSubscriberQueueStats().isEmpty());
+                }});
+        } finally {
+            releaseListener.countDown();
+            em.shutdownNow();
+        }
+    }
+    
     // Regression test for ConcurrentModificationException in issue #327
     @Test(groups="Integration")
     public void testConcurrentSubscribingAndPublishing() throws Exception {
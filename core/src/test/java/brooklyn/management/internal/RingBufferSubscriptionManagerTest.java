@@ -0,0 +1,200 @@
+package brooklyn.management.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.BasicEntitySpec;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.management.SubscriptionManager;
+import brooklyn.test.TestUtils;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.MutableMap;
+
+public class RingBufferSubscriptionManagerTest {
+
+    private static final int TIMEOUT_MS = 5000;
+    private static final int RING_SIZE = 4;
+
+    private LocalManagementContext managementContext;
+    private TestApplication app;
+    private TestEntity entity;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setup() {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(LocalManagementContext.SUBSCRIPTION_MANAGER_CLASS, RingBufferSubscriptionManager.class.getName());
+        props.put(RingBufferSubscriptionManager.NUM_CONSUMER_THREADS, 2);
+        props.put(RingBufferSubscriptionManager.RING_SIZE, RING_SIZE);
+        managementContext = new LocalManagementContext(props);
+        app = ApplicationBuilder.builder(TestApplication.class).manage(managementContext);
+        entity = app.createAndManageChild(BasicEntitySpec.newInstance(TestEntity.class));
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (app != null) Entities.destroyAll(app);
+    }
+
+    @Test
+    public void testManagerIsSelectedByProperties() throws Exception {
+        RingBufferSubscriptionManager subscriptionManager = (RingBufferSubscriptionManager) managementContext.getSubscriptionManager();
+        assertEquals(subscriptionManager.getNumShards(), 2);
+    }
+
+    @Test
+    public void testDeliversInOrderToEachSubscriberWhenRingWrapsAround() throws Exception {
+        int numSubscribers = 5;
+        int numEvents = RING_SIZE * 100;
+        final CountDownLatch latch = new CountDownLatch(numSubscribers * numEvents);
+        List<List<Integer>> valuesBySubscriber = new ArrayList<List<Integer>>();
+        for (int i = 0; i < numSubscribers; i++) {
+            final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+            valuesBySubscriber.add(values);
+            managementContext.getSubscriptionManager().subscribe(MutableMap.<String,Object>of("subscriber", "subscriber"+i),
+                    entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                @Override public void onEvent(SensorEvent<Integer> event) {
+                    values.add(event.getValue());
+                    latch.countDown();
+                }});
+        }
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < numEvents; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+            expected.add(i);
+        }
+
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for events; got "+valuesBySubscriber);
+        }
+        for (List<Integer> values : valuesBySubscriber) {
+            assertEquals(values, expected);
+        }
+    }
+
+    @Test
+    public void testListenerPublishingMoreThanRingSizeDoesNotDeadlock() throws Exception {
+        final int numEvents = RING_SIZE * 5;
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(numEvents+1);
+        app.subscribe(entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                if (event.getValue() == 0) {
+                    // published from the delivery thread, to its own (small) ring
+                    for (int i = 1; i <= numEvents; i++) {
+                        entity.setAttribute(TestEntity.SEQUENCE, i);
+                    }
+                }
+                latch.countDown();
+            }});
+        entity.setAttribute(TestEntity.SEQUENCE, 0);
+
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for events; got "+values);
+        }
+        for (int i = 0; i <= numEvents; i++) {
+            assertEquals(values.get(i), (Integer)i);
+        }
+    }
+
+    @Test
+    public void testListenerExceptionDoesNotStopDelivery() throws Exception {
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(2);
+        app.subscribe(entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                latch.countDown();
+                if (event.getValue() == 1) throw new RuntimeException("simulated failure in listener");
+            }});
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 2);
+
+        assertTrue(latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS), "values="+values);
+        assertEquals(values.get(1), (Integer)2);
+    }
+
+    @Test
+    public void testListenerErrorDeliveringOverflowDoesNotLeaveDeliveriesPending() throws Exception {
+        final int numEvents = RING_SIZE * 5;
+        final CountDownLatch latch = new CountDownLatch(numEvents+1);
+        app.subscribe(entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                latch.countDown();
+                if (event.getValue() == 0) {
+                    // these overflow the ring, as they are published from the delivery thread
+                    for (int i = 1; i <= numEvents; i++) {
+                        entity.setAttribute(TestEntity.SEQUENCE, i);
+                    }
+                } else if (event.getValue() == numEvents) {
+                    throw new Error("simulated error in listener");
+                }
+            }});
+        entity.setAttribute(TestEntity.SEQUENCE, 0);
+        assertTrue(latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        final RingBufferSubscriptionManager subscriptionManager = (RingBufferSubscriptionManager) managementContext.getSubscriptionManager();
+        TestUtils.executeUntilSucceeds(MutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            public void run() {
+                assertEquals(subscriptionManager.getNumPendingDeliveries(), 0);
+            }});
+    }
+
+    @Test
+    public void testSubscriberWithQueueDeliversEventsOfAllItsSubscriptionsInOrder() throws Exception {
+        SubscriptionManager subscriptionManager = managementContext.getSubscriptionManager();
+        final List<Object> values = new CopyOnWriteArrayList<Object>();
+        final CountDownLatch firstEventReceived = new CountDownLatch(1);
+        final CountDownLatch releaseListener = new CountDownLatch(1);
+        final CountDownLatch allReceived = new CountDownLatch(5);
+        SensorEventListener<Object> listener = new SensorEventListener<Object>() {
+            @Override public void onEvent(SensorEvent<Object> event) {
+                values.add(event.getValue());
+                firstEventReceived.countDown();
+                try {
+                    releaseListener.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                allReceived.countDown();
+            }};
+        try {
+            subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "mixed"), entity, TestEntity.SEQUENCE, listener);
+            entity.setAttribute(TestEntity.SEQUENCE, 0);
+            assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            entity.setAttribute(TestEntity.SEQUENCE, 1);
+
+            // the delivery thread is blocked; this gives the subscriber a queue, which must not overtake the event above
+            subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "mixed", "maxQueuedEvents", 100), entity, TestEntity.NAME, listener);
+            entity.setAttribute(TestEntity.NAME, "a");
+            entity.setAttribute(TestEntity.SEQUENCE, 2);
+            entity.setAttribute(TestEntity.NAME, "b");
+            releaseListener.countDown();
+
+            if (!allReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                fail("Timeout waiting for events; got "+values);
+            }
+            assertEquals(values, Arrays.<Object>asList(0, 1, "a", 2, "b"));
+        } finally {
+            releaseListener.countDown();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package brooklyn.management.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.Task;
+import brooklyn.management.internal.TaskLatencyRecorder.TaskCategory;
+import brooklyn.test.TestUtils;
+import brooklyn.util.MutableMap;
+import brooklyn.util.task.BasicExecutionManager;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests that {@link TaskLatencyRecorder} puts each task in the right {@link TaskCategory}, and records how long it ran.
+ */
+public class TaskLatencyRecorderTest {
+
+    private static final int TIMEOUT_MS = 10*1000;
+
+    private BasicExecutionManager em;
+    private TaskLatencyRecorder recorder;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("test");
+        recorder = new TaskLatencyRecorder(em);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+
+    private Task<?> runSleepingTask(final long sleepMillis, Object... tags) throws Exception {
+        Task<?> task = em.submit(MutableMap.of("tags", ImmutableList.copyOf(tags)), new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }});
+        task.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        return task;
+    }
+
+    @Test
+    public void testRecordsByCategory() throws Exception {
+        runSleepingTask(10, "a", AbstractManagementContext.EFFECTOR_TAG);
+        runSleepingTask(0, "subscription-delivery-string[a]");
+        runSleepingTask(0, "a");
+
+        TestUtils.executeUntilSucceeds(MutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            public void run() {
+                assertEquals(recorder.getRunTimes(TaskCategory.EFFECTOR).getCount(), 1);
+                assertEquals(recorder.getQueuedTimes(TaskCategory.SUBSCRIPTION_DELIVERY).getCount(), 1);
+                assertEquals(recorder.getRunTimes(TaskCategory.OTHER).getCount(), 1);
+                assertEquals(recorder.getRunTimes(TaskCategory.POLL).getCount(), 0);
+            }});
+        // ran for at least its 10ms sleep
+        assertTrue(recorder.getRunTimes(TaskCategory.EFFECTOR).getMaxMicros() >= 10*1000);
+    }
+}
@@ -0,0 +1,92 @@
+package brooklyn.qa.performance;
+
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.management.Task;
+import brooklyn.util.MutableMap;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.task.BasicTask;
+import brooklyn.util.task.ScheduledTask;
+
+/**
+ * Compares how promptly many periodic {@link ScheduledTask}s (as for feeds polling every entity) are run,
+ * when triggered by the default scheduled executor and by the {@link brooklyn.util.task.HashedWheelTimer};
+ * reporting the lag metrics of the {@link BasicExecutionManager} for each.
+ */
+public class ScheduledTaskTimerComparisonPerformanceTest extends AbstractPerformanceTest {
+
+    private static final int NUM_SCHEDULED_TASKS = 20000;
+    private static final int PERIOD_MS = 1000;
+    private static final int MEASUREMENT_PERIOD_MS = 10*1000;
+
+    private BasicExecutionManager executionManager;
+    private final List<ScheduledTask> scheduledTasks = new ArrayList<ScheduledTask>();
+
+    @AfterMethod(alwaysRun=true)
+    @Override
+    public void tearDown() {
+        super.tearDown();
+        for (ScheduledTask t : scheduledTasks) {
+            t.cancel(true);
+        }
+        scheduledTasks.clear();
+        if (executionManager != null) executionManager.shutdownNow();
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testScheduledExecutor() throws Exception {
+        executionManager = new BasicExecutionManager("perftest");
+        runPeriodicTasks("scheduledExecutor");
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testHashedWheelTimer() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BasicExecutionManager.USE_HASHED_WHEEL_TIMER, true);
+        executionManager = new BasicExecutionManager("perftest", props);
+        runPeriodicTasks("hashedWheelTimer");
+    }
+
+    private void runPeriodicTasks(String prefix) throws Exception {
+        final AtomicLong runCount = new AtomicLong();
+        final Runnable job = new Runnable() {
+            public void run() {
+                runCount.incrementAndGet();
+            }};
+        Callable<Task<?>> taskFactory = new Callable<Task<?>>() {
+            public Task<?> call() {
+                return new BasicTask<Void>(job);
+            }};
+        for (int i = 0; i < NUM_SCHEDULED_TASKS; i++) {
+            // spread the first runs over one period, as they would be for entities started at different times
+            ScheduledTask t = new ScheduledTask(MutableMap.of("delay", (long) i*PERIOD_MS/NUM_SCHEDULED_TASKS, "period", PERIOD_MS), taskFactory);
+            scheduledTasks.add(t);
+            executionManager.submit(t);
+        }
+
+        // warm up for a few periods, then measure from there
+        Thread.sleep(5*PERIOD_MS);
+        long runsBefore = executionManager.getNumScheduledTaskRuns();
+        long lagBefore = executionManager.getTotalScheduledTaskLagMillis();
+        Thread.sleep(MEASUREMENT_PERIOD_MS);
+        long runs = executionManager.getNumScheduledTaskRuns() - runsBefore;
+        long totalLag = executionManager.getTotalScheduledTaskLagMillis() - lagBefore;
+
+        double expectedRuns = (double) NUM_SCHEDULED_TASKS * MEASUREMENT_PERIOD_MS / PERIOD_MS;
+        String msg = prefix+": "+runs+" runs of "+NUM_SCHEDULED_TASKS+" tasks in "+MEASUREMENT_PERIOD_MS+"ms "+
+                "(expected "+(long)expectedRuns+"); meanLag="+((double)totalLag/runs)+"ms; "+
+                "maxLag="+executionManager.getMaxScheduledTaskLagMillis()+"ms (including warm-up)";
+        LOG.info(msg);
+        System.out.println("\n"+msg+"\n");
+        assertTrue(runs >= expectedRuns*PERFORMANCE_EXPECTATION, msg);
+    }
+}
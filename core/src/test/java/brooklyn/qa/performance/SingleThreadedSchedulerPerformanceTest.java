@@ -0,0 +1,145 @@
+package brooklyn.qa.performance;
+
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.util.task.SingleThreadedScheduler;
+import brooklyn.util.task.TaskScheduler;
+
+/**
+ * Compares the lock-free {@link SingleThreadedScheduler} with the {@link SynchronizedSingleThreadedScheduler}
+ * it replaced, submitting directly to the schedulers so that task overheads are excluded.
+ */
+public class SingleThreadedSchedulerPerformanceTest extends AbstractPerformanceTest {
+
+    private static final long LONG_TIMEOUT_MS = 30*1000;
+    private static final int NUM_ITERATIONS = 200000;
+    private static final int NUM_SUBMITTING_THREADS = 8;
+
+    private ExecutorService executor;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() {
+        super.setUp();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    @Override
+    public void tearDown() {
+        super.tearDown();
+        if (executor != null) executor.shutdownNow();
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testLockFreeScheduler() {
+        runSubmitAndExecute("lockFreeScheduler", new SingleThreadedScheduler());
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testSynchronizedScheduler() {
+        runSubmitAndExecute("synchronizedScheduler", new SynchronizedSingleThreadedScheduler());
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testLockFreeSchedulerFromManyThreads() throws Exception {
+        runSubmitAndExecuteFromManyThreads("lockFreeSchedulerFromManyThreads", new SingleThreadedScheduler());
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testSynchronizedSchedulerFromManyThreads() throws Exception {
+        runSubmitAndExecuteFromManyThreads("synchronizedSchedulerFromManyThreads", new SynchronizedSingleThreadedScheduler());
+    }
+
+    private void runSubmitAndExecute(String prefix, final TaskScheduler scheduler) {
+        scheduler.injectExecutor(executor);
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+        // measure() does a tenth of the iterations again as warm-up
+        final int expectedCount = NUM_ITERATIONS + NUM_ITERATIONS/10;
+        final AtomicInteger counter = new AtomicInteger();
+        final CountDownLatch completionLatch = new CountDownLatch(1);
+        final Callable<Void> work = newCountingCallable(counter, expectedCount, completionLatch);
+
+        measureAndAssert(prefix, NUM_ITERATIONS, minRatePerSec,
+                new Runnable() {
+                    public void run() {
+                        scheduler.submit(work);
+                    }},
+                new Runnable() {
+                    public void run() {
+                        awaitCompletion(completionLatch, counter, expectedCount);
+                    }});
+    }
+
+    private void runSubmitAndExecuteFromManyThreads(String prefix, final TaskScheduler scheduler) throws Exception {
+        scheduler.injectExecutor(executor);
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+        final int numPerThread = NUM_ITERATIONS / NUM_SUBMITTING_THREADS;
+        final int expectedCount = numPerThread * NUM_SUBMITTING_THREADS;
+        final AtomicInteger counter = new AtomicInteger();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch completionLatch = new CountDownLatch(1);
+        final Callable<Void> work = newCountingCallable(counter, expectedCount, completionLatch);
+
+        Thread[] threads = new Thread[NUM_SUBMITTING_THREADS];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int j = 0; j < numPerThread; j++) {
+                        scheduler.submit(work);
+                    }
+                }}, "scheduler-submitter-"+i);
+            threads[i].start();
+        }
+
+        long durationMillis = measure(new Runnable() {
+            public void run() {
+                startLatch.countDown();
+                awaitCompletion(completionLatch, counter, expectedCount);
+            }});
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        double numPerSec = ((double)expectedCount/Math.max(durationMillis, 1) * 1000);
+        String msg = prefix+": "+NUM_SUBMITTING_THREADS+" threads, "+durationMillis+"ms for "+expectedCount+
+                " tasks: numPerSec="+numPerSec+"; minAcceptableRate="+minRatePerSec;
+        LOG.info(msg);
+        System.out.println("\n"+msg+"\n");
+        assertTrue(numPerSec >= minRatePerSec, msg);
+    }
+
+    private static Callable<Void> newCountingCallable(final AtomicInteger counter, final int expectedCount, final CountDownLatch completionLatch) {
+        return new Callable<Void>() {
+            public Void call() {
+                if (counter.incrementAndGet() >= expectedCount) completionLatch.countDown();
+                return null;
+            }};
+    }
+
+    private static void awaitCompletion(CountDownLatch completionLatch, AtomicInteger counter, int expectedCount) {
+        try {
+            completionLatch.await(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        assertTrue(completionLatch.getCount() <= 0, "executed "+counter.get()+" of "+expectedCount);
+    }
+}
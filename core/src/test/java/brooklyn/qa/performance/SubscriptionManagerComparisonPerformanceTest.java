@@ -0,0 +1,115 @@
+package brooklyn.qa.performance;
+
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicSensorEvent;
+import brooklyn.management.internal.LocalSubscriptionManager;
+import brooklyn.management.internal.RingBufferSubscriptionManager;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.MutableMap;
+import brooklyn.util.task.BasicExecutionManager;
+
+/**
+ * Compares the rate at which events are published and delivered by the default {@link LocalSubscriptionManager}
+ * (a task per delivery) and by the {@link RingBufferSubscriptionManager}, publishing directly to the manager
+ * so that entity overheads are excluded.
+ */
+public class SubscriptionManagerComparisonPerformanceTest extends AbstractPerformanceTest {
+
+    private static final long LONG_TIMEOUT_MS = 30*1000;
+    private static final int NUM_ITERATIONS = 100000;
+
+    private BasicExecutionManager executionManager;
+    private LocalSubscriptionManager subscriptionManager;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() {
+        super.setUp();
+        executionManager = new BasicExecutionManager("perftest");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    @Override
+    public void tearDown() {
+        super.tearDown();
+        if (subscriptionManager != null) subscriptionManager.shutdownNow();
+        if (executionManager != null) executionManager.shutdownNow();
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testLocalSubscriptionManagerOneSubscriber() {
+        subscriptionManager = new LocalSubscriptionManager(executionManager);
+        runPublishAndDeliver("localSubscriptionManagerOneSubscriber", 1);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testRingBufferSubscriptionManagerOneSubscriber() {
+        subscriptionManager = new RingBufferSubscriptionManager(executionManager);
+        runPublishAndDeliver("ringBufferSubscriptionManagerOneSubscriber", 1);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testLocalSubscriptionManagerManySubscribers() {
+        subscriptionManager = new LocalSubscriptionManager(executionManager);
+        runPublishAndDeliver("localSubscriptionManagerManySubscribers", 10);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testRingBufferSubscriptionManagerManySubscribers() {
+        subscriptionManager = new RingBufferSubscriptionManager(executionManager);
+        runPublishAndDeliver("ringBufferSubscriptionManagerManySubscribers", 10);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testLocalSubscriptionManagerWithBatchDeliveryManySubscribers() {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(LocalSubscriptionManager.BATCH_DELIVERY, true);
+        subscriptionManager = new LocalSubscriptionManager(executionManager, props);
+        runPublishAndDeliver("localSubscriptionManagerWithBatchDeliveryManySubscribers", 10);
+    }
+
+    private void runPublishAndDeliver(String prefix, int numSubscribers) {
+        int numIterations = NUM_ITERATIONS;
+        double minRatePerSec = 100 * PERFORMANCE_EXPECTATION;
+        // measure() does a tenth of the iterations again as warm-up
+        final int expectedCount = (numIterations + numIterations/10) * numSubscribers;
+        final AtomicInteger listenerCount = new AtomicInteger();
+        final CountDownLatch completionLatch = new CountDownLatch(1);
+
+        for (int i = 0; i < numSubscribers; i++) {
+            subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", i), app, TestEntity.SEQUENCE,
+                    new SensorEventListener<Integer>() {
+                        @Override public void onEvent(SensorEvent<Integer> event) {
+                            if (listenerCount.incrementAndGet() >= expectedCount) completionLatch.countDown();
+                        }});
+        }
+
+        final AtomicInteger iter = new AtomicInteger();
+        measureAndAssert(prefix, numIterations, minRatePerSec,
+                new Runnable() {
+                    public void run() {
+                        subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, app, iter.getAndIncrement()));
+                    }},
+                new Runnable() {
+                    public void run() {
+                        try {
+                            completionLatch.await(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        assertTrue(completionLatch.getCount() <= 0, "delivered "+listenerCount.get()+" of "+expectedCount);
+                    }});
+    }
+}
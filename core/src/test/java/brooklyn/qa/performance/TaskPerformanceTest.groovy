@@ -11,6 +11,7 @@ import java.util.concurrent.atomic.AtomicInteger
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import org.testng.annotations.BeforeMethod
+import org.testng.annotations.DataProvider
 import org.testng.annotations.Test
 
 import brooklyn.util.task.BasicExecutionManager
@@ -70,6 +71,23 @@ public class TaskPerformanceTest extends AbstractPerformanceTest {
                 { completionLatch.await(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS); assertTrue(completionLatch.getCount() <= 0) })
     }
     
+    @Test(groups=["Integration", "Acceptance"])
+    public void testExecuteSystemTask() {
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+        
+        final AtomicInteger counter = new AtomicInteger();
+        final CountDownLatch completionLatch = new CountDownLatch(1)
+
+        Runnable work = new Runnable() { public void run() {
+                int val = counter.incrementAndGet()
+                if (val >= numIterations) completionLatch.countDown()
+            }}
+
+        measureAndAssert("executeSystemTask", numIterations, minRatePerSec,
+                { executionManager.submitSystemTask("system", work) },
+                { completionLatch.await(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS); assertTrue(completionLatch.getCount() <= 0) })
+    }
+    
     @Test(groups=["Integration", "Acceptance"])
     public void testExecuteWithSingleThreadedScheduler() {
         double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
@@ -109,6 +127,60 @@ public class TaskPerformanceTest extends AbstractPerformanceTest {
         if (exceptions.size() > 0) throw exceptions.get(0)
     }
     
+    @DataProvider(name="submittingThreads")
+    public Object[][] submittingThreads() {
+        return [ [1], [8], [32] ] as Object[][]
+    }
+    
+    /**
+     * Submits tasks from several threads at once, all with a shared tag (as for an entity) and a tag per thread
+     * (as for a subscriber), to check that submitting and completing tasks scales with the number of threads.
+     */
+    @Test(groups=["Integration", "Acceptance"], dataProvider="submittingThreads")
+    public void testExecuteRunnableWithSharedTagFromManyThreads(int numThreads) {
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+        int numPerThread = numIterations / numThreads
+        int total = numPerThread * numThreads
+        
+        final AtomicInteger counter = new AtomicInteger();
+        final CountDownLatch completionLatch = new CountDownLatch(1)
+        final CountDownLatch startLatch = new CountDownLatch(1)
+        final List<Exception> exceptions = new CopyOnWriteArrayList()
+        
+        Runnable work = new Runnable() { public void run() {
+                int val = counter.incrementAndGet()
+                if (val >= total) completionLatch.countDown()
+            }}
+        
+        List<Thread> threads = (0..<numThreads).collect { i ->
+            new Thread({
+                try {
+                    startLatch.await()
+                    for (int j = 0; j < numPerThread; j++) {
+                        executionManager.submit([tags:["shared", "submitter-"+i]], work)
+                    }
+                } catch (Exception e) {
+                    exceptions.add(e)
+                }
+            }, "task-submitter-"+i)
+        }
+        threads*.start()
+        
+        long durationMillis = measure {
+            startLatch.countDown()
+            threads*.join()
+            completionLatch.await(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+        }
+        if (exceptions.size() > 0) throw exceptions.get(0)
+        assertTrue(completionLatch.getCount() <= 0, "completed "+counter.get()+" of "+total)
+        
+        double numPerSec = ((double)total/Math.max(durationMillis, 1) * 1000)
+        String msg = "executeRunnableWithSharedTagFromManyThreads: "+numThreads+" threads, "+durationMillis+"ms for "+total+
+                " tasks: numPerSec="+numPerSec+"; minAcceptableRate="+minRatePerSec
+        LOG.info(msg)
+        assertTrue(numPerSec >= minRatePerSec, msg)
+    }
+    
     public static void main(String[] args) {
         def t = new TaskPerformanceTest();
         t.setUp();
@@ -9,8 +9,10 @@ import org.codehaus.groovy.runtime.GStringImpl;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import brooklyn.entity.basic.Lifecycle;
 import brooklyn.util.flags.TypeCoercions;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
@@ -110,6 +112,34 @@ public class TypeCoercionsTest {
         assertEquals(TypeCoercions.coerce("1.0", Number.class), (Number) Double.valueOf(1.0));
     }
 
+    @Test
+    public void testRepeatedCoercionsOfSameTypes() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(TypeCoercions.coerce(new WithAs(""+i), Integer.class), (Integer)i);
+            assertEquals(TypeCoercions.coerce(""+i, WithFrom.class).value, i);
+            assertEquals(TypeCoercions.coerce("on_fire", Lifecycle.class), Lifecycle.ON_FIRE);
+        }
+    }
+
+    @Test
+    public void testNoAdapterUntilRegistered() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                TypeCoercions.coerce(new WithAs("1"), WithFrom.class);
+                Assert.fail();
+            } catch (ClassCastException e) {
+                Assert.assertTrue(e.getMessage().contains("no adapter known"), "msg="+e.getMessage());
+            }
+        }
+        
+        TypeCoercions.registerAdapter(WithAs.class, WithFrom.class, new Function<WithAs,WithFrom>() {
+            @Override public WithFrom apply(WithAs input) {
+                return WithFrom.fromString(input.value);
+            }
+        });
+        assertEquals(TypeCoercions.coerce(new WithAs("1"), WithFrom.class).value, 1);
+    }
+
     public static class WithAs {
         String value;
         public WithAs(Object x) { value = ""+x; }
@@ -0,0 +1,62 @@
+package brooklyn.util.math;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(h.getCount(), 0);
+        assertEquals(h.getMaxMicros(), 0);
+        assertEquals(h.getPercentileMicros(50), 0);
+        assertEquals(h.getMeanMicros(), 0d);
+    }
+
+    @Test
+    public void testSmallValuesExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 4; i++) h.recordMicros(i);
+        assertEquals(h.getCount(), 4);
+        assertEquals(h.getMaxMicros(), 4);
+        assertEquals(h.getMeanMicros(), 2.5d);
+        assertEquals(h.getPercentileMicros(50), 2);
+        assertEquals(h.getPercentileMicros(100), 4);
+    }
+
+    @Test
+    public void testPercentilesWithinPrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) h.recordMicros(i);
+        assertWithinPrecision(h.getPercentileMicros(50), 50000);
+        assertWithinPrecision(h.getPercentileMicros(99), 99000);
+        assertEquals(h.getMaxMicros(), 100000);
+        assertEquals(h.getPercentileMicros(100), 100000);
+    }
+
+    @Test
+    public void testRecordNanosAndNegative() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.recordNanos(5000);
+        h.recordNanos(-1);
+        assertEquals(h.getCount(), 2);
+        assertEquals(h.getMaxMicros(), 5);
+        assertEquals(h.getPercentileMicros(50), 0);
+    }
+
+    @Test
+    public void testBucketsContiguous() {
+        for (long v : new long[] {0, 1, 7, 8, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE}) {
+            int i = LatencyHistogram.bucketIndex(v);
+            assertTrue(LatencyHistogram.bucketUpperBound(i) >= v, "v="+v);
+            if (i > 0) assertTrue(LatencyHistogram.bucketUpperBound(i-1) < v, "v="+v);
+        }
+    }
+
+    private void assertWithinPrecision(long actual, long expected) {
+        assertTrue(Math.abs(actual - expected) <= expected / LatencyHistogram.SUB_BUCKETS, "actual="+actual+"; expected="+expected);
+    }
+}
@@ -0,0 +1,73 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.Task;
+import brooklyn.util.MutableMap;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Tests that {@link BasicTask}s release what they no longer need once they have ended.
+ */
+public class BasicTaskCompactionTest {
+
+    private static final int TIMEOUT_MS = 10*1000;
+
+    private BasicExecutionManager em;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("test");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+
+    @Test
+    public void testCompletedTaskReleasesJobButKeepsResult() throws Exception {
+        BasicTask<String> t = new BasicTask<String>(MutableMap.of("tag", "A"), new Callable<String>() {
+            public String call() {
+                return "done";
+            }});
+        em.submit(t);
+        assertEquals(t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), "done");
+
+        assertNull(t.job);
+        assertEquals(t.get(), "done");
+        assertEquals(t.getTags(), ImmutableSet.of("A"));
+    }
+
+    @Test
+    public void testCompletedTaskOnlyWeaklyReferencesSubmitter() throws Exception {
+        final AtomicReference<Task<?>> child = new AtomicReference<Task<?>>();
+        Task<?> parent = em.submit(new Runnable() {
+            public void run() {
+                child.set(em.submit(MutableMap.of("tag", "child"), new Runnable() {
+                    public void run() {
+                    }}));
+            }});
+        parent.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        child.get().get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        BasicTask<?> childTask = (BasicTask<?>) child.get();
+        String parentId = parent.getId();
+
+        // only the weak reference (and the id) are kept, so the submitter can be collected once deleted;
+        // checked directly rather than by forcing a GC, which the JVM is free to ignore
+        assertNull(childTask.submittedByTask);
+        assertSame(childTask.getSubmittedByTask(), parent);
+        assertEquals(childTask.getSubmittedByTaskId(), parentId);
+    }
+}
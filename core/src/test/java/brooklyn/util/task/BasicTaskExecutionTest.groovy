@@ -188,6 +188,20 @@ public class BasicTaskExecutionTest {
         assertEquals(em.getTasksWithAllTags(["B"]), [t]);
     }
 
+    @Test
+    public void testSystemTaskRunsWithTagAndScheduler() {
+        em.setTaskSchedulerForTag("A", SingleThreadedScheduler.class)
+        List<Task> currentTasks = Collections.synchronizedList([])
+        Task t = em.submitSystemTask("A", new Runnable() { public void run() { currentTasks.add(Tasks.current()) } })
+        t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+
+        assertEquals(currentTasks, [t])
+        assertEquals(t.getTags(), ["A"] as Set)
+        assertEquals(t.getDisplayName(), "A")
+        assertEquals(em.getTasksWithTag("A"), [t])
+        assertTrue(t.getEndTimeUtc() >= t.getStartTimeUtc())
+    }
+
     // ENGR-1796: if nothing matched first tag, then returned whatever matched second tag!
     @Test
     public void testRetrievingTasksWithAllTagsWhenFirstNotMatched() {
@@ -0,0 +1,135 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.Task;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class BoundedParallelTaskTest {
+
+    private static final int TIMEOUT_MS = 10*1000;
+
+    private BasicExecutionManager em;
+    private BasicExecutionContext ec;
+    private AtomicInteger inFlight;
+    private AtomicInteger maxInFlight;
+    private List<String> events;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("test");
+        ec = new BasicExecutionContext(em);
+        inFlight = new AtomicInteger();
+        maxInFlight = new AtomicInteger();
+        events = new CopyOnWriteArrayList<String>();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+
+    private Task<Integer> newChild(final int i, final boolean fail) {
+        return new BasicTask<Integer>(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                int now = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    if (now > maxInFlight.get()) maxInFlight.set(now);
+                }
+                events.add("start"+i);
+                try {
+                    Thread.sleep(20);
+                    if (fail) throw new IllegalStateException("simulated failure "+i);
+                    return i;
+                } finally {
+                    events.add("end"+i);
+                    inFlight.decrementAndGet();
+                }
+            }});
+    }
+
+    private List<Task<Integer>> newChildren(int count, int failing) {
+        List<Task<Integer>> result = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            result.add(newChild(i, i == failing));
+        }
+        return result;
+    }
+
+    @Test
+    public void testRunsAtMostMaxInFlight() throws Exception {
+        BoundedParallelTask<Integer> t = new BoundedParallelTask<Integer>(newChildren(10, -1)).maxInFlight(3);
+        ec.submit(t);
+        assertEquals(t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+        assertTrue(maxInFlight.get() <= 3, "max="+maxInFlight.get());
+        assertEquals(t.getNumChildrenCompleted(), 10);
+        assertEquals(t.getNumChildrenInProgress(), 0);
+    }
+
+    @Test
+    public void testUnboundedByDefault() throws Exception {
+        BoundedParallelTask<Integer> t = new BoundedParallelTask<Integer>(newChildren(3, -1));
+        ec.submit(t);
+        assertEquals(t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), ImmutableList.of(0, 1, 2));
+    }
+
+    @Test
+    public void testBatchStartsOnlyWhenPreviousBatchComplete() throws Exception {
+        BoundedParallelTask<Integer> t = new BoundedParallelTask<Integer>(newChildren(4, -1)).batchSize(2);
+        ec.submit(t);
+        t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertTrue(events.indexOf("start2") > events.indexOf("end0"), "events="+events);
+        assertTrue(events.indexOf("start2") > events.indexOf("end1"), "events="+events);
+        assertTrue(events.indexOf("start3") > events.indexOf("end1"), "events="+events);
+    }
+
+    @Test
+    public void testFailFastStopsStartingChildren() throws Exception {
+        List<Task<Integer>> children = newChildren(4, 1);
+        BoundedParallelTask<Integer> t = new BoundedParallelTask<Integer>(children).maxInFlight(1).failFast(true);
+        ec.submit(t);
+        try {
+            t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(Throwables.getRootCause(e) instanceof IllegalStateException, "e="+e);
+        }
+        assertFalse(events.contains("start2"), "events="+events);
+        assertTrue(children.get(3).isCancelled());
+        assertEquals(t.getNumChildrenFailed(), 1);
+    }
+
+    @Test
+    public void testContinueRunsAllChildrenThenFails() throws Exception {
+        List<Task<Integer>> children = newChildren(4, 1);
+        BoundedParallelTask<Integer> t = new BoundedParallelTask<Integer>(children).maxInFlight(1);
+        ec.submit(t);
+        try {
+            t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(Throwables.getRootCause(e) instanceof IllegalStateException, "e="+e);
+        }
+        assertTrue(events.contains("end3"), "events="+events);
+        assertEquals(children.get(3).get(), (Integer)3);
+        assertEquals(t.getNumChildrenCompleted(), 4);
+        assertEquals(t.getNumChildrenFailed(), 1);
+    }
+}
@@ -0,0 +1,115 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicSensorEvent;
+import brooklyn.management.Task;
+import brooklyn.management.internal.LocalSubscriptionManager;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.MutableMap;
+
+/**
+ * Tests the separate pools of {@link BasicExecutionManager} for short and blocking tasks.
+ */
+public class BoundedTaskPoolTest {
+
+    private static final int TIMEOUT_MS = 10*1000;
+    private static final int MAX_SHORT_TASK_THREADS = 2;
+
+    private BasicExecutionManager em;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BasicExecutionManager.MAX_SHORT_TASK_THREADS, MAX_SHORT_TASK_THREADS);
+        em = new BasicExecutionManager("test", props);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+
+    @Test
+    public void testShortTasksAreQueuedForBoundedPoolWhileBlockingTasksStillRun() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(MAX_SHORT_TASK_THREADS);
+        List<Task<?>> shortTasks = new ArrayList<Task<?>>();
+        for (int i = 0; i < 10; i++) {
+            shortTasks.add(em.submit(new Runnable() {
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }}));
+        }
+        assertTrue(started.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(em.getNumShortTaskThreads(), MAX_SHORT_TASK_THREADS);
+        assertEquals(em.getShortTaskQueueLength(), 10 - MAX_SHORT_TASK_THREADS);
+
+        // the short-task pool is saturated, but a blocking task gets its own thread
+        Task<String> blocking = em.submit(MutableMap.of("blocking", true), new Callable<String>() {
+            public String call() {
+                return "done";
+            }});
+        assertEquals(blocking.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), "done");
+
+        release.countDown();
+        for (Task<?> t : shortTasks) {
+            t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(em.getShortTaskQueueLength(), 0);
+    }
+
+    @Test
+    public void testBlockingSubscribersDoNotStarveBoundedPool() throws Exception {
+        LocalSubscriptionManager subscriptionManager = new LocalSubscriptionManager(em);
+        int numBlockingSubscribers = MAX_SHORT_TASK_THREADS * 2;
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch blockingStarted = new CountDownLatch(numBlockingSubscribers);
+        final CountDownLatch shortReceived = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < numBlockingSubscribers; i++) {
+                subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "blocking"+i, "blocking", true), 
+                        null, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                    @Override public void onEvent(SensorEvent<Integer> event) {
+                        blockingStarted.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }});
+            }
+            subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", "short"), 
+                    null, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                @Override public void onEvent(SensorEvent<Integer> event) {
+                    shortReceived.countDown();
+                }});
+            subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, null, 1));
+            
+            // more listeners are blocked than there are threads in the bounded pool, yet they all run, as does the other listener
+            assertTrue(blockingStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertTrue(shortReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.management.Task;
+import brooklyn.test.TestUtils;
+import brooklyn.util.MutableMap;
+
+public class ExecutionManagerDiagnosticsTest {
+
+    private static final int TIMEOUT_MS = 10*1000;
+
+    private BasicExecutionManager em;
+    private CountDownLatch latch;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BasicExecutionManager.JMX_DIAGNOSTICS, true);
+        em = new BasicExecutionManager("diagnostics-test", props);
+        latch = new CountDownLatch(1);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (latch != null) latch.countDown();
+        if (em != null) em.shutdownNow();
+    }
+
+    private Task<?> submitWaitingTask() {
+        return em.submit(MutableMap.of("displayName", "waiting-task"), new Runnable() {
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }});
+    }
+
+    @Test
+    public void testNotRegisteredByDefault() throws Exception {
+        BasicExecutionManager other = new BasicExecutionManager("diagnostics-test-default");
+        try {
+            assertNull(other.getJmxDiagnostics());
+        } finally {
+            other.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCurrentTasksByThread() throws Exception {
+        final Task<?> t = submitWaitingTask();
+        TestUtils.executeUntilSucceeds(MutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            public void run() {
+                assertTrue(em.getCurrentTasksByThread().containsValue(t));
+            }});
+        Thread thread = ((BasicTask<?>)t).getThread();
+        assertEquals(em.getCurrentTasksByThread().get(thread), t);
+
+        latch.countDown();
+        t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertFalse(em.getCurrentTasksByThread().containsValue(t));
+    }
+
+    @Test
+    public void testMBeanShowsTaskForThread() throws Exception {
+        final Task<?> t = submitWaitingTask();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        // other execution managers (e.g. from other tests) may be registered under the same name, so look up this one's
+        ObjectName name = em.getJmxDiagnostics().getObjectName();
+        assertTrue(server.isRegistered(name), "name="+name);
+        final ExecutionManagerDiagnosticsMXBean proxy = JMX.newMXBeanProxy(server, name, ExecutionManagerDiagnosticsMXBean.class);
+
+        TestUtils.executeUntilSucceeds(MutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            public void run() {
+                assertTrue(proxy.getCurrentTasksByThread().containsValue("waiting-task ["+t.getId()+"]"), "tasks="+proxy.getCurrentTasksByThread());
+            }});
+        assertTrue(proxy.dumpThreadsWithTasks().contains("running task waiting-task ["+t.getId()+"]"));
+
+        em.shutdownNow();
+        assertFalse(server.isRegistered(name));
+    }
+}
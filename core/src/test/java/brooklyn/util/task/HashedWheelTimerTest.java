@@ -0,0 +1,87 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class HashedWheelTimerTest {
+
+    private static final int TIMEOUT_MS = 10*1000;
+    private static final long TICK_MILLIS = 10;
+
+    private HashedWheelTimer timer;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        // a small wheel, so that timeouts go round it several times
+        timer = new HashedWheelTimer(Executors.defaultThreadFactory(), TICK_MILLIS, TimeUnit.MILLISECONDS, 4);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (timer != null) timer.stop();
+    }
+
+    @Test
+    public void testFiresAfterDelay() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }});
+        long start = System.currentTimeMillis();
+        timer.schedule(timeout, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 100 - TICK_MILLIS, "fired after "+(System.currentTimeMillis() - start)+"ms");
+        timeout.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.isDone());
+        assertEquals(timer.getNumPendingTimeouts(), 0);
+    }
+
+    @Test
+    public void testTimeoutCanBeScheduledAgainOnceFired() throws Exception {
+        final int numTimes = 5;
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final HashedWheelTimer.Timeout[] timeout = new HashedWheelTimer.Timeout[1];
+        timeout[0] = timer.newTimeout(new Runnable() {
+            public void run() {
+                if (count.incrementAndGet() < numTimes) {
+                    timer.schedule(timeout[0], 20, TimeUnit.MILLISECONDS);
+                } else {
+                    latch.countDown();
+                }
+            }});
+        timer.schedule(timeout[0], 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(count.get(), numTimes);
+    }
+
+    @Test
+    public void testCancelledTimeoutDoesNotFire() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(new Runnable() {
+            public void run() {
+                count.incrementAndGet();
+            }});
+        timer.schedule(timeout, 50, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel(false));
+        assertTrue(timeout.isCancelled());
+        assertFalse(timer.schedule(timeout, 10, TimeUnit.MILLISECONDS));
+
+        Thread.sleep(200);
+        assertEquals(count.get(), 0);
+        assertEquals(timer.getNumPendingTimeouts(), 0);
+    }
+}
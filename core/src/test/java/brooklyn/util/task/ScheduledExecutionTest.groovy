@@ -9,6 +9,7 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import org.testng.annotations.Test
 
+import brooklyn.config.BrooklynProperties
 import brooklyn.test.TestUtils
 import brooklyn.util.internal.TimeExtras
 
@@ -93,6 +94,43 @@ public class ScheduledExecutionTest {
 		assertEquals(i, 5)
 	}
 
+	@Test
+	public void testJitterVariesDelayWithinBounds() {
+		def t = new ScheduledTask(period: 100, jitter: 0.2, { new BasicTask({}) } );
+		Set<Long> delays = []
+		for (i in 0..<100) {
+			long delay = t.getNextDelay().toMilliseconds()
+			assertTrue(delay >= 80 && delay <= 120, "delay="+delay)
+			delays.add(delay)
+		}
+		assertTrue(delays.size() > 1, "delays="+delays)
+		assertEquals(new ScheduledTask(period: 100, { new BasicTask({}) } ).getNextDelay().toMilliseconds(), 100)
+	}
+
+	@Test
+	public void testScheduledTaskWithHashedWheelTimer() {
+		int PERIOD = 20;
+		BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+		props.put(BasicExecutionManager.USE_HASHED_WHEEL_TIMER, true);
+		BasicExecutionManager m = new BasicExecutionManager("test", props);
+		try {
+			int i=0;
+			def t = new ScheduledTask(delay: 2*PERIOD*TimeUnit.MILLISECONDS, period: PERIOD*TimeUnit.MILLISECONDS, maxIterations: 5, { new BasicTask({
+				++i;
+			}) } );
+			
+			m.submit(t);
+			t.blockUntilEnded()
+			assertEquals(t.get(), 5)
+			assertEquals(i, 5)
+			assertTrue(m.isUsingHashedWheelTimer())
+			assertEquals(m.getNumScheduledTaskRuns(), 5)
+			assertTrue(m.getMaxScheduledTaskLagMillis() >= 0)
+		} finally {
+			m.shutdownNow()
+		}
+	}
+
     @Test
     public void testScheduledTaskTakesLongerThanPeriod() {
         final int PERIOD = 1;
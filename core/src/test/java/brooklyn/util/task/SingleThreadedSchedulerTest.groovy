@@ -6,7 +6,11 @@ import static org.testng.Assert.*
 import java.util.concurrent.CancellationException
 import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeoutException
 import java.util.concurrent.atomic.AtomicInteger
@@ -21,6 +25,8 @@ public class SingleThreadedSchedulerTest {
 
     private static final Logger log = LoggerFactory.getLogger(SingleThreadedSchedulerTest)
     
+    private static final long TIMEOUT_MS = 10*1000
+    
     private BasicExecutionManager em
     
     @BeforeMethod
@@ -133,4 +139,53 @@ public class SingleThreadedSchedulerTest {
         latch.countDown()
         assertEquals(future.get(), 123)
     }
+    
+    @Test
+    public void testRejectedDrainerFailsQueuedTasksAndDoesNotWedgeScheduler() {
+        SingleThreadedScheduler scheduler = new SingleThreadedScheduler()
+        ExecutorService rejecting = Executors.newSingleThreadExecutor()
+        rejecting.shutdown()
+        scheduler.injectExecutor(rejecting)
+        try {
+            scheduler.submit({ return 1 })
+            fail()
+        } catch (RejectedExecutionException e) {
+            // success
+        }
+        
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+        try {
+            scheduler.injectExecutor(executor)
+            assertEquals(scheduler.submit({ return 2 }).get(TIMEOUT_MS, TimeUnit.MILLISECONDS), 2)
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+    
+    @Test
+    public void testQueuedTasksFailWhenExecutorRejectsDrainerContinuing() {
+        SingleThreadedScheduler scheduler = new SingleThreadedScheduler()
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+        try {
+            scheduler.injectExecutor(executor)
+            final CountDownLatch latch = new CountDownLatch(1)
+            scheduler.submit({ latch.await(); return null })
+            List<Future> futures = []
+            for (i in 1..SingleThreadedScheduler.MAX_BATCH_SIZE) {
+                futures.add(scheduler.submit({ return null }))
+            }
+            // the drainer re-submits itself after MAX_BATCH_SIZE tasks; that hand-off is rejected
+            executor.shutdown()
+            latch.countDown()
+            
+            try {
+                futures.last().get(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                fail()
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException, "cause="+e.getCause())
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
 }
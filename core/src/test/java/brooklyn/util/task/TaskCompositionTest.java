@@ -0,0 +1,209 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.Task;
+import brooklyn.util.MutableMap;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Tests completion listeners on {@link Task} (including {@link ScheduledTask}), and composing tasks with {@link Tasks#then(Task, Function)},
+ * {@link Tasks#allOf(Iterable)} and {@link Tasks#anyOf(Iterable)}.
+ */
+public class TaskCompositionTest {
+
+    private static final int TIMEOUT_MS = 10*1000;
+
+    private BasicExecutionManager em;
+    private BasicExecutionContext ec;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("test");
+        ec = new BasicExecutionContext(em);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+
+    private static <T> Task<T> newTask(final CountDownLatch latch, final T result) {
+        return new BasicTask<T>(new Callable<T>() {
+            public T call() throws Exception {
+                latch.await();
+                return result;
+            }});
+    }
+
+    private static <T> Task<T> newFailingTask(final CountDownLatch latch, final String message) {
+        return new BasicTask<T>(new Callable<T>() {
+            public T call() throws Exception {
+                latch.await();
+                throw new IllegalStateException(message);
+            }});
+    }
+
+    @Test
+    public void testListenerAddedBeforeSubmissionRunsOnCompletion() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        final CountDownLatch listenerRun = new CountDownLatch(1);
+        Task<String> t = newTask(latch, "a");
+        t.addListener(new Runnable() {
+            public void run() {
+                listenerRun.countDown();
+            }}, MoreExecutors.sameThreadExecutor());
+
+        ec.submit(t);
+        assertFalse(listenerRun.await(100, TimeUnit.MILLISECONDS));
+        latch.countDown();
+        assertTrue(listenerRun.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(t.get(), "a");
+    }
+
+    @Test
+    public void testListenerAddedAfterCompletionRunsImmediately() throws Exception {
+        Task<String> t = newTask(new CountDownLatch(0), "a");
+        ec.submit(t).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        final CountDownLatch listenerRun = new CountDownLatch(1);
+        t.addListener(new Runnable() {
+            public void run() {
+                listenerRun.countDown();
+            }}, MoreExecutors.sameThreadExecutor());
+        assertEquals(listenerRun.getCount(), 0);
+    }
+
+    @Test
+    public void testListenerRunWhenCancelledBeforeSubmission() throws Exception {
+        Task<String> t = newTask(new CountDownLatch(1), "a");
+        final CountDownLatch listenerRun = new CountDownLatch(1);
+        t.addListener(new Runnable() {
+            public void run() {
+                listenerRun.countDown();
+            }}, MoreExecutors.sameThreadExecutor());
+        t.cancel(true);
+        assertEquals(listenerRun.getCount(), 0);
+    }
+
+    @Test
+    public void testThen() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        Task<Integer> t = Tasks.then(newTask(latch, 2), new Function<Integer, Integer>() {
+            public Integer apply(Integer input) {
+                return input+1;
+            }});
+        ec.submit(t);
+        assertFalse(t.isDone());
+        latch.countDown();
+        assertEquals(t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), (Integer)3);
+    }
+
+    @Test
+    public void testAllOf() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        Task<List<String>> t = Tasks.<String>allOf(ImmutableList.of(newTask(latch, "a"), newTask(latch, "b")));
+        ec.submit(t);
+        assertFalse(t.isDone());
+        latch.countDown();
+        assertEquals(t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), ImmutableList.of("a", "b"));
+    }
+
+    @Test
+    public void testAllOfWaitsForAllThenReportsFirstError() throws Exception {
+        CountDownLatch latch1 = new CountDownLatch(0);
+        CountDownLatch latch2 = new CountDownLatch(1);
+        Task<String> slow = newTask(latch2, "b");
+        Task<List<String>> t = Tasks.<String>allOf(ImmutableList.of(TaskCompositionTest.<String>newFailingTask(latch1, "simulated failure"), slow));
+        ec.submit(t);
+        Thread.sleep(100);
+        assertFalse(t.isDone());
+        latch2.countDown();
+        try {
+            t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException, "e="+e);
+        }
+        assertTrue(slow.isDone());
+    }
+
+    @Test
+    public void testAllOfCancelledIfChildCancelled() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        Task<String> child = newTask(never, "a");
+        Task<List<String>> t = Tasks.<String>allOf(ImmutableList.of(child, newTask(new CountDownLatch(0), "b")));
+        ec.submit(t);
+        child.cancel(true);
+        try {
+            t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (CancellationException e) {
+            // success
+        }
+        assertTrue(t.isCancelled());
+    }
+
+    @Test
+    public void testScheduledTaskListenerRunAfterFinalRun() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        ScheduledTask t = new ScheduledTask(MutableMap.of("period", 10, "maxIterations", 3), new Callable<Task<?>>() {
+            public Task<?> call() {
+                return new BasicTask<Void>(new Runnable() {
+                    public void run() {
+                        runs.incrementAndGet();
+                    }});
+            }});
+        final CountDownLatch listenerRun = new CountDownLatch(1);
+        t.addListener(new Runnable() {
+            public void run() {
+                listenerRun.countDown();
+            }}, MoreExecutors.sameThreadExecutor());
+        ec.submit(t);
+        assertTrue(listenerRun.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(runs.get(), 3);
+    }
+
+    @Test
+    public void testScheduledTaskListenerRunWhenCancelled() throws Exception {
+        ScheduledTask t = new ScheduledTask(MutableMap.of("period", 10), new Callable<Task<?>>() {
+            public Task<?> call() {
+                return newTask(new CountDownLatch(0), "a");
+            }});
+        final CountDownLatch listenerRun = new CountDownLatch(1);
+        t.addListener(new Runnable() {
+            public void run() {
+                listenerRun.countDown();
+            }}, MoreExecutors.sameThreadExecutor());
+        ec.submit(t);
+        assertFalse(listenerRun.await(100, TimeUnit.MILLISECONDS));
+        t.cancel(true);
+        assertEquals(listenerRun.getCount(), 0);
+    }
+
+    @Test
+    public void testAnyOf() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        Task<String> t = Tasks.<String>anyOf(ImmutableList.of(newTask(never, "a"), newTask(new CountDownLatch(0), "b")));
+        ec.submit(t);
+        assertEquals(t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS), "b");
+        never.countDown();
+    }
+}
@@ -0,0 +1,88 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.management.Task;
+import brooklyn.util.MutableMap;
+
+/**
+ * Tests {@link BasicExecutionManager#USE_VIRTUAL_THREADS}; on JVMs without virtual threads, checks that it falls back
+ * to platform threads.
+ */
+public class VirtualThreadExecutionTest {
+
+    private static final int TIMEOUT_MS = 10*1000;
+
+    private BasicExecutionManager em;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BasicExecutionManager.USE_VIRTUAL_THREADS, true);
+        em = new BasicExecutionManager("test", props);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+
+    @Test
+    public void testUsesVirtualThreadsIfSupported() throws Exception {
+        Task<Thread> t = em.submit(new Callable<Thread>() {
+            public Thread call() {
+                return Thread.currentThread();
+            }});
+        Thread thread = t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (em.isUsingVirtualThreads()) {
+            assertEquals(Thread.class.getMethod("isVirtual").invoke(thread), Boolean.TRUE);
+        } else {
+            // fell back to platform threads, as this JVM does not support virtual threads
+            assertTrue(em.getLargestNumBlockingTaskThreads() >= 1);
+        }
+    }
+
+    @Test
+    public void testCurrentTaskIsSetInTask() throws Exception {
+        final List<Task<?>> currentTasks = new CopyOnWriteArrayList<Task<?>>();
+        Task<?> t = em.submit(new Runnable() {
+            public void run() {
+                currentTasks.add(Tasks.current());
+            }});
+        t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertSame(currentTasks.get(0), t);
+    }
+
+    @Test
+    public void testSingleThreadedSchedulerPreservesOrder() throws Exception {
+        em.setTaskSchedulerForTag("ordered", SingleThreadedScheduler.class);
+        final List<Integer> order = new CopyOnWriteArrayList<Integer>();
+        List<Task<?>> tasks = new ArrayList<Task<?>>();
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            final int val = i;
+            tasks.add(em.submit(MutableMap.of("tag", "ordered"), new Runnable() {
+                public void run() {
+                    order.add(val);
+                }}));
+            expected.add(i);
+        }
+        for (Task<?> t : tasks) {
+            t.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(order, expected);
+    }
+}
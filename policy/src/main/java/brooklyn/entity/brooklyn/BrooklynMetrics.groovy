@@ -10,6 +10,7 @@ import brooklyn.entity.basic.AbstractEntity
 import brooklyn.event.basic.BasicAttributeSensor
 import brooklyn.event.basic.BasicAttributeSensorAndConfigKey
 import brooklyn.management.internal.AbstractManagementContext
+import brooklyn.management.internal.LocalManagementContext
 import brooklyn.management.internal.LocalSubscriptionManager
 import brooklyn.util.flags.SetFromFlag
 import brooklyn.util.task.BasicExecutionManager
@@ -29,14 +30,35 @@ public class BrooklynMetrics extends AbstractEntity {
     
     public static final BasicAttributeSensor<Integer> NUM_ACTIVE_TASKS = [ Integer, "brooklyn.metrics.numActiveTasks", "Number of currently active tasks being executed" ]
 
+    public static final BasicAttributeSensor<Integer> NUM_SHORT_TASK_THREADS = [ Integer, "brooklyn.metrics.numShortTaskThreads", "Number of threads in the bounded pool for short tasks" ]
+    
+    public static final BasicAttributeSensor<Integer> SHORT_TASK_QUEUE_LENGTH = [ Integer, "brooklyn.metrics.shortTaskQueueLength", "Number of short tasks waiting for a thread" ]
+    
+    public static final BasicAttributeSensor<Integer> NUM_BLOCKING_TASK_THREADS = [ Integer, "brooklyn.metrics.numBlockingTaskThreads", "Number of threads in the pool for blocking tasks" ]
+
+    public static final BasicAttributeSensor<Long> SCHEDULED_TASK_LAG = [ Long, "brooklyn.metrics.scheduledTaskLag", "Mean time (in milliseconds) by which runs of scheduled tasks (such as polls) were late being triggered, since the last refresh" ]
+    
+    public static final BasicAttributeSensor<Long> MAX_SCHEDULED_TASK_LAG = [ Long, "brooklyn.metrics.maxScheduledTaskLag", "Longest time (in milliseconds) by which any run of a scheduled task has been late being triggered" ]
+
+    public static final BasicAttributeSensor<Map> TASK_LATENCIES = [ Map, "brooklyn.metrics.taskLatencies", "For each category of task (effector, poll, subscription_delivery, entity, other), the count, mean, percentiles and max of the time (in microseconds) tasks were queued between submission and starting, and then ran" ]
+
     public static final BasicAttributeSensor<Long> TOTAL_EVENTS_PUBLISHED = [ Long, "brooklyn.metrics.totalEventsPublished", "Total number of events published" ]
     
     public static final BasicAttributeSensor<Long> TOTAL_EVENTS_DELIVERED = [ Long, "brooklyn.metrics.totalEventsDelivered", "Total number of events delivered (counting an event multiple times if more than one subscriber)" ]
     
     public static final BasicAttributeSensor<Long> NUM_SUBSCRIPTIONS = [ Long, "brooklyn.metrics.numSubscriptions", "Current number of event subscriptions" ]
     
+    public static final BasicAttributeSensor<Long> NUM_QUEUED_EVENTS = [ Long, "brooklyn.metrics.numQueuedEvents", "Current number of events queued awaiting delivery to subscribers" ]
+    
+    public static final BasicAttributeSensor<Long> QUEUED_EVENTS_HIGH_WATER_MARK = [ Long, "brooklyn.metrics.queuedEventsHighWaterMark", "Largest number of events that have been queued for any one subscriber" ]
+    
+    public static final BasicAttributeSensor<Long> TOTAL_EVENTS_DROPPED = [ Long, "brooklyn.metrics.totalEventsDropped", "Total number of events dropped because a subscriber's queue was full" ]
+    
     private ScheduledExecutorService executor;
     
+    private long lastNumScheduledTaskRuns = 0;
+    private long lastTotalScheduledTaskLag = 0;
+    
     public BrooklynMetrics(Map props, Entity parent=null) {
         super(props, parent)
     }
@@ -74,11 +96,28 @@ public class BrooklynMetrics extends AbstractEntity {
             setAttribute(TOTAL_TASKS_SUBMITTED, execManager.getTotalTasksSubmitted())
             setAttribute(NUM_INCOMPLETE_TASKS, execManager.getNumIncompleteTasks())
             setAttribute(NUM_ACTIVE_TASKS, execManager.getNumActiveTasks())
+            setAttribute(NUM_SHORT_TASK_THREADS, execManager.getNumShortTaskThreads())
+            setAttribute(SHORT_TASK_QUEUE_LENGTH, execManager.getShortTaskQueueLength())
+            setAttribute(NUM_BLOCKING_TASK_THREADS, execManager.getNumBlockingTaskThreads())
+            
+            long numScheduledTaskRuns = execManager.getNumScheduledTaskRuns()
+            long totalScheduledTaskLag = execManager.getTotalScheduledTaskLagMillis()
+            long numRecentRuns = numScheduledTaskRuns - lastNumScheduledTaskRuns
+            setAttribute(SCHEDULED_TASK_LAG, (numRecentRuns > 0) ? (long)((totalScheduledTaskLag - lastTotalScheduledTaskLag) / numRecentRuns) : 0L)
+            setAttribute(MAX_SCHEDULED_TASK_LAG, execManager.getMaxScheduledTaskLagMillis())
+            lastNumScheduledTaskRuns = numScheduledTaskRuns
+            lastTotalScheduledTaskLag = totalScheduledTaskLag
+        }
+        if (managementContext instanceof LocalManagementContext) {
+            setAttribute(TASK_LATENCIES, ((LocalManagementContext) managementContext).getTaskLatencyRecorder().getSummary())
         }
         if (subsManager != null) {
             setAttribute(TOTAL_EVENTS_PUBLISHED, subsManager.getTotalEventsPublished())
             setAttribute(TOTAL_EVENTS_DELIVERED, subsManager.getTotalEventsDelivered())
             setAttribute(NUM_SUBSCRIPTIONS, subsManager.getNumSubscriptions())
+            setAttribute(NUM_QUEUED_EVENTS, subsManager.getNumQueuedEvents())
+            setAttribute(QUEUED_EVENTS_HIGH_WATER_MARK, subsManager.getQueuedEventsHighWaterMark())
+            setAttribute(TOTAL_EVENTS_DROPPED, subsManager.getTotalEventsDropped())
         }
     }
 }
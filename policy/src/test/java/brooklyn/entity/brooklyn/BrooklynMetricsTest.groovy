@@ -3,6 +3,8 @@ package brooklyn.entity.brooklyn
 import static brooklyn.test.TestUtils.*
 import static org.testng.Assert.*
 
+import java.util.concurrent.CountDownLatch
+
 import org.testng.annotations.BeforeMethod
 import org.testng.annotations.Test
 
@@ -13,6 +15,7 @@ import brooklyn.entity.proxying.BasicEntitySpec
 import brooklyn.event.AttributeSensor
 import brooklyn.event.SensorEventListener
 import brooklyn.location.basic.SimulatedLocation
+import brooklyn.management.Task
 import brooklyn.test.entity.TestApplication
 import brooklyn.test.entity.TestEntity
 
@@ -41,10 +44,30 @@ class BrooklynMetricsTest {
             assertTrue(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_TASKS_SUBMITTED) > 0)
             assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.NUM_INCOMPLETE_TASKS), 0)
             assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.NUM_ACTIVE_TASKS), 0)
+            assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.SHORT_TASK_QUEUE_LENGTH), 0)
+            assertTrue(brooklynMetrics.getAttribute(BrooklynMetrics.SCHEDULED_TASK_LAG) >= 0)
+            assertTrue(brooklynMetrics.getAttribute(BrooklynMetrics.MAX_SCHEDULED_TASK_LAG) >= 0)
             assertTrue(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_EVENTS_PUBLISHED) > 0)
             assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_EVENTS_DELIVERED), 0)
             assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.NUM_SUBSCRIPTIONS), 0)
+            assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.NUM_QUEUED_EVENTS), 0)
+            assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_EVENTS_DROPPED), 0)
+        }
+    }
+    
+    @Test
+    public void testCountsThreadsRunningBlockingTasks() {
+        // idle threads time out after 1s, so only a thread known to be busy is sure to be counted
+        CountDownLatch latch = new CountDownLatch(1)
+        Task<?> task = app.getManagementContext().getExecutionManager().submit(blocking:true, { latch.await() } as Runnable)
+        try {
+            executeUntilSucceeds(timeout:TIMEOUT_MS) {
+                assertTrue(brooklynMetrics.getAttribute(BrooklynMetrics.NUM_BLOCKING_TASK_THREADS) > 0)
+            }
+        } finally {
+            latch.countDown()
         }
+        task.get()
     }
     
     @Test
@@ -69,6 +92,7 @@ class BrooklynMetricsTest {
         executeUntilSucceeds(timeout:TIMEOUT_MS) {
             assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_EFFECTORS_INVOKED), effsInvoked+1)
             assertTrue(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_TASKS_SUBMITTED) > tasksSubmitted)
+            assertTrue(brooklynMetrics.getAttribute(BrooklynMetrics.TASK_LATENCIES).effector.run.count > 0)
         }
         
         // Setting attribute causes event to be published and delivered to the subscriber
@@ -15,6 +15,7 @@ import brooklyn.rest.resources.EffectorResource;
 import brooklyn.rest.resources.EntityConfigResource;
 import brooklyn.rest.resources.EntityResource;
 import brooklyn.rest.resources.LocationResource;
+import brooklyn.rest.resources.MetricsResource;
 import brooklyn.rest.resources.PolicyConfigResource;
 import brooklyn.rest.resources.PolicyResource;
 import brooklyn.rest.resources.ScriptResource;
@@ -39,6 +40,7 @@ public class BrooklynRestApi {
         resources.add(new ActivityResource());
         resources.add(new ScriptResource());
         resources.add(new VersionResource());
+        resources.add(new MetricsResource());
         return resources;
     }
 
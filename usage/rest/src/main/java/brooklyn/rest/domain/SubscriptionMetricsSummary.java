@@ -0,0 +1,135 @@
+package brooklyn.rest.domain;
+
+import java.util.List;
+
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import brooklyn.management.internal.LocalSubscriptionManager;
+import brooklyn.management.internal.SubscriberQueueStats;
+
+import com.google.common.collect.ImmutableList;
+
+public class SubscriptionMetricsSummary {
+
+  private final long numSubscriptions;
+  private final long totalEventsPublished;
+  private final long totalEventsDelivered;
+  private final long totalEventsDropped;
+  private final long numQueuedEvents;
+  private final long queuedEventsHighWaterMark;
+  private final List<SubscriberQueueSummary> subscriberQueues;
+
+  public SubscriptionMetricsSummary(
+      @JsonProperty("numSubscriptions") long numSubscriptions,
+      @JsonProperty("totalEventsPublished") long totalEventsPublished,
+      @JsonProperty("totalEventsDelivered") long totalEventsDelivered,
+      @JsonProperty("totalEventsDropped") long totalEventsDropped,
+      @JsonProperty("numQueuedEvents") long numQueuedEvents,
+      @JsonProperty("queuedEventsHighWaterMark") long queuedEventsHighWaterMark,
+      @JsonProperty("subscriberQueues") List<SubscriberQueueSummary> subscriberQueues
+  ) {
+    this.numSubscriptions = numSubscriptions;
+    this.totalEventsPublished = totalEventsPublished;
+    this.totalEventsDelivered = totalEventsDelivered;
+    this.totalEventsDropped = totalEventsDropped;
+    this.numQueuedEvents = numQueuedEvents;
+    this.queuedEventsHighWaterMark = queuedEventsHighWaterMark;
+    this.subscriberQueues = subscriberQueues != null ? ImmutableList.copyOf(subscriberQueues) : ImmutableList.<SubscriberQueueSummary>of();
+  }
+
+  public static SubscriptionMetricsSummary fromSubscriptionManager(LocalSubscriptionManager manager) {
+    ImmutableList.Builder<SubscriberQueueSummary> queues = ImmutableList.builder();
+    for (SubscriberQueueStats stats : manager.getSubscriberQueueStats()) {
+      queues.add(new SubscriberQueueSummary(""+stats.getSubscriberTag(), stats.getQueueDepth(), stats.getHighWaterMark(), stats.getDroppedCount()));
+    }
+    return new SubscriptionMetricsSummary(manager.getNumSubscriptions(), manager.getTotalEventsPublished(),
+        manager.getTotalEventsDelivered(), manager.getTotalEventsDropped(), manager.getNumQueuedEvents(),
+        manager.getQueuedEventsHighWaterMark(), queues.build());
+  }
+
+  public long getNumSubscriptions() {
+    return numSubscriptions;
+  }
+
+  public long getTotalEventsPublished() {
+    return totalEventsPublished;
+  }
+
+  public long getTotalEventsDelivered() {
+    return totalEventsDelivered;
+  }
+
+  public long getTotalEventsDropped() {
+    return totalEventsDropped;
+  }
+
+  public long getNumQueuedEvents() {
+    return numQueuedEvents;
+  }
+
+  public long getQueuedEventsHighWaterMark() {
+    return queuedEventsHighWaterMark;
+  }
+
+  public List<SubscriberQueueSummary> getSubscriberQueues() {
+    return subscriberQueues;
+  }
+
+  @Override
+  public String toString() {
+    return "SubscriptionMetricsSummary{" +
+        "numSubscriptions=" + numSubscriptions +
+        ", totalEventsPublished=" + totalEventsPublished +
+        ", totalEventsDelivered=" + totalEventsDelivered +
+        ", totalEventsDropped=" + totalEventsDropped +
+        ", numQueuedEvents=" + numQueuedEvents +
+        ", queuedEventsHighWaterMark=" + queuedEventsHighWaterMark +
+        ", subscriberQueues=" + subscriberQueues +
+        '}';
+  }
+
+  public static class SubscriberQueueSummary {
+    private final String subscriber;
+    private final int queueDepth;
+    private final int highWaterMark;
+    private final long dropped;
+
+    public SubscriberQueueSummary(
+        @JsonProperty("subscriber") String subscriber,
+        @JsonProperty("queueDepth") int queueDepth,
+        @JsonProperty("highWaterMark") int highWaterMark,
+        @JsonProperty("dropped") long dropped
+    ) {
+      this.subscriber = subscriber;
+      this.queueDepth = queueDepth;
+      this.highWaterMark = highWaterMark;
+      this.dropped = dropped;
+    }
+
+    public String getSubscriber() {
+      return subscriber;
+    }
+
+    public int getQueueDepth() {
+      return queueDepth;
+    }
+
+    public int getHighWaterMark() {
+      return highWaterMark;
+    }
+
+    public long getDropped() {
+      return dropped;
+    }
+
+    @Override
+    public String toString() {
+      return "SubscriberQueueSummary{" +
+          "subscriber='" + subscriber + '\'' +
+          ", queueDepth=" + queueDepth +
+          ", highWaterMark=" + highWaterMark +
+          ", dropped=" + dropped +
+          '}';
+    }
+  }
+}
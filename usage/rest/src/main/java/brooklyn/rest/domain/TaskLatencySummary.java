@@ -0,0 +1,149 @@
+package brooklyn.rest.domain;
+
+import java.util.List;
+
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import brooklyn.management.internal.TaskLatencyRecorder;
+import brooklyn.management.internal.TaskLatencyRecorder.TaskCategory;
+import brooklyn.util.math.LatencyHistogram;
+
+import com.google.common.collect.ImmutableList;
+
+public class TaskLatencySummary {
+
+  private final List<CategoryLatencySummary> categories;
+
+  public TaskLatencySummary(
+      @JsonProperty("categories") List<CategoryLatencySummary> categories
+  ) {
+    this.categories = categories != null ? ImmutableList.copyOf(categories) : ImmutableList.<CategoryLatencySummary>of();
+  }
+
+  public static TaskLatencySummary fromRecorder(TaskLatencyRecorder recorder) {
+    ImmutableList.Builder<CategoryLatencySummary> categories = ImmutableList.builder();
+    for (TaskCategory category : TaskCategory.values()) {
+      categories.add(new CategoryLatencySummary(category.name().toLowerCase(),
+          LatencySummary.fromHistogram(recorder.getQueuedTimes(category)),
+          LatencySummary.fromHistogram(recorder.getRunTimes(category))));
+    }
+    return new TaskLatencySummary(categories.build());
+  }
+
+  public List<CategoryLatencySummary> getCategories() {
+    return categories;
+  }
+
+  @Override
+  public String toString() {
+    return "TaskLatencySummary{" +
+        "categories=" + categories +
+        '}';
+  }
+
+  public static class CategoryLatencySummary {
+    private final String category;
+    private final LatencySummary queued;
+    private final LatencySummary run;
+
+    public CategoryLatencySummary(
+        @JsonProperty("category") String category,
+        @JsonProperty("queued") LatencySummary queued,
+        @JsonProperty("run") LatencySummary run
+    ) {
+      this.category = category;
+      this.queued = queued;
+      this.run = run;
+    }
+
+    public String getCategory() {
+      return category;
+    }
+
+    /** time between submission and starting */
+    public LatencySummary getQueued() {
+      return queued;
+    }
+
+    /** time between starting and ending */
+    public LatencySummary getRun() {
+      return run;
+    }
+
+    @Override
+    public String toString() {
+      return "CategoryLatencySummary{" +
+          "category='" + category + '\'' +
+          ", queued=" + queued +
+          ", run=" + run +
+          '}';
+    }
+  }
+
+  public static class LatencySummary {
+    private final long count;
+    private final long meanMicros;
+    private final long p50Micros;
+    private final long p90Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+
+    public LatencySummary(
+        @JsonProperty("count") long count,
+        @JsonProperty("meanMicros") long meanMicros,
+        @JsonProperty("p50Micros") long p50Micros,
+        @JsonProperty("p90Micros") long p90Micros,
+        @JsonProperty("p99Micros") long p99Micros,
+        @JsonProperty("maxMicros") long maxMicros
+    ) {
+      this.count = count;
+      this.meanMicros = meanMicros;
+      this.p50Micros = p50Micros;
+      this.p90Micros = p90Micros;
+      this.p99Micros = p99Micros;
+      this.maxMicros = maxMicros;
+    }
+
+    public static LatencySummary fromHistogram(LatencyHistogram histogram) {
+      return new LatencySummary(histogram.getCount(), Math.round(histogram.getMeanMicros()),
+          histogram.getPercentileMicros(50), histogram.getPercentileMicros(90),
+          histogram.getPercentileMicros(99), histogram.getMaxMicros());
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getMeanMicros() {
+      return meanMicros;
+    }
+
+    public long getP50Micros() {
+      return p50Micros;
+    }
+
+    public long getP90Micros() {
+      return p90Micros;
+    }
+
+    public long getP99Micros() {
+      return p99Micros;
+    }
+
+    public long getMaxMicros() {
+      return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+      return "LatencySummary{" +
+          "count=" + count +
+          ", meanMicros=" + meanMicros +
+          ", p50Micros=" + p50Micros +
+          ", p90Micros=" + p90Micros +
+          ", p99Micros=" + p99Micros +
+          ", maxMicros=" + maxMicros +
+          '}';
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package brooklyn.rest.resources;
+
+import static brooklyn.rest.util.WebResourceUtils.notFound;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import brooklyn.management.ManagementContext;
+import brooklyn.management.SubscriptionManager;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.management.internal.LocalSubscriptionManager;
+import brooklyn.rest.apidoc.Apidoc;
+import brooklyn.rest.domain.SubscriptionMetricsSummary;
+import brooklyn.rest.domain.TaskLatencySummary;
+
+import com.wordnik.swagger.core.ApiOperation;
+
+@Path("/v1/metrics")
+@Apidoc("Metrics")
+@Produces(MediaType.APPLICATION_JSON)
+public class MetricsResource extends AbstractBrooklynRestResource {
+
+  @GET
+  @Path("/subscriptions")
+  @ApiOperation(value = "Fetch event publishing and delivery metrics, including the queues of undelivered events for each subscriber",
+      responseClass = "brooklyn.rest.domain.SubscriptionMetricsSummary")
+  public SubscriptionMetricsSummary getSubscriptionMetrics() {
+    SubscriptionManager subscriptionManager = mgmt().getSubscriptionManager();
+    if (!(subscriptionManager instanceof LocalSubscriptionManager))
+      throw notFound("Subscription metrics not available for %s", subscriptionManager);
+    return SubscriptionMetricsSummary.fromSubscriptionManager((LocalSubscriptionManager) subscriptionManager);
+  }
+
+  @GET
+  @Path("/tasks")
+  @ApiOperation(value = "Fetch histograms of how long tasks were queued before starting, and how long they ran, for each category of task",
+      responseClass = "brooklyn.rest.domain.TaskLatencySummary")
+  public TaskLatencySummary getTaskLatencies() {
+    ManagementContext mgmt = mgmt();
+    if (!(mgmt instanceof LocalManagementContext))
+      throw notFound("Task latencies not available for %s", mgmt);
+    return TaskLatencySummary.fromRecorder(((LocalManagementContext) mgmt).getTaskLatencyRecorder());
+  }
+
+}
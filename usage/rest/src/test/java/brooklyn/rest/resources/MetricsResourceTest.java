@@ -0,0 +1,46 @@
+package brooklyn.rest.resources;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+import javax.ws.rs.core.Response;
+
+import org.testng.annotations.Test;
+
+import brooklyn.management.internal.TaskLatencyRecorder;
+import brooklyn.rest.domain.SubscriptionMetricsSummary;
+import brooklyn.rest.domain.TaskLatencySummary;
+import brooklyn.rest.testing.BrooklynRestResourceTest;
+
+import com.sun.jersey.api.client.ClientResponse;
+
+public class MetricsResourceTest extends BrooklynRestResourceTest {
+
+  @Test
+  public void testGetSubscriptionMetrics() {
+    ClientResponse response = client().resource("/v1/metrics/subscriptions")
+        .get(ClientResponse.class);
+
+    assertEquals(response.getStatus(), Response.Status.OK.getStatusCode());
+    SubscriptionMetricsSummary metrics = response.getEntity(SubscriptionMetricsSummary.class);
+    assertEquals(metrics.getTotalEventsDropped(), 0);
+    assertEquals(metrics.getNumQueuedEvents(), 0);
+    assertNotNull(metrics.getSubscriberQueues());
+  }
+
+  @Test
+  public void testGetTaskLatencies() {
+    ClientResponse response = client().resource("/v1/metrics/tasks")
+        .get(ClientResponse.class);
+
+    assertEquals(response.getStatus(), Response.Status.OK.getStatusCode());
+    TaskLatencySummary latencies = response.getEntity(TaskLatencySummary.class);
+    assertEquals(latencies.getCategories().size(), TaskLatencyRecorder.TaskCategory.values().length);
+    assertNotNull(latencies.getCategories().get(0).getQueued());
+  }
+
+  @Override
+  protected void setUpResources() throws Exception {
+    addResource(new MetricsResource());
+  }
+}